@@ -1,3 +1,6 @@
 #java -Djava.util.logging.config.file=./logging.properties -cp target/*with*.jar fdshow.App -adu All.txt wiki.html
 java -cp target/*with*.jar fdshow.App -adu All.txt wiki.html
+#java -XX:SharedArchiveFile=target/fdshow.jsa -cp target/*with*.jar fdshow.App -adu All.txt wiki.html
 #java -cp target/*with*.jar fdshow.App -adu ~/Downloads/All.txt ~/Documents/wiki/wiki.html
+#java -cp target/*with*.jar fdshow.DeckStats All.txt
+#java -cp target/*with*.jar fdshow.CardServer --port 8765 All.txt wiki.html
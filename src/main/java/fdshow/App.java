@@ -4,17 +4,30 @@ package fdshow;
  * App's fdshow direct dependencies
  *   FDFileData
  *   WikiData
+ *   WikiDirectory
  *   CardsHolder (the superclass of both FDFileData and WikiData)
+ *   CategoryView
+ *   FDRecord
+ *   MediaCache
+ *   CardPublisher
+ *   Sync
+ *   SyncPlan
+ *   SyncState
+ *   FileIO
+ *   Backups
+ *   FlightEvents
  */
 
-import java.io.FileReader;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
 import java.util.concurrent.Callable;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.regex.Pattern;
 import picocli.CommandLine;
@@ -41,7 +54,7 @@ public class App implements Callable<Integer> {
    */
   @Parameters(
     index = "0",
-    description = "File to sync from")
+    description = "File, or directory of wiki pages, to sync from")
   private File fromFile;
 
   /**
@@ -49,7 +62,7 @@ public class App implements Callable<Integer> {
    */
   @Parameters(
     index = "1",
-    description = "File to sync to")
+    description = "File, or directory of wiki pages, to sync to")
   private File toFile;
 
   /**
@@ -110,6 +123,103 @@ public class App implements Callable<Integer> {
     description = "update matching cards")
   private static boolean updateCards;
 
+  /**
+   * The categories to restrict syncing to.
+   * Null or empty means sync all cards.
+   */
+  @Option(names = "-c",
+    description = "sync only cards in this category (repeatable)")
+  private static List<String> categories;
+
+  /**
+   * The directory that Picture and Sound fields name files in.
+   * Null means don't link to media.
+   */
+  @Option(names = "--media",
+    description = "link pictures and sounds found in this directory")
+  private static File mediaDir;
+
+  /**
+   * The directory to cache picture thumbnails in.
+   * Null means a "thumbnails" directory beside the wiki file.
+   */
+  @Option(names = "--thumbnails",
+    description = "cache picture thumbnails in this directory")
+  private static File thumbnailDir;
+
+  /**
+   * The number of card IDs to a page when also saving the wiki as pages.
+   * Zero means don't save pages.
+   * The pages are a read-only export; the wiki file is still synced whole.
+   */
+  @Option(names = "--pages",
+    description = "also export the wiki's cards, read-only, as an index"
+                  + " and pages of this many IDs; edits to the pages are"
+                  + " not synced, the wiki file is still rewritten")
+  private static int pageSize;
+
+  /**
+   * True to stream the "from" cards through the sync
+   * rather than loading the "from" file.
+   */
+  @Option(names = "--stream",
+    description = "stream 'from' cards instead of loading them (not with -a)")
+  private static boolean stream;
+
+  /**
+   * True to sync even if neither file has changed since the last sync.
+   */
+  @Option(names = "--force",
+    description = "sync even if nothing changed since the last sync")
+  private static boolean force;
+
+  /**
+   * The number of backup generations to keep of each file.
+   */
+  @Option(names = "--backups",
+    description = "keep this many backups of each file (default 3)")
+  private static int backupCount = Backups.DEFAULT_GENERATIONS;
+
+  /**
+   * The backup generation to restore both files from.
+   * Zero means don't restore, but sync.
+   */
+  @Option(names = "--restore",
+    description = "restore both files from this backup generation (1 newest)")
+  private static int restoreGeneration;
+
+  /**
+   * The directory to spill flashcard file cards to,
+   * for decks too big for the heap.
+   * Null means keep the cards on the heap.
+   */
+  @Option(names = "--spill",
+    description = "keep flashcard file cards in a temporary file here")
+  private static File spillDir;
+
+  /**
+   * True to keep the text of flashcard file cards off the heap.
+   */
+  @Option(names = "--off-heap",
+    description = "keep flashcard file card text outside the Java heap"
+      + " (--spill keeps it in its file instead)")
+  private static boolean textOffHeap;
+
+  /**
+   * True to print what a sync would do, without doing it.
+   */
+  @Option(names = "--plan",
+    description = "print what the sync would do, without changing anything")
+  private static boolean plan;
+
+  /**
+   * The file to write a flight recording of the per-card events to.
+   * Null means don't record them.
+   */
+  @Option(names = "--jfr",
+    description = "record per-card timings to this JFR file")
+  private static File jfrFile;
+
   /**
    * Synchronizes the flashcard file to the wiki file.
    *
@@ -120,26 +230,64 @@ public class App implements Callable<Integer> {
     System.exit(exitCode);
   }
 
-  private CardsHolder cardsHolderOpener(final File file)
+  /**
+   * Loads a flashcard file, wiki file or wiki directory.
+   *
+   * @param file       the file or directory
+   * @param loadFilter the records of a flashcard file to load, or null for all
+   * @return the cards
+   */
+  private CardsHolder cardsHolderOpener(final File file,
+                                        final Predicate<FDRecord> loadFilter)
   throws FileNotFoundException, IOException {
     CardsHolder holder = null;
+    if (file != null && file.isDirectory()) {
+        final var pages = new WikiDirectory(file);
+        pages.setBackupGenerations(backupCount);
+        pages.loadFrom(file);
+        return pages;
+    }
     if (file != null) {
-        if (Pattern.compile("\\.html$")
+        if (Pattern.compile("\\.html(\\.gz)?$")
                    .matcher(file.getName())
                    .find()) {
             holder = new WikiData();
-        } else if (Pattern.compile("\\.txt$")
+        } else if (Pattern.compile("\\.txt(\\.gz)?$")
                    .matcher(file.getName())
                    .find()) {
-            holder = new FDFileData();
+            final var fdHolder = new FDFileData();
+            fdHolder.setLoadFilter(loadFilter);
+            fdHolder.setSpillDirectory(spillDir);
+            fdHolder.setTextOffHeap(textOffHeap);
+            holder = fdHolder;
         } else {
             throw new Error(
-              file.getName() + " file name must end in .html or .txt");
+              file.getName() + " file name must end in .html or .txt"
+              + " (optionally followed by .gz), or be a directory");
         }
-        holder.loadFrom(new BufferedReader(new FileReader(file)));
+        holder.loadFrom(file);
     }
     return holder;
   }
+  /**
+   * Returns which records of the "from" file to load:
+   * with categories chosen, those in the categories,
+   * and those whose IDs are in the categories in the "to" file,
+   * so that a card recategorized in the "from" file only
+   * is loaded and updated rather than deleted as missing.
+   *
+   * @param toData the "to" cards
+   * @return the filter, or null to load them all
+   */
+  private static Predicate<FDRecord> fromLoadFilter(final CardsHolder toData) {
+    if (categories == null || categories.isEmpty()) {
+      return null;
+    }
+    return FDRecord.inCategories(categories)
+                   .or(FDRecord.idIn(new CategoryView(toData, categories)
+                                       .getIds()));
+  }
+
   /**
    * the workhorse of our application
    *
@@ -147,14 +295,120 @@ public class App implements Callable<Integer> {
    * loads the flashcard and wiki files,
    * processes them,
    * and writes them back.
+   * Does nothing if neither file has changed since the last sync
+   * with the same options.
+   * Records the per-card flight events to a file if asked to.
    */
   @Override
   public Integer call() throws Exception {
+    if (jfrFile == null) {
+      return run();
+    }
+    final var recording = FlightEvents.startRecording();
+    try {
+      return run();
+    } finally {
+      FlightEvents.finishRecording(recording, jfrFile.toPath());
+      LOGGER.log(Level.INFO, "Flight recording written to {0}", jfrFile);
+    }
+  }
+
+  /**
+   * Restores, or syncs if anything changed since the last sync.
+   *
+   * @return the exit code
+   * @throws Exception if restoring, loading, syncing or saving fails
+   */
+  private int run() throws Exception {
+    if (restoreGeneration > 0) {
+      if (fromFile.isDirectory() || toFile.isDirectory()) {
+        LOGGER.severe("Aborted: Can't restore a wiki directory, "
+                      + "whose pages are backed up one by one.");
+        System.err.println("Aborted");
+        return -1;
+      }
+      new Backups(fromFile, backupCount).restore(restoreGeneration);
+      new Backups(toFile, backupCount).restore(restoreGeneration);
+      return 0;
+    }
+
+    //
+    // Skip the lot if the last sync left nothing to do,
+    // unless only reporting or planning, which are always wanted
+    //
+    final File stateFile = SyncState.stateFileFor(toFile);
+    if (!force && !ignoreExistingIds && !readOnly && !plan
+        && SyncState.unchanged(stateFile, fromFile, toFile, optionsSummary())) {
+      LOGGER.info("Nothing changed since the last sync (--force to sync anyway)");
+      return 0;
+    }
+    if (plan) {
+      return plan();
+    }
+    final int result = stream ? streamSync() : sync();
+    if (result == 0 && !readOnly) {
+      SyncState.record(stateFile, fromFile, toFile, optionsSummary());
+    }
+    return result;
+  }
+
+  /**
+   * Returns the options that affect what a sync does, as a string.
+   *
+   * @return the options
+   */
+  private static String optionsSummary() {
+    return "-m " + moveExtraCards + " -d " + deleteCards
+      + " -u " + updateCards + " -a " + addNewCards
+      + " -c " + categories + " --media " + mediaDir
+      + " --thumbnails " + thumbnailDir + " --pages " + pageSize;
+  }
+
+  /**
+   * Loads both files, syncs them, and saves them.
+   *
+   * @return the exit code
+   * @throws Exception if loading, syncing or saving fails
+   */
+  private int sync() throws Exception {
+
     //
-    // Load the "from" data
+    // Load the "to" data, then the "from" data it needs
     //
-    CardsHolder fromData = cardsHolderOpener(fromFile);
-    CardsHolder toData = cardsHolderOpener(toFile);
+    CardsHolder toData = cardsHolderOpener(toFile, null);
+    CardsHolder fromData = cardsHolderOpener(fromFile, fromLoadFilter(toData));
+    final WikiData wiki = toData instanceof WikiData ? (WikiData) toData : null;
+
+    //
+    // Get thumbnails ready for any pictures going into the wiki
+    //
+    if (mediaDir != null && wiki != null) {
+      final File wikiDir = toFile.getAbsoluteFile().getParentFile();
+      final var media = new MediaCache(
+        mediaDir,
+        thumbnailDir != null ? thumbnailDir : new File(wikiDir, "thumbnails"),
+        wikiDir);
+      media.prepare(fromData.getCards());
+      wiki.setMediaCache(media);
+    }
+
+    //
+    // Narrow both files down to the chosen categories
+    //
+    if (categories != null && !categories.isEmpty()) {
+      if (ignoreExistingIds) {
+        LOGGER.severe("Aborted: Can't ignore IDs of only some categories.");
+        System.err.println("Aborted");
+        return -1;
+      }
+      LOGGER.log(Level.INFO, "Syncing only categories {0}", categories);
+      final var fromView = new CategoryView(fromData, categories);
+      final var toView = new CategoryView(toData, categories);
+      fromView.widen(toView);
+      toView.widen(fromView);
+      fromData = fromView;
+      toData = toView;
+    }
 
     //
     // Update fcData -> wData
@@ -198,28 +452,134 @@ public class App implements Callable<Integer> {
     if (!readOnly) {
       //
       // Save the flashcard data
+      // (the old file is compressed into the backups meanwhile)
       //
-      boolean renamed = fromFile.renameTo(
-        new File(fromFile.getPath() + ".bak"));
-      if (!renamed) {
-        throw new Error("Could not rename " + fromFile.getPath()
-                                            + " file to backup");
-      }
+      final var fromBackups = new Backups(fromFile, backupCount);
+      fromBackups.backUp();
       fromData.saveTo(fromFile);
 
       //
       // Save the wiki data
       //
-      renamed = toFile.renameTo(new File(toFile.getPath() + ".bak"));
-      if (!renamed) {
-        throw new Error("Could not rename " + toFile.getPath()
-                                            + " file to backup");
-      }
+      final var toBackups = new Backups(toFile, backupCount);
+      toBackups.backUp();
       toData.saveTo(toFile);
+      if (pageSize > 0 && wiki != null) {
+        final String name =
+          FileIO.plainName(toFile).replaceFirst("\\.html?$", "");
+        wiki.saveToPages(
+          new File(toFile.getAbsoluteFile().getParentFile(), name + "-index.html"),
+          pageSize);
+      }
+      fromBackups.await();
+      toBackups.await();
     }
     //
     // ...and done
     //
     return 0;
   }
+
+  /**
+   * Loads both files and prints what syncing them would do,
+   * working it out from the cards rather than by syncing,
+   * so that neither file's cards are changed, let alone saved.
+   * Links to media are left out of the comparison of cards.
+   *
+   * @return the exit code
+   * @throws Exception if loading fails
+   */
+  private int plan() throws Exception {
+    CardsHolder toData = cardsHolderOpener(toFile, null);
+    CardsHolder fromData = cardsHolderOpener(fromFile, fromLoadFilter(toData));
+    if (categories != null && !categories.isEmpty()) {
+      if (ignoreExistingIds) {
+        LOGGER.severe("Aborted: Can't ignore IDs of only some categories.");
+        System.err.println("Aborted");
+        return -1;
+      }
+      final var fromView = new CategoryView(fromData, categories);
+      final var toView = new CategoryView(toData, categories);
+      fromView.widen(toView);
+      toView.widen(fromView);
+      fromData = fromView;
+      toData = toView;
+    }
+    if (ignoreExistingIds && toData.getCountOfIds() != 0) {
+      LOGGER.severe("Aborted: Can't ignore flashcard IDs.  "
+                    + "There are cards in the 'to' file.");
+      System.err.println("Aborted");
+      return -1;
+    }
+    final long start = System.nanoTime();
+    final var syncPlan = SyncPlan.of(fromData, toData, ignoreExistingIds,
+      moveExtraCards, deleteCards, updateCards, addNewCards);
+    LOGGER.log(Level.FINE, "Planned in {0} ms",
+               (System.nanoTime() - start) / 1_000_000);
+    System.out.println("Syncing " + fromFile.getName()
+                       + " to " + toFile.getName() + " would");
+    System.out.print(syncPlan.report());
+    return 0;
+  }
+
+  /**
+   * Syncs by streaming the "from" cards through the Sync subscribers,
+   * rather than loading the "from" file,
+   * so syncing starts as soon as the first card is read.
+   *
+   * Only the operations that leave the "from" file unchanged can stream,
+   * so the "from" file is not saved.
+   *
+   * @return the exit code
+   * @throws Exception if loading, syncing or saving fails
+   */
+  private int streamSync() throws Exception {
+    if (addNewCards || ignoreExistingIds
+        || (categories != null && !categories.isEmpty())) {
+      LOGGER.severe("Aborted: Can't stream when adding cards, "
+                    + "ignoring IDs or choosing categories.");
+      System.err.println("Aborted");
+      return -1;
+    }
+    final CardsHolder toData = cardsHolderOpener(toFile, null);
+    final CardPublisher cards = FileIO.plainName(fromFile).endsWith(".html")
+      ? CardPublisher.ofWiki(fromFile)
+      : CardPublisher.ofFlashcards(fromFile);
+    LOGGER.log(
+      Level.INFO,
+      "Streaming from {0} to {1}",
+      new Object[]{fromFile.getName(), toFile.getName()});
+
+    // Each subscriber is made as its phase starts, which it times
+    final var subscribers = new ArrayList<Supplier<SyncSubscriber>>();
+    if (moveExtraCards) {
+      subscribers.add(() -> Sync.copyingUnmatchedIdedCards(toData));
+    }
+    if (deleteCards) {
+      subscribers.add(() -> Sync.deletingExtraCards(toData));
+    }
+    if (updateCards) {
+      subscribers.add(() -> Sync.updating(toData));
+    }
+    for (Supplier<SyncSubscriber> subscriber : subscribers) {
+      final SyncSubscriber s = subscriber.get();
+      cards.subscribe(s);
+      s.getResult().get();
+    }
+
+    if (!readOnly) {
+      //
+      // The flashcard file is unchanged, but is backed up anyway,
+      // so that its generations match the wiki's for --restore
+      //
+      final var fromBackups = new Backups(fromFile, backupCount);
+      fromBackups.backUpCopy();
+      final var toBackups = new Backups(toFile, backupCount);
+      toBackups.backUp();
+      toData.saveTo(toFile);
+      fromBackups.await();
+      toBackups.await();
+    }
+    return 0;
+  }
 }
@@ -0,0 +1,247 @@
+package fdshow;
+
+/*
+ * Backups' fdshow direct dependencies
+ *   FileIO
+ *   ParallelGzipOutputStream
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Keeps several generations of backups of a file, gzipped.
+ *
+ * Backing up just renames the file out of the way,
+ * so that the new version can be written straight away;
+ * compressing it into the newest generation,
+ * and moving the older generations down, happen in the background.
+ * Call await before exiting, so the background work isn't lost.
+ * If it is lost anyway, the renamed file is picked up by the next backup.
+ *
+ * For a.txt, generation 1 (the newest) is a.txt.bak1.gz,
+ * generation 2 is a.txt.bak2.gz, and so on.
+ * Files that are already gzipped are kept as they are,
+ * so a.txt.gz has generations a.txt.gz.bak1, a.txt.gz.bak2, ...
+ */
+class Backups {
+  /**
+   * Adds logging ability.
+   */
+  static final Logger LOGGER = Logger.getLogger(Backups.class.getName());
+
+  /**
+   * The default number of generations kept.
+   */
+  static final int DEFAULT_GENERATIONS = 3;
+
+  /**
+   * The file backed up.
+   */
+  private final File file;
+
+  /**
+   * The number of generations kept.
+   */
+  private final int generations;
+
+  /**
+   * Where the file is renamed to, until it is compressed.
+   */
+  private final File snapshot;
+
+  /**
+   * The background work of the last backup, or null.
+   */
+  private CompletableFuture<Void> pending;
+
+  /**
+   * Constructs a Backups, keeping the specified number of generations.
+   *
+   * @param file        the file to back up
+   * @param generations the number of generations to keep
+   */
+  Backups(final File file, final int generations) {
+    if (generations < 1) {
+      throw new IllegalArgumentException("Must keep at least one generation");
+    }
+    this.file = file;
+    this.generations = generations;
+    snapshot = new File(file.getPath() + ".bak-pending");
+  }
+
+  /**
+   * Returns the file holding a generation of backup.
+   *
+   * @param generation the generation, 1 being the newest
+   * @return the file, which may not exist
+   */
+  File generation(final int generation) {
+    return new File(file.getPath() + ".bak" + generation
+                    + (FileIO.isGzipped(file) ? "" : ".gz"));
+  }
+
+  /**
+   * Returns the generations that exist, newest first.
+   *
+   * @return the generation files
+   */
+  List<File> list() {
+    final var existing = new ArrayList<File>();
+    for (int g = 1; g <= generations; g++) {
+      if (generation(g).exists()) {
+        existing.add(generation(g));
+      }
+    }
+    return existing;
+  }
+
+  /**
+   * Moves the file out of the way, to become the newest backup generation.
+   * Does nothing if the file doesn't exist,
+   * or is a directory of wiki pages, which backs up its own pages.
+   *
+   * @throws IOException if the file can't be moved
+   */
+  void backUp() throws IOException {
+    snapshot(false);
+  }
+
+  /**
+   * Copies the file to become the newest backup generation,
+   * leaving the file in place, for a file that isn't rewritten
+   * but whose generations must stay in step with another's.
+   * Does nothing if the file doesn't exist or is a directory.
+   *
+   * @throws IOException if the file can't be copied
+   */
+  void backUpCopy() throws IOException {
+    snapshot(true);
+  }
+
+  /**
+   * Moves or copies the file to the snapshot,
+   * and starts compressing it into the newest generation.
+   *
+   * @param copy true to copy the file, false to move it
+   * @throws IOException if the file can't be moved or copied
+   */
+  private void snapshot(final boolean copy) throws IOException {
+    await();
+    if (snapshot.exists()) {
+      LOGGER.log(Level.WARNING, "Finishing interrupted backup of {0}", file);
+      rotateIn();
+    }
+    if (!file.isFile()) {
+      return;
+    }
+    if (copy) {
+      Files.copy(file.toPath(), snapshot.toPath(),
+                 StandardCopyOption.REPLACE_EXISTING);
+    } else {
+      Files.move(file.toPath(), snapshot.toPath(),
+                 StandardCopyOption.REPLACE_EXISTING);
+    }
+    pending = CompletableFuture.runAsync(
+      () -> {
+        try {
+          rotateIn();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      },
+      r -> new Thread(r, "Backup " + file.getName()).start());
+  }
+
+  /**
+   * Waits for the background work of the last backup to finish.
+   *
+   * @throws IOException if the background work failed
+   */
+  void await() throws IOException {
+    if (pending == null) {
+      return;
+    }
+    try {
+      pending.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting for backup", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Backing up " + file + " failed", e.getCause());
+    } finally {
+      pending = null;
+    }
+  }
+
+  /**
+   * Moves each generation down one, dropping the oldest,
+   * and compresses the snapshot into the newest.
+   *
+   * @throws IOException if the generations can't be moved or written
+   */
+  private void rotateIn() throws IOException {
+    final long start = System.nanoTime();
+    Files.deleteIfExists(generation(generations).toPath());
+    for (int g = generations - 1; g >= 1; g--) {
+      if (generation(g).exists()) {
+        Files.move(generation(g).toPath(), generation(g + 1).toPath(),
+                   StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    final Path newest = generation(1).toPath();
+    if (FileIO.isGzipped(file)) {
+      Files.move(snapshot.toPath(), newest, StandardCopyOption.REPLACE_EXISTING);
+    } else {
+      final Path partial = Path.of(newest + ".partial");
+      try (OutputStream out = new ParallelGzipOutputStream(
+                                Files.newOutputStream(partial))) {
+        Files.copy(snapshot.toPath(), out);
+      }
+      Files.move(partial, newest, StandardCopyOption.REPLACE_EXISTING);
+      Files.delete(snapshot.toPath());
+    }
+    LOGGER.log(Level.FINE, "Backed up {0} in {1} ms",
+               new Object[]{file, (System.nanoTime() - start) / 1_000_000});
+  }
+
+  /**
+   * Replaces the file with a generation of backup.
+   * The file being replaced is not itself backed up.
+   *
+   * @param generation the generation, 1 being the newest
+   * @throws IOException if the generation doesn't exist or can't be read
+   */
+  void restore(final int generation) throws IOException {
+    await();
+    final File from = generation(generation);
+    if (!from.exists()) {
+      throw new IOException("There is no backup " + from);
+    }
+    final Path partial = Path.of(file.getPath() + ".restoring");
+    if (FileIO.isGzipped(file)) {
+      Files.copy(from.toPath(), partial, StandardCopyOption.REPLACE_EXISTING);
+    } else {
+      try (InputStream in = new GZIPInputStream(
+                              Files.newInputStream(from.toPath()),
+                              FileIO.BUFFER_SIZE)) {
+        Files.copy(in, partial, StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    Files.move(partial, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    LOGGER.log(Level.INFO, "Restored {0} from {1}", new Object[]{file, from});
+  }
+}
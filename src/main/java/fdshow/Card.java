@@ -41,6 +41,18 @@ class Card {
     this.id = id;
   }
 
+  /**
+   * Creates a Card with the specified id,
+   * for subclasses that keep their fields elsewhere.
+   * Such subclasses must override getData and getField.
+   *
+   * @param id the id
+   */
+  protected Card(final Integer id) {
+    this.dataByField = null;
+    this.id = id;
+  }
+
   /**
    * Creates a Card as a duplicate of the given Card.
    *
@@ -58,6 +70,17 @@ class Card {
     return new HashMap<>(dataByField);
   }
 
+  /**
+   * Returns the contents of a single field, without copying the whole card.
+   * Returns null if the card has no such field.
+   *
+   * @param name the field name
+   * @return the field contents, or null
+   */
+  String getField(final String name) {
+    return dataByField.get(name);
+  }
+
   /**
    * Gets the card's ID.
    * If the card does not have an ID, returns null.
@@ -93,12 +116,12 @@ class Card {
       }
       Card c = (Card) o;
       boolean idsSame = Objects.equals(id, c.getId()); // null is legitimate
-      return idsSame && dataByField.equals(c.getData());
+      return idsSame && getData().equals(c.getData());
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(dataByField, id);
+    return Objects.hash(getData(), id);
   }
 
   /**
@@ -0,0 +1,198 @@
+package fdshow;
+
+/*
+ * CardPublisher's fdshow direct dependencies
+ *   Card
+ *   FDCard
+ *   FDCards
+ *   FDRecord
+ *   FileIO
+ *   FieldNames
+ *   Header
+ *   WikiData
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jsoup.Jsoup;
+
+/**
+ * Publishes the cards of a flashcard or wiki file as they are read,
+ * so that subscribers, such as the Sync subscribers,
+ * can start work before the whole file has been read.
+ *
+ * Reading is driven by demand:
+ * at most BUFFER cards are read ahead of what each subscriber has taken,
+ * so memory stays bounded however big the file.
+ *
+ * Each subscription reads the file afresh, on a thread of its own.
+ */
+class CardPublisher implements Flow.Publisher<Card> {
+  /**
+   * Adds logging ability.
+   */
+  static final Logger LOGGER = Logger.getLogger(CardPublisher.class.getName());
+
+  /**
+   * The most cards read ahead of a subscriber.
+   */
+  static final int BUFFER = 256;
+
+  /**
+   * The file to read.
+   */
+  private final File file;
+
+  /**
+   * True if the file is a wiki, false if a flashcard file.
+   */
+  private final boolean wiki;
+
+  /**
+   * Constructs a publisher of the cards in the specified file.
+   *
+   * @param file the file
+   * @param wiki true if the file is a wiki, false if a flashcard file
+   */
+  private CardPublisher(final File file, final boolean wiki) {
+    this.file = file;
+    this.wiki = wiki;
+  }
+
+  /**
+   * Returns a publisher of the cards in a Flashcards Deluxe export file.
+   *
+   * @param file the file
+   * @return the publisher
+   */
+  static CardPublisher ofFlashcards(final File file) {
+    return new CardPublisher(file, false);
+  }
+
+  /**
+   * Returns a publisher of the cards in a wiki file.
+   *
+   * @param file the file
+   * @return the publisher
+   */
+  static CardPublisher ofWiki(final File file) {
+    return new CardPublisher(file, true);
+  }
+
+  /**
+   * Starts reading the file for the subscriber.
+   *
+   * @param subscriber the subscriber
+   */
+  @Override
+  public void subscribe(final Flow.Subscriber<? super Card> subscriber) {
+    final var publisher = new SubmissionPublisher<Card>(
+      java.util.concurrent.ForkJoinPool.commonPool(), BUFFER);
+    publisher.subscribe(subscriber);
+    final var reader = new Thread(() -> {
+      try (BufferedReader r = FileIO.openReader(file)) {
+        if (wiki) {
+          readWikiCards(r, publisher::submit);
+        } else {
+          readFlashcards(r, publisher::submit);
+        }
+        publisher.close();
+      } catch (IOException | RuntimeException e) {
+        LOGGER.log(Level.WARNING, "Failed reading " + file, e);
+        publisher.closeExceptionally(e);
+      }
+    }, "CardPublisher " + file.getName());
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  /**
+   * Reads the cards of a Flashcards Deluxe export file,
+   * passing each on as it is read.
+   *
+   * @param r    the reader, at the start of the file
+   * @param sink where to pass the cards
+   */
+  static void readFlashcards(final BufferedReader r, final Consumer<Card> sink) {
+    new Header(r);
+    final var fields = new FieldNames(r);
+    final var rec = new FDRecord(fields);
+    while (FDCards.hasNextCard(r)) {
+      rec.readFrom(r);
+      sink.accept(new FDCard(rec, fields));
+    }
+  }
+
+  /**
+   * Reads the cards of a wiki file, passing each on as it is read.
+   *
+   * Rather than parsing the whole document,
+   * the text of each card element is cut out and parsed on its own.
+   * Card elements don't nest, so the end of a card is the next end tag.
+   *
+   * @param r    the reader, at the start of the file
+   * @param sink where to pass the cards
+   * @throws IOException if the reader does
+   */
+  static void readWikiCards(final Reader r, final Consumer<Card> sink)
+  throws IOException {
+    final var text = new StringBuilder();
+    final char[] chunk = new char[1 << 16];
+    int scanned = 0; // where to look for the next card from
+    for (int n = r.read(chunk); n != -1; n = r.read(chunk)) {
+      text.append(chunk, 0, n);
+      while (true) {
+        final int start = cardStart(text, scanned);
+        if (start == -1) {
+          // keep just enough to catch a start tag split between chunks
+          final int keep = Math.min(text.length(), "<card".length());
+          text.delete(0, text.length() - keep);
+          scanned = 0;
+          break;
+        }
+        final int end = text.indexOf("</card>", start);
+        if (end == -1) {
+          text.delete(0, start);
+          scanned = 0;
+          break;
+        }
+        final int after = end + "</card>".length();
+        sink.accept(WikiData.asCard(
+          Jsoup.parseBodyFragment(text.substring(start, after))
+               .selectFirst("card"),
+          null));
+        scanned = after;
+      }
+    }
+  }
+
+  /**
+   * Returns where the next card start tag begins, or -1 if there isn't one.
+   *
+   * @param text the text
+   * @param from where to look from
+   * @return the index of the start tag, or -1
+   */
+  private static int cardStart(final StringBuilder text, final int from) {
+    for (int i = text.indexOf("<card", from); i != -1;
+         i = text.indexOf("<card", i + 1)) {
+      if (i + 5 < text.length()) {
+        final char next = text.charAt(i + 5);
+        if (next == '>' || Character.isWhitespace(next)) {
+          return i;
+        }
+      } else {
+        return -1; // can't tell yet
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,744 @@
+package fdshow;
+
+/*
+ * CardServer's fdshow direct dependencies
+ *   FDFileData
+ *   WikiData
+ *   CardsHolder
+ *   ConcurrentHolder
+ *   Sync
+ *   Card
+ *   Backups
+ *   Transaction
+ */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+/**
+ * Keeps a flashcard file and a wiki file loaded,
+ * and answers queries and runs syncs on them over local HTTP,
+ * so other tools needn't start a JVM for each one.
+ *
+ * <UL>
+ *  <LI>GET /cards/ID - the card with that ID</LI>
+ *  <LI>GET /ids - the card IDs, null for unIDed cards</LI>
+ *  <LI>GET /search?q=TEXT - the cards with TEXT in any field</LI>
+ *  <LI>POST /sync/update, /sync/add, /sync/delete, /sync/move -
+ *    the Sync operations of App's -u, -a, -d and -m options</LI>
+ *  <LI>POST /save - save both files, keeping backups as App does</LI>
+ *  <LI>GET /stats - request latency percentiles, by request</LI>
+ * </UL>
+ *
+ * Queries look at the flashcard file, unless given ?in=wiki.
+ * Answers are JSON.
+ *
+ * Every request must carry the X-Fdshow-Token header,
+ * with the secret made afresh each run, which is printed at startup
+ * or written to the --token-file readable only by its owner.
+ * Requests with an Origin header come from web pages, and are refused,
+ * so that a page open in a browser can't query or change the cards.
+ */
+@Command(name = "CardServer",
+          description = "Flashcard and wiki query and sync server",
+          mixinStandardHelpOptions = true,
+          version = "pre-release")
+public class CardServer implements Callable<Integer> {
+
+  /**
+   * Adds logging ability.
+   */
+  static final Logger LOGGER = Logger.getLogger(CardServer.class.getName());
+
+  /**
+   * File name of flashcard data file.
+   */
+  @Parameters(
+    index = "0",
+    description = "Flashcard file to sync from")
+  private File fromFile;
+
+  /**
+   * File name of wiki data file.
+   */
+  @Parameters(
+    index = "1",
+    description = "Wiki file to sync to")
+  private File toFile;
+
+  /**
+   * The port to listen on.
+   */
+  @Option(names = "--port",
+    description = "listen on this local port (default 8765)")
+  private int port = 8765;
+
+  /**
+   * Where to write the token, or null to print it.
+   */
+  @Option(names = "--token-file",
+    description = "write the request token to this file, not standard output")
+  private File tokenFile;
+
+  /**
+   * The header requests carry the token in.
+   */
+  static final String TOKEN_HEADER = "X-Fdshow-Token";
+
+  /**
+   * The secret every request must carry, made afresh each run.
+   */
+  private final String token = newToken();
+
+  /**
+   * The flashcard cards.
+   */
+  private ConcurrentHolder from;
+
+  /**
+   * The wiki cards.
+   */
+  private ConcurrentHolder to;
+
+  /**
+   * The running server, or null.
+   */
+  private HttpServer server;
+
+  /**
+   * The threads handling requests.
+   */
+  private ExecutorService executor;
+
+  /**
+   * Counted down when the server stops.
+   */
+  private final CountDownLatch stopped = new CountDownLatch(1);
+
+  /**
+   * The requests latencies are kept for.
+   * Others, whatever their path, aren't timed,
+   * so that clients can't grow the latencies without bound.
+   */
+  private static final Set<String> ROUTES = Set.of(
+    "GET /cards/ID", "GET /ids", "GET /search",
+    "POST /sync/update", "POST /sync/add",
+    "POST /sync/delete", "POST /sync/move",
+    "POST /save", "GET /stats");
+
+  /**
+   * The recent latencies, by request.
+   */
+  private final Map<String, Latencies> latencies = new TreeMap<>();
+
+  /**
+   * Constructs a CardServer to be set up from the command line.
+   */
+  CardServer() {
+  }
+
+  /**
+   * Constructs a CardServer serving the specified cards.
+   * They are saved to the specified files.
+   *
+   * @param fromData the flashcard cards
+   * @param toData   the wiki cards
+   * @param fromFile where to save the flashcard cards
+   * @param toFile   where to save the wiki cards
+   */
+  CardServer(
+          final CardsHolder fromData,
+          final CardsHolder toData,
+          final File fromFile,
+          final File toFile) {
+    from = new ConcurrentHolder(fromData);
+    to = new ConcurrentHolder(toData);
+    this.fromFile = fromFile;
+    this.toFile = toFile;
+  }
+
+  /**
+   * Serves a flashcard file and wiki file until killed.
+   *
+   * @param args the command line arguments
+   */
+  public static void main(final String[] args) {
+    int exitCode = new CommandLine(new CardServer()).execute(args);
+    System.exit(exitCode);
+  }
+
+  /**
+   * Loads the files and serves them until stopped.
+   */
+  @Override
+  public Integer call() throws Exception {
+    final var fdData = new FDFileData();
+    fdData.loadFrom(fromFile);
+    final var wikiData = new WikiData();
+    wikiData.loadFrom(toFile);
+    from = new ConcurrentHolder(fdData);
+    to = new ConcurrentHolder(wikiData);
+    if (tokenFile == null) {
+      System.out.println(TOKEN_HEADER + ": " + token);
+    } else {
+      writeToken(tokenFile);
+    }
+    start(port);
+    stopped.await();
+    return 0;
+  }
+
+  /**
+   * @return the secret every request must carry
+   */
+  String token() {
+    return token;
+  }
+
+  /**
+   * Returns a new random token.
+   *
+   * @return the token
+   */
+  private static String newToken() {
+    final byte[] bytes = new byte[32];
+    new SecureRandom().nextBytes(bytes);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+  }
+
+  /**
+   * Writes the token to a file only its owner can read,
+   * replacing any file already there.
+   *
+   * @param file the file
+   * @throws IOException if the file can't be written
+   */
+  void writeToken(final File file) throws IOException {
+    final Path path = file.toPath();
+    Files.deleteIfExists(path);
+    try {
+      Files.createFile(path, PosixFilePermissions.asFileAttribute(
+                               PosixFilePermissions.fromString("rw-------")));
+    } catch (UnsupportedOperationException e) {
+      Files.createFile(path);
+      file.setReadable(false, false);
+      file.setReadable(true, true);
+      file.setWritable(false, false);
+      file.setWritable(true, true);
+    }
+    Files.writeString(path, token + System.lineSeparator());
+  }
+
+  /**
+   * Starts serving on the specified local port.
+   *
+   * @param onPort the port, or 0 for any free port
+   * @return the port being served on
+   * @throws IOException if the port can't be bound
+   */
+  int start(final int onPort) throws IOException {
+    server = HttpServer.create(
+      new InetSocketAddress(InetAddress.getLoopbackAddress(), onPort), 0);
+    executor = newExecutor();
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+    server.start();
+    final int bound = server.getAddress().getPort();
+    LOGGER.log(Level.INFO, "Serving {0} and {1} on port {2,number,#}",
+               new Object[]{fromFile, toFile, bound});
+    return bound;
+  }
+
+  /**
+   * Stops serving, letting requests in progress finish.
+   */
+  void stop() {
+    if (server != null) {
+      server.stop(1);
+      executor.shutdown();
+      server = null;
+    }
+    stopped.countDown();
+  }
+
+  /**
+   * Returns an executor running each request on its own virtual thread,
+   * where the JDK has them, or else on a pool of platform threads.
+   *
+   * @return the executor
+   */
+  private static ExecutorService newExecutor() {
+    try {
+      return (ExecutorService) Executors.class
+        .getMethod("newVirtualThreadPerTaskExecutor")
+        .invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool();
+    }
+  }
+
+  /**
+   * Handles a request, timing it.
+   *
+   * @param exchange the request and its response
+   * @throws IOException if the response can't be sent
+   */
+  private void handle(final HttpExchange exchange) throws IOException {
+    final long start = System.nanoTime();
+    final String path = exchange.getRequestURI().getPath();
+    final String[] parts = path.substring(1).split("/", -1);
+    final String route = exchange.getRequestMethod() + " /"
+      + (parts[0].equals("cards") ? "cards/ID" : path.substring(1));
+    int status;
+    String body;
+    final String method = methodFor(parts[0]);
+    final String refusal = refusal(exchange);
+    try {
+      if (refusal != null) {
+        status = 403;
+        body = error(refusal);
+      } else if (!method.equals(exchange.getRequestMethod())) {
+        status = 405;
+        body = error("Use " + method);
+      } else {
+        body = respond(parts, query(exchange.getRequestURI().getRawQuery()));
+        status = body == null ? 404 : 200;
+        if (body == null) {
+          body = error("Not found: " + path);
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      status = 400;
+      body = error(e.getMessage());
+    } catch (RuntimeException | IOException e) {
+      LOGGER.log(Level.WARNING, "Failed: " + route, e);
+      status = 500;
+      body = error(String.valueOf(e));
+    }
+    final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders()
+            .set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+    if (status != 404 && refusal == null && ROUTES.contains(route)) {
+      latencies(route).add(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Returns why a request is refused, or null if it isn't:
+   * it comes from a web page, or lacks this run's token.
+   *
+   * @param exchange the request
+   * @return the reason, or null
+   */
+  private String refusal(final HttpExchange exchange) {
+    if (exchange.getRequestHeaders().containsKey("Origin")) {
+      return "Requests from web pages are refused";
+    }
+    final String given = exchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+    if (given == null
+        || !MessageDigest.isEqual(given.getBytes(StandardCharsets.UTF_8),
+                                  token.getBytes(StandardCharsets.UTF_8))) {
+      return "Missing or wrong " + TOKEN_HEADER;
+    }
+    return null;
+  }
+
+  /**
+   * Returns the latencies kept for a request.
+   *
+   * @param route the request's method and path
+   * @return the latencies
+   */
+  private Latencies latencies(final String route) {
+    synchronized (latencies) {
+      return latencies.computeIfAbsent(route, r -> new Latencies());
+    }
+  }
+
+  /**
+   * Returns the request method a resource takes.
+   * Requests that change the cards are POSTs.
+   *
+   * @param resource the first part of the request path
+   * @return the method
+   */
+  private static String methodFor(final String resource) {
+    return resource.equals("sync") || resource.equals("save") ? "POST" : "GET";
+  }
+
+  /**
+   * Answers a request.
+   *
+   * @param parts  the parts of the request path
+   * @param params the query parameters
+   * @return the JSON answer, or null if there is no such resource
+   * @throws IOException if saving fails
+   */
+  private String respond(
+          final String[] parts,
+          final Map<String, String> params)
+  throws IOException {
+    switch (parts[0]) {
+      case "cards":
+        if (parts.length != 2) {
+          return null;
+        }
+        final Card c = holder(params).getCard(parseId(parts[1]));
+        return c == null ? null : json(c);
+      case "ids":
+        return holder(params).getIds()
+                             .stream()
+                             .map(String::valueOf)
+                             .collect(Collectors.joining(",", "[", "]"));
+      case "search":
+        return search(holder(params), params.get("q"));
+      case "sync":
+        return parts.length == 2 ? sync(parts[1]) : null;
+      case "save":
+        save();
+        return "{\"saved\":true}";
+      case "stats":
+        return stats();
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Returns the holder a query asks about.
+   *
+   * @param params the query parameters
+   * @return the flashcard holder, or the wiki holder for in=wiki
+   */
+  private CardsHolder holder(final Map<String, String> params) {
+    final String in = params.getOrDefault("in", "flashcards");
+    switch (in) {
+      case "flashcards":
+        return from;
+      case "wiki":
+        return to;
+      default:
+        throw new IllegalArgumentException("in must be flashcards or wiki");
+    }
+  }
+
+  /**
+   * Returns a card ID parsed from a request.
+   *
+   * @param s the ID, as text
+   * @return the ID
+   */
+  private static Integer parseId(final String s) {
+    try {
+      return Integer.valueOf(s);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Bad card ID '" + s + "'");
+    }
+  }
+
+  /**
+   * Returns the cards with the specified text in any field, ignoring case.
+   *
+   * @param holder the cards to search
+   * @param text   the text to search for
+   * @return the JSON array of cards
+   */
+  private static String search(final CardsHolder holder, final String text) {
+    if (text == null || text.isEmpty()) {
+      throw new IllegalArgumentException("Search needs q=TEXT");
+    }
+    final String lower = text.toLowerCase(Locale.ROOT);
+    return holder.getCards()
+                 .stream()
+                 .filter(c -> c.getData()
+                               .values()
+                               .stream()
+                               .anyMatch(v -> v != null && v.toLowerCase(Locale.ROOT)
+                                                            .contains(lower)))
+                 .map(CardServer::json)
+                 .collect(Collectors.joining(",", "[", "]"));
+  }
+
+  /**
+   * Runs a Sync operation from the flashcards to the wiki,
+   * with both locked for the whole operation.
+   * If the operation fails part way, its changes are rolled back,
+   * so that a later save doesn't write half a sync.
+   *
+   * @param operation update, add, delete or move
+   * @return the JSON result, or null if there is no such operation
+   */
+  private String sync(final String operation) {
+    final Supplier<Integer> action;
+    switch (operation) {
+      case "update":
+        action = () -> Sync.update(from, to);
+        break;
+      case "add":
+        action = () -> {
+          final int before = to.getCountOfIds();
+          Sync.markAndAddNewCards(from, to);
+          return to.getCountOfIds() - before;
+        };
+        break;
+      case "delete":
+        action = () -> {
+          final int before = to.getCountOfIds();
+          Sync.deleteExtraCards(from, to);
+          return before - to.getCountOfIds();
+        };
+        break;
+      case "move":
+        action = () -> Sync.copyUnmatchedIdedCards(from, to);
+        break;
+      default:
+        return null;
+    }
+    // always lock the flashcards first, so syncs can't deadlock
+    final int count = from.atomically(() -> to.atomically(() -> {
+      try (var tx = new Transaction(from, to)) {
+        final int changed = action.get();
+        tx.commit();
+        return changed;
+      }
+    }));
+    return "{\"" + operation + "\":" + count + "}";
+  }
+
+  /**
+   * Saves both files, backing up the old ones first.
+   *
+   * @throws IOException if saving fails
+   */
+  private void save() throws IOException {
+    final IOException[] failure = new IOException[1];
+    from.atomically(() -> to.atomically(() -> {
+      try {
+        saveWithBackup(from, fromFile);
+        saveWithBackup(to, toFile);
+      } catch (IOException e) {
+        failure[0] = e;
+      }
+      return null;
+    }));
+    if (failure[0] != null) {
+      throw failure[0];
+    }
+  }
+
+  /**
+   * Saves a holder to a file, backing up the old file first.
+   *
+   * @param holder the holder
+   * @param file   the file
+   * @throws IOException if saving fails
+   */
+  private static void saveWithBackup(final CardsHolder holder, final File file)
+  throws IOException {
+    final var backups = new Backups(file, Backups.DEFAULT_GENERATIONS);
+    backups.backUp();
+    holder.saveTo(file);
+    backups.await();
+  }
+
+  /**
+   * Returns the latency percentiles of each request, in milliseconds.
+   *
+   * @return the JSON statistics
+   */
+  private String stats() {
+    final Map<String, Latencies> snapshot;
+    synchronized (latencies) {
+      snapshot = new TreeMap<>(latencies);
+    }
+    return snapshot.entrySet()
+                   .stream()
+                   .map(e -> quote(e.getKey()) + ":" + e.getValue().toJson())
+                   .collect(Collectors.joining(",", "{", "}"));
+  }
+
+  /**
+   * Returns the query parameters, decoded.
+   *
+   * @param rawQuery the raw query, possibly null
+   * @return the parameters, by name
+   */
+  private static Map<String, String> query(final String rawQuery) {
+    final var params = new HashMap<String, String>();
+    if (rawQuery != null) {
+      for (String pair : rawQuery.split("&")) {
+        final int eq = pair.indexOf('=');
+        final String name = eq == -1 ? pair : pair.substring(0, eq);
+        final String value = eq == -1 ? "" : pair.substring(eq + 1);
+        params.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                   URLDecoder.decode(value, StandardCharsets.UTF_8));
+      }
+    }
+    return params;
+  }
+
+  /**
+   * Returns a card as JSON.
+   *
+   * @param c the card
+   * @return the JSON object
+   */
+  static String json(final Card c) {
+    final var fields = new TreeMap<>(c.getData());
+    return "{\"id\":" + c.getId() + ",\"fields\":"
+      + fields.entrySet()
+              .stream()
+              .map(e -> quote(e.getKey()) + ":" + quote(e.getValue()))
+              .collect(Collectors.joining(",", "{", "}"))
+      + "}";
+  }
+
+  /**
+   * Returns an error as JSON.
+   *
+   * @param message the error message
+   * @return the JSON object
+   */
+  private static String error(final String message) {
+    return "{\"error\":" + quote(message) + "}";
+  }
+
+  /**
+   * Returns a string as a JSON string.
+   *
+   * @param s the string, possibly null
+   * @return the JSON string, or null
+   */
+  static String quote(final String s) {
+    if (s == null) {
+      return "null";
+    }
+    final var sb = new StringBuilder(s.length() + 2).append('"');
+    for (int i = 0; i < s.length(); i++) {
+      final char ch = s.charAt(i);
+      switch (ch) {
+        case '"':
+          sb.append("\\\"");
+          break;
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        default:
+          if (ch < 0x20) {
+            sb.append(String.format("\\u%04x", (int) ch));
+          } else {
+            sb.append(ch);
+          }
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+  /**
+   * The most recent latencies of one kind of request.
+   */
+  private static final class Latencies {
+    /**
+     * The number of latencies kept.
+     */
+    private static final int KEPT = 4096;
+
+    /**
+     * The most recent latencies, in nanoseconds, as a ring.
+     */
+    private final long[] nanos = new long[KEPT];
+
+    /**
+     * The number of requests ever timed.
+     */
+    private long count;
+
+    /**
+     * Records a latency.
+     *
+     * @param latency the latency, in nanoseconds
+     */
+    synchronized void add(final long latency) {
+      nanos[(int) (count++ % KEPT)] = latency;
+    }
+
+    /**
+     * Returns the count and latency percentiles as JSON.
+     *
+     * @return the JSON object
+     */
+    String toJson() {
+      final long[] sorted;
+      final long total;
+      synchronized (this) {
+        total = count;
+        sorted = Arrays.copyOf(nanos, (int) Math.min(count, KEPT));
+      }
+      Arrays.sort(sorted);
+      return String.format(Locale.ROOT,
+        "{\"count\":%d,\"p50_ms\":%.3f,\"p90_ms\":%.3f,"
+          + "\"p99_ms\":%.3f,\"max_ms\":%.3f}",
+        total, percentile(sorted, 50), percentile(sorted, 90),
+        percentile(sorted, 99), percentile(sorted, 100));
+    }
+
+    /**
+     * Returns a percentile, by the nearest rank, in milliseconds.
+     *
+     * @param sorted the sorted latencies
+     * @param p      the percentile
+     * @return the latency, or 0 if there are none
+     */
+    private static double percentile(final long[] sorted, final int p) {
+      if (sorted.length == 0) {
+        return 0;
+      }
+      final int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+      return sorted[Math.max(rank, 1) - 1] / 1e6;
+    }
+  }
+}
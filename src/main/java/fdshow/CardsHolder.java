@@ -3,12 +3,19 @@ package fdshow;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
 
 /*
  * CardsHolder's fdshow direct dependencies
  *   Card
+ *   CategoryIndex
+ *   FileIO
+ *   Transaction
  */
 
 import java.util.Objects;
@@ -19,7 +26,17 @@ import java.util.Optional;
  * and a wiki file that contains, among other things, flashcards.
  */
 abstract class CardsHolder {
-    
+
+  /**
+   * The category index, or null if it needs (re)building.
+   */
+  private CategoryIndex categoryIndex;
+
+  /**
+   * The transaction recording how to undo changes, or null.
+   */
+  private Transaction transaction;
+
   /**
    * Saves the CardsHolder to the indicated file, and closes the file.
    * @param file the file to save the CardsHolder to
@@ -28,9 +45,23 @@ abstract class CardsHolder {
   
   /**
    * Loads the CardsHolder from the given BufferedReader.
+   * A holder that isn't kept in a single file, such as WikiDirectory,
+   * can't be loaded this way; load it with loadFrom(File) instead.
    * @param r the BufferedReader to load the CardsHolder from.
    */
   abstract void loadFrom(BufferedReader r) throws java.io.IOException;
+
+  /**
+   * Loads the CardsHolder from the indicated file, and closes the file.
+   * Holders that aren't kept in a single file override this.
+   * @param file the file, gzipped or not, to load the CardsHolder from
+   * @throws IOException if the file can't be read
+   */
+  void loadFrom(final File file) throws IOException {
+    try (BufferedReader r = FileIO.openReader(file)) {
+      loadFrom(r);
+    }
+  }
   
   /**
    * Returns a list of IDs in the CardsHolder.
@@ -74,6 +105,19 @@ abstract class CardsHolder {
     return getIds().contains(id);
   }
 
+  /**
+   * Returns true if the CardsHolder has a card with the specified ID,
+   * whether or not the card is loaded.
+   * Only holders that can leave cards unloaded, such as FDCards
+   * with a load filter, need override this.
+   *
+   * @param id  the ID to check
+   * @return true if the CardsHolder has the ID
+   */
+  boolean holdsId(final Integer id) {
+    return contains(id);
+  }
+
   /**
    * Gets the specified card.
    *
@@ -82,12 +126,125 @@ abstract class CardsHolder {
    */
   abstract Card getCard(Integer id);
 
+  /**
+   * Hints that the cards with the specified IDs are about to be read
+   * or changed one at a time,
+   * so that a holder that loads cards lazily
+   * can load them all at once, in parallel.
+   * This default does nothing.
+   *
+   * @param ids the IDs of the cards, which need not all be present
+   */
+  void prefetch(final Collection<Integer> ids) {
+  }
+
   /**
    * Put IDs on the unIDed cards, and return a list of those new IDs.
    *
    * @return the newly assigned card IDs
    */
-  abstract List<Integer> markBlankIds();
+  List<Integer> markBlankIds() {
+    return markBlankIds(null);
+  }
+
+  /**
+   * Put IDs on the unIDed cards at the specified positions,
+   * and return a list of those new IDs.
+   * Positions count cards in the order getCards returns them.
+   *
+   * @param positions the positions to consider, or null for all cards
+   * @return the newly assigned card IDs
+   */
+  abstract List<Integer> markBlankIds(BitSet positions);
+
+  /**
+   * Returns the index of card positions by category.
+   * The index is built when first needed after loading or changing cards.
+   *
+   * @return the category index
+   */
+  CategoryIndex getCategoryIndex() {
+    if (categoryIndex == null) {
+      categoryIndex = buildCategoryIndex();
+    }
+    return categoryIndex;
+  }
+
+  /**
+   * Builds the category index from scratch.
+   * Subclasses may override this with something cheaper than getCards.
+   *
+   * @return the new category index
+   */
+  CategoryIndex buildCategoryIndex() {
+    final var index = new CategoryIndex();
+    int position = 0;
+    for (Card c : getCards()) {
+      index.add(position++, c.getField(CategoryIndex.FIELD));
+    }
+    return index;
+  }
+
+  /**
+   * Returns true if the read-only methods
+   * (getIds, contains, getCard, getCards and saveTo)
+   * may safely be called by several threads at once,
+   * with no thread changing the cards meanwhile.
+   * Holders that quietly cache or build state while reading return false.
+   *
+   * @return true if reads may run in parallel
+   */
+  boolean allowsParallelReads() {
+    return false;
+  }
+
+  /**
+   * Notes that cards have been added, removed or changed,
+   * so that the category index must be rebuilt.
+   */
+  void cardsChanged() {
+    categoryIndex = null;
+  }
+
+  /**
+   * Starts or stops recording how to undo changes to the cards.
+   * Holders that wrap another holder pass this on to it.
+   *
+   * @param t the transaction to record changes in, or null to stop
+   * @throws IllegalStateException if already recording for another
+   */
+  void setTransaction(final Transaction t) {
+    if (t != null && transaction != null && t != transaction) {
+      throw new IllegalStateException("Already in a transaction");
+    }
+    transaction = t;
+  }
+
+  /**
+   * Returns true if changes are being recorded,
+   * so that working out how to undo a change
+   * is only done when it may be needed.
+   *
+   * @return true if in a transaction
+   */
+  boolean isRecording() {
+    return transaction != null;
+  }
+
+  /**
+   * Records how to undo a change just made,
+   * if changes are being recorded.
+   * The undo works on the holder's own state, not through its methods,
+   * and must leave it as it was before the change,
+   * given that all later changes have been undone first.
+   *
+   * @param undo undoes the change
+   */
+  void recordUndo(final Runnable undo) {
+    if (transaction != null) {
+      transaction.record(undo);
+    }
+  }
 
   /**
    * Updates the specified card.
@@ -100,6 +257,29 @@ abstract class CardsHolder {
    */
   abstract void updateCard(Card c);
 
+  /**
+   * Returns true if updating from the specified card
+   * would change the contents of the matching card,
+   * without updating it.
+   *
+   * This default compares the card with the matching card's fields,
+   * as updateCard replaces them all.
+   * Holders that merge fields, or store them differently
+   * from how they receive them, override it.
+   *
+   * @param c the card to update from,
+   *          with an ID that is already in the CardsHolder
+   * @return true if the update would change the card
+   */
+  boolean wouldChange(final Card c) {
+    final Card old = getCard(c.getId());
+    if (old == null) {
+      throw new IllegalArgumentException(
+        String.format("Can't compare id '%d' as it is not present.", c.getId()));
+    }
+    return !c.getData().equals(old.getData());
+  }
+
   /**
    * Adds the specified card.
    *
@@ -109,6 +289,43 @@ abstract class CardsHolder {
    */
   abstract void addCard(Card c);
 
+  /**
+   * Adds the specified cards, in order.
+   * The IDs are all checked first, so that if any is already present,
+   * or repeated among the cards, none are added.
+   * Null cards are skipped.
+   *
+   * This default adds the cards one at a time.
+   * Holders that can add many cards at once more cheaply override it.
+   *
+   * @param cards the cards to add
+   * @throws IllegalArgumentException if an ID is present or repeated
+   */
+  void addCards(final List<? extends Card> cards) {
+    checkNewIds(cards);
+    for (Card c : cards) {
+      addCard(c);
+    }
+  }
+
+  /**
+   * Checks that none of the IDs of cards about to be added
+   * is already present, or repeated among the cards.
+   *
+   * @param cards the cards about to be added
+   * @throws IllegalArgumentException if an ID is present or repeated
+   */
+  void checkNewIds(final List<? extends Card> cards) {
+    final Set<Integer> seen = new HashSet<>();
+    for (Card c : cards) {
+      final Integer id = c == null ? null : c.getId();
+      if (id != null && (contains(id) || !seen.add(id))) {
+        throw new IllegalArgumentException(
+          String.format("Can't add id '%d' as it is already present.", id));
+      }
+    }
+  }
+
   // javadoc comments from superclass
   public String toString()
   throws UnsupportedOperationException
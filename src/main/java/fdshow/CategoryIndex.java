@@ -0,0 +1,109 @@
+package fdshow;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+//
+// CategoryIndex's fdshow direct dependencies
+//   None.
+//
+
+/**
+ * Maps each card category to a bitmap of the positions
+ * of the cards in that category.
+ *
+ * A card's categories come from its "Category 1" field.
+ * Flashcards Deluxe separates multiple categories with '|',
+ * as in the "category-1" header line.
+ */
+class CategoryIndex {
+  /**
+   * The name of the field that holds a card's categories.
+   */
+  static final String FIELD = "Category 1";
+
+  /**
+   * The card positions, by category.
+   */
+  private final Map<String, BitSet> positionsByCategory = new HashMap<>();
+
+  /**
+   * Records the categories of the card at the specified position.
+   *
+   * @param position the card's position
+   * @param field    the card's "Category 1" field, possibly null
+   */
+  void add(final int position, final String field) {
+    if (field == null) {
+      return;
+    }
+    int start = 0;
+    while (start <= field.length()) {
+      int end = field.indexOf('|', start);
+      if (end == -1) {
+        end = field.length();
+      }
+      final String category = field.substring(start, end).strip();
+      if (!category.isEmpty()) {
+        positionsByCategory.computeIfAbsent(category, k -> new BitSet())
+                           .set(position);
+      }
+      start = end + 1;
+    }
+  }
+
+  /**
+   * Returns the categories present, in sorted order.
+   *
+   * @return the categories
+   */
+  Set<String> getCategories() {
+    return new TreeSet<>(positionsByCategory.keySet());
+  }
+
+  /**
+   * Returns the positions of the cards in the specified category.
+   * The result is a new BitSet, so modifying it does not modify the index.
+   *
+   * @param category the category
+   * @return the positions, empty if the category is not present
+   */
+  BitSet get(final String category) {
+    final BitSet positions = positionsByCategory.get(category);
+    return positions == null ? new BitSet() : (BitSet) positions.clone();
+  }
+
+  /**
+   * Returns the positions of the cards in any of the specified categories.
+   *
+   * @param categories the categories
+   * @return the positions
+   */
+  BitSet select(final Collection<String> categories) {
+    final var result = new BitSet();
+    for (String category : categories) {
+      final BitSet positions = positionsByCategory.get(category);
+      if (positions != null) {
+        result.or(positions);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns true if a "Category 1" field names any of the categories.
+   *
+   * @param field      the field, possibly null
+   * @param categories the categories
+   * @return true if the field names one of the categories
+   */
+  static boolean matches(final String field, final Collection<String> categories) {
+    final var single = new CategoryIndex();
+    single.add(0, field);
+    return single.select(categories).get(0);
+  }
+}
@@ -0,0 +1,308 @@
+package fdshow;
+
+/*
+ * CategoryView's fdshow direct dependencies
+ *   CardsHolder
+ *   CategoryIndex
+ *   Card
+ *   Transaction
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A CardsHolder that shows only the cards of another CardsHolder
+ * that are in some chosen categories.
+ *
+ * The cards in view are chosen, using the category index,
+ * when the view is made.
+ * Cards added through the view join it.
+ * A view synced with another should be widened to the other's cards,
+ * so that a card whose category changed in one holder only
+ * is updated rather than deleted.
+ * Sync operations given views only touch the cards in view,
+ * so a single topic can be synced out of a huge deck.
+ *
+ * Saving the view saves the whole underlying CardsHolder.
+ */
+class CategoryView extends CardsHolder {
+  /**
+   * The CardsHolder being viewed.
+   */
+  private final CardsHolder holder;
+
+  /**
+   * The categories in view.
+   */
+  private final List<String> categories;
+
+  /**
+   * The IDs of the IDed cards in view.
+   */
+  private final Set<Integer> ids = new LinkedHashSet<>();
+
+  /**
+   * The number of unIDed cards in view.
+   */
+  private int unIdedCount;
+
+  /**
+   * Constructs a view of the cards in the holder
+   * that are in any of the specified categories.
+   *
+   * @param holder     the CardsHolder to view
+   * @param categories the categories to view
+   */
+  CategoryView(final CardsHolder holder, final Collection<String> categories) {
+    this.holder = Objects.requireNonNull(holder);
+    this.categories = new ArrayList<>(categories);
+    final BitSet positions = holder.getCategoryIndex().select(categories);
+    final List<Integer> allIds = holder.getIds();
+    for (int i = positions.nextSetBit(0); i >= 0; i = positions.nextSetBit(i + 1)) {
+      final Integer id = allIds.get(i);
+      if (id == null) {
+        unIdedCount++;
+      } else {
+        ids.add(id);
+      }
+    }
+  }
+
+  /**
+   * Brings into view the IDed cards in view in another view
+   * that the underlying CardsHolder has, whatever their category here,
+   * and whether or not they were loaded.
+   * A card recategorized in one holder but not yet in the other
+   * is then in both views, so a sync updates its category
+   * instead of deleting it as missing from the view synced from.
+   * A card the load filter left unloaded is listed by getIds,
+   * so it isn't deleted, but isn't contained, so it isn't updated.
+   *
+   * @param other the view being synced with
+   */
+  void widen(final CategoryView other) {
+    for (Integer id : other.ids) {
+      if (!ids.contains(id) && holder.holdsId(id)) {
+        ids.add(id);
+      }
+    }
+  }
+
+  /**
+   * Saves the whole underlying CardsHolder to the indicated file.
+   * @param file the file to save the CardsHolder to
+   */
+  @Override
+  void saveTo(final File file) throws IOException {
+    holder.saveTo(file);
+  }
+
+  /**
+   * Loading a view is not supported.
+   * @param r the Reader to load from
+   */
+  @Override
+  void loadFrom(final BufferedReader r) {
+    throw new UnsupportedOperationException();
+  }
+
+  // See the superclass for javadoc
+  @Override
+  ArrayList<Integer> getIds() {
+    final var result = new ArrayList<Integer>(ids);
+    for (int i = 0; i < unIdedCount; i++) {
+      result.add(null);
+    }
+    return result;
+  }
+
+  /**
+   * Returns true if a loaded card in view has the ID.
+   *
+   * @param id the ID to check
+   * @return true if the card is in view and loaded
+   */
+  @Override
+  boolean contains(final Integer id) {
+    return ids.contains(id) && holder.contains(id);
+  }
+
+  // See the superclass for javadoc
+  @Override
+  boolean holdsId(final Integer id) {
+    return ids.contains(id);
+  }
+
+  /**
+   * Returns the next ID of the underlying CardsHolder,
+   * so that IDs assigned through the view do not clash
+   * with cards outside it.
+   *
+   * @return the next ID to assign
+   */
+  @Override
+  int getNextId() {
+    return holder.getNextId();
+  }
+
+  // See the superclass for javadoc
+  @Override
+  Card getCard(final Integer id) {
+    if (id == null) {
+      throw new IllegalArgumentException("Cannot get a 'null' IDed card");
+    }
+    return ids.contains(id) ? holder.getCard(id) : null;
+  }
+
+  // See the superclass for javadoc
+  @Override
+  boolean wouldChange(final Card c) {
+    if (!ids.contains(c.getId())) {
+      throw new IllegalArgumentException(
+        String.format("Can't compare id '%d' as it is not in view.", c.getId()));
+    }
+    return holder.wouldChange(c);
+  }
+
+  /**
+   * Records the view's changes, and the underlying holder's,
+   * in the transaction.
+   *
+   * @param t the transaction, or null to stop recording
+   */
+  @Override
+  void setTransaction(final Transaction t) {
+    holder.setTransaction(t);
+    super.setTransaction(t);
+  }
+
+  // See the superclass for javadoc
+  @Override
+  void prefetch(final Collection<Integer> toPrefetch) {
+    holder.prefetch(toPrefetch);
+  }
+
+  /**
+   * Marks the unIDed cards in view.
+   * Positions, if given, are ignored:
+   * the cards in view are found from the category index as it is now,
+   * since cards may have been added or deleted since the view was made.
+   *
+   * @param ignored ignored
+   * @return the newly assigned card IDs
+   */
+  @Override
+  List<Integer> markBlankIds(final BitSet ignored) {
+    final List<Integer> assigned =
+      holder.markBlankIds(holder.getCategoryIndex().select(categories));
+    final int oldUnIdedCount = unIdedCount;
+    ids.addAll(assigned);
+    unIdedCount = 0;
+    recordUndo(() -> {
+      ids.removeAll(assigned);
+      unIdedCount = oldUnIdedCount;
+    });
+    return assigned;
+  }
+
+  // See the superclass for javadoc
+  @Override
+  void updateCard(final Card c) {
+    holder.updateCard(c);
+  }
+
+  // See the superclass for javadoc
+  @Override
+  void addCard(final Card c) {
+    if (c == null) {
+      return;
+    }
+    holder.addCard(c);
+    final Integer id = c.getId();
+    if (id == null) {
+      unIdedCount++;
+      recordUndo(() -> unIdedCount--);
+    } else {
+      ids.add(id);
+      recordUndo(() -> ids.remove(id));
+    }
+  }
+
+  // See the superclass for javadoc
+  @Override
+  void addCards(final List<? extends Card> cards) {
+    holder.addCards(cards);
+    final int oldUnIdedCount = unIdedCount;
+    final var added = new ArrayList<Integer>();
+    for (Card c : cards) {
+      if (c == null) {
+        continue;
+      }
+      if (c.getId() == null) {
+        unIdedCount++;
+      } else {
+        ids.add(c.getId());
+        added.add(c.getId());
+      }
+    }
+    recordUndo(() -> {
+      ids.removeAll(added);
+      unIdedCount = oldUnIdedCount;
+    });
+  }
+
+  /**
+   * Zapping IDs through a view is not supported,
+   * since it would leave the view's cards
+   * clashing with the cards outside it.
+   */
+  @Override
+  void zapIds() {
+    throw new UnsupportedOperationException(
+      "Can't clear IDs of only some categories");
+  }
+
+  // See the superclass for javadoc
+  @Override
+  List<Card> getCards() {
+    return holder.getCards()
+                 .stream()
+                 .filter(c -> c.getId() == null
+                         ? CategoryIndex.matches(c.getField(CategoryIndex.FIELD),
+                                                 categories)
+                         : ids.contains(c.getId()))
+                 .collect(Collectors.toList());
+  }
+
+  /**
+   * Deletes those of the specified cards that are in view.
+   *
+   * @param toDelete the IDs of the cards to delete
+   */
+  @Override
+  void deleteCards(final List<Integer> toDelete) {
+    toDelete.forEach(i -> Objects.requireNonNull(i));
+    final List<Integer> inView = toDelete.stream()
+                                         .filter(ids::contains)
+                                         .collect(Collectors.toList());
+    holder.deleteCards(inView);
+    if (isRecording()) {
+      final var oldIds = new ArrayList<>(ids);
+      recordUndo(() -> {
+        ids.clear();
+        ids.addAll(oldIds);
+      });
+    }
+    ids.removeAll(inView);
+  }
+}
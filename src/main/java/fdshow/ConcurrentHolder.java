@@ -0,0 +1,270 @@
+package fdshow;
+
+/*
+ * ConcurrentHolder's fdshow direct dependencies
+ *   CardsHolder
+ *   CategoryIndex
+ *   Card
+ *   Transaction
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * A CardsHolder that makes another CardsHolder safe to share between threads.
+ *
+ * Changes to the cards are made one at a time, under a write lock.
+ * Reads take a read lock, so they run in parallel with each other,
+ * if the underlying holder allows it (see CardsHolder.allowsParallelReads).
+ * Otherwise reads take the write lock too, and run one at a time.
+ *
+ * Each method is atomic on its own.
+ * To make several calls as one, such as a whole sync,
+ * run them through atomically.
+ */
+class ConcurrentHolder extends CardsHolder {
+  /**
+   * The CardsHolder being guarded.
+   */
+  private final CardsHolder holder;
+
+  /**
+   * The lock taken to change the cards.
+   */
+  private final Lock writeLock;
+
+  /**
+   * The lock taken to read the cards.
+   * The write lock, if the holder doesn't allow parallel reads.
+   */
+  private final Lock readLock;
+
+  /**
+   * Constructs a ConcurrentHolder guarding the specified holder.
+   * The holder must not be used other than through this ConcurrentHolder.
+   *
+   * @param holder the CardsHolder to guard
+   */
+  ConcurrentHolder(final CardsHolder holder) {
+    this.holder = Objects.requireNonNull(holder);
+    final var lock = new ReentrantReadWriteLock();
+    writeLock = lock.writeLock();
+    readLock = holder.allowsParallelReads() ? lock.readLock() : writeLock;
+  }
+
+  /**
+   * Runs the action holding the write lock,
+   * so that no other thread sees or changes the cards meanwhile.
+   * The action may call this ConcurrentHolder's methods.
+   *
+   * @param <T>    the type of the action's result
+   * @param action the action
+   * @return the action's result
+   */
+  <T> T atomically(final Supplier<T> action) {
+    return locked(writeLock, action);
+  }
+
+  /**
+   * Runs the action holding the specified lock.
+   *
+   * @param <T>    the type of the action's result
+   * @param lock   the lock
+   * @param action the action
+   * @return the action's result
+   */
+  private static <T> T locked(final Lock lock, final Supplier<T> action) {
+    lock.lock();
+    try {
+      return action.get();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Runs the action, which changes the cards, holding the write lock.
+   *
+   * @param action the action
+   */
+  private void changing(final Runnable action) {
+    writeLock.lock();
+    try {
+      action.run();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  // See the superclass for javadoc
+  @Override
+  void saveTo(final File file) throws IOException {
+    readLock.lock();
+    try {
+      holder.saveTo(file);
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  // See the superclass for javadoc
+  @Override
+  void loadFrom(final BufferedReader r) throws IOException {
+    writeLock.lock();
+    try {
+      holder.loadFrom(r);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  // See the superclass for javadoc
+  @Override
+  void loadFrom(final File file) throws IOException {
+    writeLock.lock();
+    try {
+      holder.loadFrom(file);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  // See the superclass for javadoc
+  @Override
+  boolean allowsParallelReads() {
+    return true;
+  }
+
+  // See the superclass for javadoc
+  @Override
+  ArrayList<Integer> getIds() {
+    return locked(readLock, holder::getIds);
+  }
+
+  // See the superclass for javadoc
+  @Override
+  int getCountOfIds() {
+    return locked(readLock, holder::getCountOfIds);
+  }
+
+  // See the superclass for javadoc
+  @Override
+  int getNextId() {
+    return locked(readLock, holder::getNextId);
+  }
+
+  // See the superclass for javadoc
+  @Override
+  boolean contains(final Integer id) {
+    return locked(readLock, () -> holder.contains(id));
+  }
+
+  // See the superclass for javadoc
+  @Override
+  boolean holdsId(final Integer id) {
+    return locked(readLock, () -> holder.holdsId(id));
+  }
+
+  // See the superclass for javadoc
+  @Override
+  Card getCard(final Integer id) {
+    return locked(readLock, () -> holder.getCard(id));
+  }
+
+  // See the superclass for javadoc
+  @Override
+  boolean wouldChange(final Card c) {
+    return locked(readLock, () -> holder.wouldChange(c));
+  }
+
+  /**
+   * Passes the hint on, holding the write lock,
+   * since prefetching may load cards.
+   *
+   * @param ids the IDs of the cards
+   */
+  @Override
+  void prefetch(final Collection<Integer> ids) {
+    changing(() -> holder.prefetch(ids));
+  }
+
+  // See the superclass for javadoc
+  @Override
+  List<Card> getCards() {
+    return locked(readLock, holder::getCards);
+  }
+
+  /**
+   * Returns the underlying holder's category index.
+   * The write lock is taken, since the index may be built on the way.
+   *
+   * @return the category index
+   */
+  @Override
+  CategoryIndex getCategoryIndex() {
+    return locked(writeLock, holder::getCategoryIndex);
+  }
+
+  /**
+   * Records the underlying holder's changes in the transaction.
+   * Roll back under atomically, so no other thread sees it half done.
+   *
+   * @param t the transaction, or null to stop recording
+   */
+  @Override
+  void setTransaction(final Transaction t) {
+    changing(() -> holder.setTransaction(t));
+  }
+
+  // See the superclass for javadoc
+  @Override
+  List<Integer> markBlankIds(final BitSet positions) {
+    return atomically(() -> holder.markBlankIds(positions));
+  }
+
+  // See the superclass for javadoc
+  @Override
+  void updateCard(final Card c) {
+    changing(() -> holder.updateCard(c));
+  }
+
+  // See the superclass for javadoc
+  @Override
+  void addCard(final Card c) {
+    changing(() -> holder.addCard(c));
+  }
+
+  // See the superclass for javadoc
+  @Override
+  void addCards(final List<? extends Card> cards) {
+    changing(() -> holder.addCards(cards));
+  }
+
+  // See the superclass for javadoc
+  @Override
+  void zapIds() {
+    changing(holder::zapIds);
+  }
+
+  // See the superclass for javadoc
+  @Override
+  void deleteCards(final List<Integer> ids) {
+    changing(() -> holder.deleteCards(ids));
+  }
+
+  // See the superclass for javadoc
+  @Override
+  public String toString() {
+    return locked(readLock, holder::toString);
+  }
+}
@@ -0,0 +1,339 @@
+package fdshow;
+
+/*
+ * DeckGenerator's fdshow direct dependencies
+ *   Card
+ *   FDCard
+ *   FieldNames
+ *   WikiData
+ *   FileIO
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+/**
+ * Generates a Flashcards Deluxe export file and a matching wiki,
+ * of whatever size and shape is wanted,
+ * for reproducing performance problems without real decks.
+ *
+ * The cards are like real ones:
+ * field lengths vary, some fields run over several lines
+ * or have double quotes in them,
+ * and some cards are Chinese pronunciation cards
+ * like those in the test deck.
+ *
+ * Some of the flashcard file's cards have IDs, and those are in the wiki too.
+ * A share of them have drifted:
+ * half of those have been edited in the wiki,
+ * and half are only in the wiki, as though deleted from the flashcard file.
+ * The cards without IDs are new, and only in the flashcard file.
+ *
+ * The same seed always generates the same files.
+ */
+@Command(name = "DeckGenerator",
+          description = "Generates flashcard and wiki files for load testing",
+          mixinStandardHelpOptions = true,
+          version = "pre-release")
+public class DeckGenerator implements Callable<Integer> {
+
+  /**
+   * Adds logging ability.
+   */
+  static final Logger LOGGER = Logger.getLogger(DeckGenerator.class.getName());
+
+  /**
+   * The fields of the generated flashcard file.
+   */
+  static final String FIELD_NAMES =
+    "Text 1\tText 2\tText 3\tText 4\tText 5\tPicture 1\tPicture 2\tSound 2"
+    + "\tCategory 1\tStatistics 1\tNotes\tExtra Info\r\n";
+
+  /**
+   * Words to make English text from.
+   */
+  private static final String[] WORDS = {
+    "the", "problem", "institutions", "will", "try", "to", "preserve",
+    "which", "they", "are", "solution", "people", "who", "disagree", "with",
+    "you", "confident", "look", "while", "being", "wrong", "exactly", "how",
+    "believe", "good", "detectors", "really", "not", "better", "do", "less",
+    "than", "hoped", "nothing", "at", "all", "programmable", "blockchain",
+    "name", "comes", "up", "now", "and", "then", "forget", "what", "it", "is",
+    "memory", "interval", "review", "card", "deck", "field", "answer"};
+
+  /**
+   * Chinese characters, each with its pinyin.
+   */
+  private static final String[][] HANZI = {
+    {"一", "yī"}, {"类", "lèi"}, {"别", "bié"}, {"这", "zhè"}, {"父", "fù"},
+    {"亲", "qin"}, {"人", "rén"}, {"大", "dà"}, {"小", "xiǎo"}, {"中", "zhōng"},
+    {"国", "guó"}, {"学", "xué"}, {"生", "shēng"}, {"好", "hǎo"}, {"水", "shuǐ"},
+    {"火", "huǒ"}, {"山", "shān"}, {"月", "yuè"}, {"日", "rì"}, {"书", "shū"}};
+
+  /**
+   * The spread of the log-normal field length distribution.
+   */
+  private static final double LENGTH_SIGMA = 0.8;
+
+  /**
+   * File name of the flashcard file to generate.
+   */
+  @Parameters(
+    index = "0",
+    description = "Flashcard file to generate")
+  private File deckFile;
+
+  /**
+   * File name of the wiki file to generate.
+   */
+  @Parameters(
+    index = "1",
+    description = "Wiki file to generate")
+  private File wikiFile;
+
+  /**
+   * The number of cards to generate.
+   */
+  @Option(names = "--cards",
+    description = "cards to generate (default 1000)")
+  private int cards = 1000;
+
+  /**
+   * The mean length of a card's answer, in characters.
+   */
+  @Option(names = "--mean-length",
+    description = "mean answer length in characters (default 120)")
+  private int meanLength = 120;
+
+  /**
+   * The share of text fields that run over several lines.
+   */
+  @Option(names = "--multi-line",
+    description = "share of fields over several lines (default 0.3)")
+  private double multiLine = 0.3;
+
+  /**
+   * The share of text fields with double quotes in them.
+   */
+  @Option(names = "--quoted",
+    description = "share of fields with double quotes (default 0.05)")
+  private double quoted = 0.05;
+
+  /**
+   * The share of cards that are Chinese pronunciation cards.
+   */
+  @Option(names = "--cjk",
+    description = "share of Chinese pronunciation cards (default 0.2)")
+  private double cjk = 0.2;
+
+  /**
+   * The share of flashcard file cards that have IDs.
+   */
+  @Option(names = "--ids",
+    description = "share of flashcard cards with IDs (default 0.9)")
+  private double ids = 0.9;
+
+  /**
+   * The share of IDed cards that differ between the files.
+   */
+  @Option(names = "--drift",
+    description = "share of IDed cards differing between files (default 0.05)")
+  private double drift = 0.05;
+
+  /**
+   * The number of categories the cards are spread over.
+   */
+  @Option(names = "--categories",
+    description = "number of categories (default 5)")
+  private int categories = 5;
+
+  /**
+   * The seed of the random numbers.
+   */
+  @Option(names = "--seed",
+    description = "random seed (default 1)")
+  private long seed = 1;
+
+  /**
+   * Generates the files.
+   *
+   * @param args the command line arguments
+   */
+  public static void main(final String[] args) {
+    int exitCode = new CommandLine(new DeckGenerator()).execute(args);
+    System.exit(exitCode);
+  }
+
+  /**
+   * Generates the files.
+   */
+  @Override
+  public Integer call() throws Exception {
+    final long start = System.nanoTime();
+    final var random = new Random(seed);
+    final var fields = new FieldNames(
+      new BufferedReader(new StringReader(FIELD_NAMES)));
+    final var wiki = new WikiData();
+    int nextId = Integer.MIN_VALUE;
+    int wikiOnly = 0;
+    boolean first = true;
+    try (var pw = new PrintWriter(FileIO.openWriter(deckFile))) {
+      pw.print(header());
+      pw.print(fields.toString());
+      for (int i = 0; i < cards; i++) {
+        final Map<String, String> data = card(random);
+        final Integer id = random.nextDouble() < ids ? nextId++ : null;
+        if (id != null && random.nextDouble() < drift) {
+          if (random.nextBoolean()) {
+            final Map<String, String> edited = new HashMap<>(data);
+            edited.put("Text 2", data.get("Text 2") + " (edited)");
+            wiki.addCard(new Card(edited, id));
+          } else {
+            wiki.addCard(new Card(data, id));
+            wikiOnly++;
+            continue;
+          }
+        } else if (id != null) {
+          wiki.addCard(new Card(data, id));
+        }
+        if (!first) {
+          pw.print("\r\n");
+        }
+        first = false;
+        pw.print(new FDCard(data, id, fields).toString());
+      }
+    }
+    wiki.saveTo(wikiFile);
+    LOGGER.log(Level.INFO,
+               "Generated {0} cards, {1} of them only in the wiki, in {2} ms",
+               new Object[]{cards, wikiOnly,
+                            (System.nanoTime() - start) / 1_000_000});
+    return 0;
+  }
+
+  /**
+   * Returns the flashcard file header.
+   *
+   * @return the header lines
+   */
+  private String header() {
+    final var categoryList = new StringBuilder();
+    for (int c = 0; c < categories; c++) {
+      categoryList.append(c == 0 ? "" : "|").append(category(c));
+    }
+    return "*\tname\tGenerated\r\n"
+      + "*\tcard-order\t3\r\n"
+      + "*\ttsv\ttrue\r\n"
+      + "*\tcategory-1\t" + categoryList + "\r\n";
+  }
+
+  /**
+   * Returns the name of a category.
+   *
+   * @param c the category number
+   * @return the name
+   */
+  private static String category(final int c) {
+    return "Topic " + c;
+  }
+
+  /**
+   * Makes the fields of a random card.
+   *
+   * @param random the random numbers
+   * @return the fields
+   */
+  private Map<String, String> card(final Random random) {
+    final var data = new HashMap<String, String>();
+    for (String name : FIELD_NAMES.strip().split("\t")) {
+      data.put(name, "");
+    }
+    final String nl = System.lineSeparator();
+    if (random.nextDouble() < cjk) {
+      final var hanzi = new StringBuilder();
+      final var pinyin = new StringBuilder();
+      for (int n = 1 + random.nextInt(3); n > 0; n--) {
+        final String[] h = HANZI[random.nextInt(HANZI.length)];
+        hanzi.append(h[0]);
+        pinyin.append(h[1]);
+      }
+      data.put("Text 1", "Pronunciation: " + hanzi);
+      data.put("Text 2", pinyin + nl + nl + text(random, meanLength / 4));
+    } else {
+      data.put("Text 1", text(random, meanLength / 2));
+      data.put("Text 2", text(random, meanLength));
+      if (random.nextDouble() < 0.1) {
+        data.put("Text 3", text(random, meanLength / 2));
+      }
+    }
+    if (categories > 0) {
+      data.put("Category 1", category(random.nextInt(categories)));
+    }
+    data.put("Statistics 1", statistics(random));
+    return data;
+  }
+
+  /**
+   * Makes random text of about the specified mean length,
+   * sometimes over several lines or with double quotes.
+   *
+   * @param random the random numbers
+   * @param mean   the mean length
+   * @return the text
+   */
+  private String text(final Random random, final int mean) {
+    final double mu = Math.log(Math.max(mean, 1))
+                      - LENGTH_SIGMA * LENGTH_SIGMA / 2;
+    final int length = Math.max(1,
+      (int) Math.exp(mu + LENGTH_SIGMA * random.nextGaussian()));
+    final var sb = new StringBuilder(length + 16);
+    while (sb.length() < length) {
+      if (sb.length() != 0) {
+        sb.append(' ');
+      }
+      sb.append(WORDS[random.nextInt(WORDS.length)]);
+    }
+    if (random.nextDouble() < quoted) {
+      final int firstWordEnd = sb.indexOf(" ");
+      sb.insert(firstWordEnd == -1 ? sb.length() : firstWordEnd, '"')
+        .insert(0, '"');
+    }
+    if (random.nextDouble() < multiLine) {
+      final int at = sb.indexOf(" ", sb.length() / 2);
+      if (at != -1) {
+        sb.replace(at, at + 1, System.lineSeparator() + System.lineSeparator());
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Makes a random "Statistics 1" field.
+   *
+   * @param random the random numbers
+   * @return the statistics
+   */
+  private static String statistics(final Random random) {
+    if (random.nextDouble() < 0.3) {
+      return ""; // never reviewed
+    }
+    final int reviews = 1 + random.nextInt(20);
+    final int interval = 1 + random.nextInt(60);
+    return String.format("%d,0,0,0,%d,%d,0,2020-%02d-%02d %02d:%02d,",
+                         reviews, Math.min(reviews, 5), interval,
+                         1 + random.nextInt(12), 1 + random.nextInt(28),
+                         random.nextInt(24), random.nextInt(60));
+  }
+}
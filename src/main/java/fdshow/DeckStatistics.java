@@ -0,0 +1,364 @@
+package fdshow;
+
+/*
+ * DeckStatistics's fdshow direct dependencies
+ *   Card
+ */
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A column oriented, primitive array view of the "Statistics 1" field
+ * of a whole deck of cards.
+ *
+ * A "Statistics 1" field looks like <code>1,0,0,0,1,2,0,2020-06-10 13:21,</code>,
+ * that is, a run of comma separated integers followed by the time
+ * the card was last reviewed.
+ * The integers are kept as columns, one int array per position,
+ * indexed by the card's position in the deck.
+ * The review time is kept as minutes since the epoch.
+ *
+ * The whole deck is decoded in one pass,
+ * and no objects are created per card,
+ * so that analytics over very large decks stay cheap.
+ */
+class DeckStatistics {
+  /**
+   * The name of the field that holds the statistics.
+   */
+  static final String FIELD = "Statistics 1";
+
+  /**
+   * The column holding the number of times the card has been reviewed.
+   */
+  static final int REVIEW_COLUMN = 0;
+
+  /**
+   * The column holding the card's current review interval, in days.
+   */
+  static final int INTERVAL_COLUMN = 5;
+
+  /**
+   * The last review time of a card that has never been reviewed.
+   */
+  static final long NEVER = Long.MIN_VALUE;
+
+  /**
+   * The number of cards in the deck.
+   */
+  private final int size;
+
+  /**
+   * The integer columns, as columns[column][card].
+   */
+  private int[][] columns = new int[0][];
+
+  /**
+   * The last review time of each card, in minutes since the epoch.
+   */
+  private final long[] lastReview;
+
+  /**
+   * The ID of each card.  Only meaningful where hasId is set.
+   */
+  private final int[] ids;
+
+  /**
+   * Which cards have IDs.
+   */
+  private final BitSet hasId = new BitSet();
+
+  /**
+   * Decodes the statistics of the specified cards.
+   *
+   * @param cards the cards, in deck order
+   */
+  DeckStatistics(final List<Card> cards) {
+    size = cards.size();
+    lastReview = new long[size];
+    ids = new int[size];
+    int i = 0;
+    for (Card c : cards) {
+      final Integer id = c.getId();
+      if (id != null) {
+        ids[i] = id;
+        hasId.set(i);
+      }
+      decode(c.getField(FIELD), i++);
+    }
+  }
+
+  /**
+   * Decodes one "Statistics 1" field into the columns.
+   *
+   * @param s    the field contents, possibly null
+   * @param card the card's position in the deck
+   */
+  private void decode(final String s, final int card) {
+    lastReview[card] = NEVER;
+    if (s == null) {
+      return;
+    }
+    int column = 0;
+    int start = 0;
+    while (start < s.length()) {
+      int end = s.indexOf(',', start);
+      if (end == -1) {
+        end = s.length();
+      }
+      if (end > start) {
+        if (isTime(s, start, end)) {
+          lastReview[card] = epochMinute(s, start, end);
+        } else {
+          column(column)[card] = parseInt(s, start, end);
+          column++;
+        }
+      }
+      start = end + 1;
+    }
+  }
+
+  /**
+   * Returns the specified column, creating it (and any before it) if needed.
+   *
+   * @param column the column number
+   * @return the column
+   */
+  private int[] column(final int column) {
+    if (column >= columns.length) {
+      final int old = columns.length;
+      columns = Arrays.copyOf(columns, column + 1);
+      for (int c = old; c <= column; c++) {
+        columns[c] = new int[size];
+      }
+    }
+    return columns[column];
+  }
+
+  /**
+   * Returns true if part of a string looks like a time rather than a number,
+   * that is, if it contains a '-' after its first character.
+   *
+   * @param s     the string
+   * @param start the index of the first character
+   * @param end   the index after the last character
+   * @return true for a time
+   */
+  private static boolean isTime(final String s, final int start, final int end) {
+    for (int i = start + 1; i < end; i++) {
+      if (s.charAt(i) == '-') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Parses a non-negative decimal integer out of part of a string.
+   * Characters other than digits are ignored.
+   *
+   * @param s     the string
+   * @param start the index of the first character
+   * @param end   the index after the last character
+   * @return the integer
+   */
+  private static int parseInt(final String s, final int start, final int end) {
+    int result = 0;
+    for (int i = start; i < end; i++) {
+      final char ch = s.charAt(i);
+      if (ch >= '0' && ch <= '9') {
+        result = result * 10 + (ch - '0');
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Parses a "yyyy-MM-dd HH:mm" time out of part of a string,
+   * returning minutes since the epoch.
+   *
+   * @param s     the string
+   * @param start the index of the first character
+   * @param end   the index after the last character
+   * @return minutes since the epoch, or NEVER if the time is malformed
+   */
+  static long epochMinute(final String s, final int start, final int end) {
+    if (end - start < "yyyy-MM-dd HH:mm".length()) {
+      return NEVER;
+    }
+    final int year = parseInt(s, start, start + 4);
+    final int month = parseInt(s, start + 5, start + 7);
+    final int day = parseInt(s, start + 8, start + 10);
+    final int hour = parseInt(s, start + 11, start + 13);
+    final int minute = parseInt(s, start + 14, start + 16);
+    return (daysFromCivil(year, month, day) * 24 + hour) * 60 + minute;
+  }
+
+  /**
+   * Returns the number of days from 1970-01-01 to the specified date,
+   * in the proleptic Gregorian calendar.
+   *
+   * @param year  the year
+   * @param month the month, 1 to 12
+   * @param day   the day of the month
+   * @return days since the epoch
+   */
+  private static long daysFromCivil(final int year, final int month, final int day) {
+    final int y = month <= 2 ? year - 1 : year;
+    final int era = Math.floorDiv(y, 400);
+    final int yearOfEra = y - era * 400;
+    final int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097L + dayOfEra - 719468;
+  }
+
+  /**
+   * Returns the number of cards in the deck.
+   *
+   * @return the number of cards
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns the number of integer columns found.
+   *
+   * @return the number of columns
+   */
+  int columnCount() {
+    return columns.length;
+  }
+
+  /**
+   * Returns the value of the specified column for the specified card.
+   * Missing values are 0.
+   *
+   * @param column the column
+   * @param card   the card's position in the deck
+   * @return the value
+   */
+  int value(final int column, final int card) {
+    return column < columns.length ? columns[column][card] : 0;
+  }
+
+  /**
+   * Returns the last review time of the specified card.
+   *
+   * @param card the card's position in the deck
+   * @return minutes since the epoch, or NEVER
+   */
+  long lastReview(final int card) {
+    return lastReview[card];
+  }
+
+  /**
+   * Returns the ID of the specified card, or null if it has none.
+   *
+   * @param card the card's position in the deck
+   * @return the ID or null
+   */
+  Integer id(final int card) {
+    return hasId.get(card) ? ids[card] : null;
+  }
+
+  /**
+   * Returns a histogram of review counts.
+   * Element n of the result is the number of cards reviewed n times.
+   *
+   * @return the histogram
+   */
+  int[] reviewHistogram() {
+    int max = 0;
+    for (int card = 0; card < size; card++) {
+      max = Math.max(max, value(REVIEW_COLUMN, card));
+    }
+    final int[] histogram = new int[max + 1];
+    for (int card = 0; card < size; card++) {
+      histogram[value(REVIEW_COLUMN, card)]++;
+    }
+    return histogram;
+  }
+
+  /**
+   * Returns the time a card is next due,
+   * that is, its last review plus its interval.
+   *
+   * @param card the card's position in the deck
+   * @return minutes since the epoch, or NEVER if never reviewed
+   */
+  long due(final int card) {
+    if (lastReview[card] == NEVER) {
+      return NEVER;
+    }
+    return lastReview[card] + value(INTERVAL_COLUMN, card) * 24L * 60;
+  }
+
+  /**
+   * Returns the positions of the reviewed cards due at or before the
+   * specified time, soonest due first.
+   *
+   * @param epochMinute the time, in minutes since the epoch
+   * @return the card positions
+   */
+  int[] dueBy(final long epochMinute) {
+    int count = 0;
+    long earliest = Long.MAX_VALUE;
+    for (int card = 0; card < size; card++) {
+      final long due = due(card);
+      if (due != NEVER && due <= epochMinute) {
+        count++;
+        earliest = Math.min(earliest, due);
+      }
+    }
+    //
+    // Sort on (due, position) packed into a long,
+    // so that no per-card objects are needed.
+    //
+    final long[] packed = new long[count];
+    int n = 0;
+    for (int card = 0; card < size; card++) {
+      final long due = due(card);
+      if (due != NEVER && due <= epochMinute) {
+        packed[n++] = ((due - earliest) << 32) | card;
+      }
+    }
+    Arrays.sort(packed);
+    final int[] result = new int[count];
+    for (int i = 0; i < count; i++) {
+      result[i] = (int) packed[i];
+    }
+    return result;
+  }
+
+  /**
+   * Parses the "deck-stats-1" header value into an array of integers.
+   *
+   * @param value the header value, possibly null
+   * @return the integers, empty if value is null
+   */
+  static int[] parseDeckStats(final String value) {
+    if (value == null || value.isEmpty()) {
+      return new int[0];
+    }
+    int count = 1;
+    for (int i = 0; i < value.length(); i++) {
+      if (value.charAt(i) == ',') {
+        count++;
+      }
+    }
+    final int[] result = new int[count];
+    int start = 0;
+    for (int n = 0; n < count; n++) {
+      int end = value.indexOf(',', start);
+      if (end == -1) {
+        end = value.length();
+      }
+      result[n] = parseInt(value, start, end);
+      start = end + 1;
+    }
+    return result;
+  }
+}
@@ -0,0 +1,160 @@
+package fdshow;
+
+/*
+ * DeckStats's fdshow direct dependencies
+ *   FDFileData
+ *   DeckStatistics
+ */
+
+import java.io.File;
+import java.io.PrintStream;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+/**
+ * Reports review statistics for a Flashcards Deluxe export file.
+ */
+@Command(name = "DeckStats",
+          description = "Flashcard review statistics",
+          mixinStandardHelpOptions = true,
+          version = "pre-release")
+public class DeckStats implements Callable<Integer> {
+
+  /**
+   * Adds logging ability.
+   */
+  static final Logger LOGGER = Logger.getLogger(DeckStats.class.getName());
+
+  /**
+   * File name of flashcard data file.
+   */
+  @Parameters(
+    index = "0",
+    description = "Flashcard file to report on")
+  private File deckFile;
+
+  /**
+   * How far ahead to look for cards coming due.
+   */
+  @Option(names = "--due-within",
+    description = "list cards due within this many days (default 7)")
+  private int dueWithinDays = 7;
+
+  /**
+   * The time to report as of.  Null means now.
+   */
+  @Option(names = "--now",
+    description = "report as of this time, as yyyy-MM-dd HH:mm")
+  private String now;
+
+  /**
+   * Where to write the report.
+   */
+  private final PrintStream out;
+
+  /**
+   * Constructs a DeckStats that reports to the specified stream.
+   *
+   * @param out the stream to report to
+   */
+  DeckStats(final PrintStream out) {
+    this.out = out;
+  }
+
+  /**
+   * Reports statistics on a flashcard file.
+   *
+   * @param args the command line arguments
+   */
+  public static void main(final String[] args) {
+    int exitCode = new CommandLine(new DeckStats(System.out)).execute(args);
+    System.exit(exitCode);
+  }
+
+  /**
+   * Loads the flashcard file and prints the report.
+   */
+  @Override
+  public Integer call() throws Exception {
+    final var deck = new FDFileData();
+    deck.loadFrom(deckFile);
+
+    final List<Card> cards = deck.getCards();
+    final long start = System.nanoTime();
+    final var stats = new DeckStatistics(cards);
+    final int[] histogram = stats.reviewHistogram();
+    final long asOf = now != null
+      ? DeckStatistics.epochMinute(now, 0, now.length())
+      : System.currentTimeMillis() / 60_000;
+    final int[] due = stats.dueBy(asOf + dueWithinDays * 24L * 60);
+    long first = Long.MAX_VALUE;
+    long last = Long.MIN_VALUE;
+    for (int card = 0; card < stats.size(); card++) {
+      final long t = stats.lastReview(card);
+      if (t != DeckStatistics.NEVER) {
+        first = Math.min(first, t);
+        last = Math.max(last, t);
+      }
+    }
+    LOGGER.log(
+      Level.INFO,
+      "Analysed {0} cards in {1} ms",
+      new Object[]{stats.size(), (System.nanoTime() - start) / 1_000_000});
+
+    out.println("Cards: " + stats.size());
+    out.println("Review count histogram (reviews: cards):");
+    for (int n = 0; n < histogram.length; n++) {
+      if (histogram[n] != 0) {
+        out.println("  " + n + ": " + histogram[n]);
+      }
+    }
+    if (first != Long.MAX_VALUE) {
+      out.println("First review: " + format(first));
+      out.println("Last review:  " + format(last));
+    }
+    out.println("Due within " + dueWithinDays + " days: " + due.length);
+    for (int card : due) {
+      out.println("  " + format(stats.due(card))
+                + "  " + (stats.id(card) == null ? "<NULL>" : stats.id(card))
+                + "  " + firstLine(cards.get(card)));
+    }
+    final int[] deckStats = DeckStatistics.parseDeckStats(
+      deck.getHeader().getValue("deck-stats-1"));
+    out.println("deck-stats-1 values: " + deckStats.length);
+    return 0;
+  }
+
+  /**
+   * Formats minutes since the epoch as yyyy-MM-ddTHH:mm.
+   *
+   * @param epochMinute minutes since the epoch
+   * @return the formatted time
+   */
+  private static String format(final long epochMinute) {
+    return LocalDateTime.ofEpochSecond(epochMinute * 60, 0, ZoneOffset.UTC)
+                        .toString();
+  }
+
+  /**
+   * Returns the first line of a card's "Text 1" field.
+   *
+   * @param c the card
+   * @return the first line, or an empty string
+   */
+  private static String firstLine(final Card c) {
+    final String text = c.getField("Text 1");
+    if (text == null) {
+      return "";
+    }
+    final int eol = text.indexOf(System.lineSeparator());
+    return eol == -1 ? text : text.substring(0, eol);
+  }
+}
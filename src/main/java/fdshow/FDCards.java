@@ -2,11 +2,21 @@ package fdshow;
 
 import java.io.StringReader;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -28,11 +38,90 @@ class FDCards extends CardsHolder
    */
   protected List<Card> data;
 
+  /**
+   * The position in data of each card, by card ID,
+   * including the records the load filter skipped, which are marked unloaded.
+   * Where IDs are repeated, the first card with the ID is the one indexed.
+   */
+  private final IdIndex index = new IdIndex();
+
   /**
    * The names of the fields.
    */
   private FieldNames fields;
 
+  /**
+   * Decides which records are turned into cards when loading.
+   * Null means all of them.
+   */
+  private Predicate<FDRecord> loadFilter;
+
+  /**
+   * The number of records that the load filter left unloaded.
+   */
+  private int unloadedCount;
+
+  /**
+   * The directory to spill cards to on the next load.
+   * Null means keep them all on the heap.
+   */
+  private File spillDirectory;
+
+  /**
+   * True to keep card text off the heap on the next load.
+   */
+  private boolean textOffHeap;
+
+  /**
+   * Where the text of the cards loaded is kept, or null if on the heap.
+   */
+  private OffHeapText offHeapText;
+
+  /**
+   * A record that the load filter skipped.
+   *
+   * It is kept exactly as read, so that it can be saved back unchanged
+   * and so that its ID is never given to another card,
+   * but it is otherwise invisible.
+   */
+  private static final class Unloaded extends Card {
+    /**
+     * The record, as read.
+     */
+    private final String rawText;
+
+    /**
+     * Constructs an Unloaded record.
+     *
+     * @param rawText the record, as read
+     * @param id      the record's card ID, possibly null
+     */
+    Unloaded(final String rawText, final Integer id) {
+      super(Map.of(), id);
+      this.rawText = rawText;
+    }
+
+    /**
+     * Returns the record as read.
+     *
+     * @return the record
+     */
+    @Override
+    public String toString() {
+      return rawText;
+    }
+  }
+
+  /**
+   * Returns true if the card was loaded, rather than skipped by the filter.
+   *
+   * @param c the card
+   * @return true if the card was loaded
+   */
+  private static boolean isLoaded(final Card c) {
+    return !(c instanceof Unloaded);
+  }
+
   /**
    * Saves the CardsHolder to the indicated file, and closes the file.
    * @param file the file to save the CardsHolder to
@@ -58,12 +147,192 @@ class FDCards extends CardsHolder
   void loadFrom(java.io.BufferedReader r, FieldNames fields)
   {
     this.fields = fields;
-    data = new java.util.LinkedList<>();
+    data = newCardList();
+    if (offHeapText != null) {
+      offHeapText.release();
+    }
+    if (textOffHeap && spillDirectory != null) {
+      logger.info("Card text is kept in the spill file, not off the heap");
+    }
+    offHeapText = textOffHeap && spillDirectory == null
+      ? new OffHeapText()
+      : null;
+    unloadedCount = 0;
+    index.clear();
+    final var dedup = new StringDeduplicator();
+    final var rec = new FDRecord(fields, dedup);
     while(hasNextCard(r)) {
-      data.add(nextCard(r));
+      rec.readFrom(r);
+      final boolean loaded = loadFilter == null || loadFilter.test(rec);
+      if (loaded) {
+        data.add(newCard(rec.toMap(), rec.getId()));
+      } else {
+        data.add(new Unloaded(rec.rawText(), rec.getId()));
+        unloadedCount++;
+      }
+      if (rec.getId() != null) {
+        index.putIfAbsent(rec.getId(), data.size() - 1, loaded);
+      }
+    }
+    if (unloadedCount != 0) {
+      logger.log(Level.INFO,
+                 "{0} cards not loaded, as they don''t match the filter",
+                 unloadedCount);
+    }
+    logger.log(Level.FINE, "Loaded cards: {0}", dedup.report());
+    if (offHeapText != null) {
+      logger.log(Level.INFO, "Card text kept off the heap: {0} bytes",
+                 offHeapText.size());
+    }
+    cardsChanged();
+    getCategoryIndex();
+  }
+
+  /**
+   * Sets the filter that decides which records to turn into cards
+   * on the next load.
+   * The filter sees each record's raw fields as they are read,
+   * so records that don't match cost little more than reading them.
+   *
+   * Records that don't match are kept as read and saved back unchanged,
+   * but are otherwise invisible:
+   * they are not counted, returned, updated or deleted.
+   *
+   * @param filter the filter, or null to load all records
+   */
+  void setLoadFilter(final Predicate<FDRecord> filter) {
+    loadFilter = filter;
+  }
+
+  /**
+   * Sets the directory to spill cards to on the next load.
+   *
+   * Spilled cards are kept in a temporary file there,
+   * with only their IDs and the most recently used cards on the heap,
+   * so that decks bigger than the heap can be synced.
+   * Saving a spilled deck streams the cards out a card at a time,
+   * but getCards still copies them all onto the heap.
+   *
+   * @param directory the directory, or null to keep cards on the heap
+   */
+  void setSpillDirectory(final File directory) {
+    spillDirectory = directory;
+  }
+
+  /**
+   * Sets whether to keep card text off the heap on the next load.
+   *
+   * The text of each field is kept as UTF-8 in direct buffers,
+   * and only turned back into a String when a card is read,
+   * so a huge deck's text costs the garbage collector nothing.
+   * The buffers are let go together when the deck is next loaded;
+   * cards obtained from the deck before then must not be used after it.
+   * Text replaced by updates stays in the buffers until then.
+   * Spilled decks already keep their text off the heap, in the spill file,
+   * so this is ignored when a spill directory is set.
+   *
+   * @param offHeap true to keep text off the heap
+   */
+  void setTextOffHeap(final boolean offHeap) {
+    textOffHeap = offHeap;
+  }
+
+  /**
+   * Returns a card of this deck,
+   * with its text off the heap if the deck keeps it there.
+   *
+   * @param dataByField the data to fill the card with
+   * @param id          the card ID, possibly null
+   * @return the card
+   */
+  private FDCard newCard(final Map<String, String> dataByField,
+                         final Integer id) {
+    return offHeapText == null
+      ? new FDCard(dataByField, id, fields)
+      : new OffHeapCard(dataByField, id, fields, offHeapText);
+  }
+
+  /**
+   * Returns a new, empty list to load cards into,
+   * spilling to disk if a spill directory is set.
+   * A previous spilled list is closed, giving back its file.
+   *
+   * @return the list
+   */
+  private List<Card> newCardList() {
+    if (data instanceof SpillingCardList) {
+      try {
+        ((SpillingCardList) data).close();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Could not close spilled cards", e);
+      }
+    }
+    if (spillDirectory == null) {
+      return new ArrayList<>();
+    }
+    try {
+      return new SpillingCardList(spillDirectory,
+                                  SpillingCardList.DEFAULT_HOT_CARDS,
+                                  new SpillCodec());
+    } catch (IOException e) {
+      throw new Error("Could not create spill file in " + spillDirectory, e);
+    }
+  }
+
+  /**
+   * Turns the cards of this deck into bytes and back, for spilling.
+   * Records the load filter skipped are kept as read.
+   * Cards read back are plain FDCards, as the spill file holds their text.
+   */
+  private final class SpillCodec implements SpillingCardList.Codec {
+    // See SpillingCardList.Codec for javadoc
+    @Override
+    public void write(final Card c, final DataOutputStream out)
+    throws IOException {
+      out.writeBoolean(isLoaded(c));
+      out.writeBoolean(c.getId() != null);
+      if (c.getId() != null) {
+        out.writeInt(c.getId());
+      }
+      if (!isLoaded(c)) {
+        SpillingCardList.writeString(c.toString(), out);
+        return;
+      }
+      final Map<String, String> fieldData = c.getData();
+      out.writeInt(fieldData.size());
+      for (Map.Entry<String, String> e : fieldData.entrySet()) {
+        SpillingCardList.writeString(e.getKey(), out);
+        SpillingCardList.writeString(e.getValue(), out);
+      }
+    }
+
+    // See SpillingCardList.Codec for javadoc
+    @Override
+    public Card read(final DataInputStream in) throws IOException {
+      final boolean loaded = in.readBoolean();
+      final Integer id = in.readBoolean() ? in.readInt() : null;
+      if (!loaded) {
+        return new Unloaded(SpillingCardList.readString(in), id);
+      }
+      final int count = in.readInt();
+      final Map<String, String> fieldData = new HashMap<>(count * 2);
+      for (int i = 0; i < count; i++) {
+        fieldData.put(SpillingCardList.readString(in),
+                      SpillingCardList.readString(in));
+      }
+      return new FDCard(fieldData, id, fields);
     }
   }
 
+  /**
+   * Returns true if the load filter left some records unloaded.
+   *
+   * @return true if only some of the records were loaded
+   */
+  boolean isPartiallyLoaded() {
+    return unloadedCount != 0;
+  }
+
   /**
    * loadFrom, without a fields list, is not supported.
    * @param r the Reader to load from
@@ -81,7 +350,53 @@ class FDCards extends CardsHolder
    */
   FDCards( FieldNames fields ) {
     this.fields = fields;
-    data = new java.util.LinkedList<Card>();
+    data = new ArrayList<Card>();
+  }
+
+  /**
+   * Rebuilds the index of card positions by ID, after cards have moved.
+   * An ID keeps its unloaded mark, as only loading makes unloaded records,
+   * so no card is read back in to find out.
+   */
+  private void reindex() {
+    final var unloaded = new BitSet();
+    for (int i = 0; i < data.size(); i++) {
+      final Integer id = idAt(i);
+      if (id != null && index.isUnloaded(id)) {
+        unloaded.set(i);
+      }
+    }
+    index.clear();
+    for (int i = 0; i < data.size(); i++) {
+      final Integer id = idAt(i);
+      if (id != null) {
+        index.putIfAbsent(id, i, !unloaded.get(i));
+      }
+    }
+  }
+
+  /**
+   * Returns the ID of the card at a position in data,
+   * without reading a spilled card back in.
+   *
+   * @param position the position
+   * @return the card's ID, or null if it has none
+   */
+  private Integer idAt(final int position) {
+    return data instanceof SpillingCardList
+      ? ((SpillingCardList) data).idAt(position)
+      : data.get(position).getId();
+  }
+
+  /**
+   * Returns the position in data of the loaded card with the specified ID,
+   * or -1 if there isn't one.
+   *
+   * @param id the card ID
+   * @return the position, or -1
+   */
+  private int positionOf(final Integer id) {
+    return index.isLoaded(id) ? index.position(id) : -1;
   }
 
   /**
@@ -114,13 +429,20 @@ class FDCards extends CardsHolder
   }
 
   /**
-   * Reads and returns the next Card from the Reader.
+   * Prints the cards as toString would return them,
+   * a card at a time, so that a spilled deck is never all on the heap.
    *
-   * @param r the source of the next card
-   * @return the next Card
+   * @param pw where to print the cards
    */
-  private Card nextCard(java.io.Reader r) {
-    return new FDCard(r,fields);
+  void printCards(final PrintWriter pw)
+  {
+    assert data != null;
+    for (int i = 0; i < data.size(); i++) {
+      if (i != 0) {
+        pw.print("\r\n");
+      }
+      pw.print(data.get(i).toString());
+    }
   }
 
   /**
@@ -129,7 +451,7 @@ class FDCards extends CardsHolder
    * @param r the source of the possible next Card
    * @return true if there is in fact a next Card
    */
-  private static boolean hasNextCard(java.io.Reader r){
+  static boolean hasNextCard(java.io.Reader r){
     boolean has;
     try {
       r.mark(10);
@@ -149,20 +471,204 @@ class FDCards extends CardsHolder
     if (c == null) return;
 
     final Integer id = c.getId();
-    if (id != null && contains(id)) {
+    if (id != null && (contains(id) || isUnloadedId(id))) {
       String msg =
         String.format("Can't add id '%d' as it is already present.",id);
       throw new IllegalArgumentException(msg);
     }
 
-    data.add(new FDCard(c,fields));
+    data.add(newCard(c.getData(), id));
+    if (id != null) {
+      index.put(id, data.size() - 1, true);
+    }
+    recordUndo(() -> {
+      data.remove(data.size() - 1);
+      if (id != null) {
+        index.remove(id);
+      }
+      cardsChanged();
+    });
+    cardsChanged();
   }
 
-  // See the superclass for javadoc
+  /**
+   * Adds the specified cards, in order, after checking all their IDs.
+   * Cards already made for this deck,
+   * FDCards with its field names while text is on the heap,
+   * are kept as they are rather than made afresh,
+   * so a bulk import can make them in parallel beforehand.
+   *
+   * @param cards the cards to add
+   * @throws IllegalArgumentException if an ID is present or repeated
+   */
+  @Override
+  void addCards(final List<? extends Card> cards)
+  {
+    assert data != null;
+    checkNewIds(cards);
+    final int first = data.size();
+    for (Card c : cards) {
+      if (c == null) {
+        continue;
+      }
+      final boolean madeForThisDeck = offHeapText == null
+        && c instanceof FDCard && ((FDCard) c).fieldNames == fields;
+      data.add(madeForThisDeck ? c : newCard(c.getData(), c.getId()));
+      if (c.getId() != null) {
+        index.put(c.getId(), data.size() - 1, true);
+      }
+    }
+    recordUndo(() -> {
+      for (int i = data.size() - 1; i >= first; i--) {
+        final Integer id = idAt(i);
+        if (id != null) {
+          index.remove(id);
+        }
+        data.remove(i);
+      }
+      cardsChanged();
+    });
+    cardsChanged();
+  }
+
+  /**
+   * Checks the IDs of cards about to be added,
+   * including against records the load filter skipped.
+   *
+   * @param cards the cards about to be added
+   * @throws IllegalArgumentException if an ID is present or repeated
+   */
+  @Override
+  void checkNewIds(final List<? extends Card> cards)
+  {
+    super.checkNewIds(cards);
+    for (Card c : cards) {
+      if (c != null && c.getId() != null && isUnloadedId(c.getId())) {
+        String msg = String.format(
+          "Can't add id '%d' as it is already present.", c.getId());
+        throw new IllegalArgumentException(msg);
+      }
+    }
+  }
+
+  /**
+   * Returns the names of the fields of this deck's cards.
+   *
+   * @return the field names
+   */
+  FieldNames getFieldNames() {
+    return fields;
+  }
+
+  /**
+   * Returns true if the ID belongs to a record the load filter skipped.
+   *
+   * @param id the ID to check
+   * @return true if an unloaded record has the ID
+   */
+  private boolean isUnloadedId(final Integer id) {
+    return index.isUnloaded(id);
+  }
+
+  /**
+   * Returns the ID after the highest ID in the deck,
+   * including records the load filter skipped,
+   * so that new IDs never clash with them.
+   *
+   * @return the next ID to assign
+   */
+  @Override
+  int getNextId() {
+    if (unloadedCount == 0) {
+      return super.getNextId();
+    }
+    final var max = index.maxId();
+    return max.isPresent() ? max.getAsInt() + 1 : Integer.MIN_VALUE;
+  }
+
+  /**
+   * Replaces the card having the same ID as the specified card,
+   * keeping its place in the deck.
+   *
+   * The card's fields are updated as merged says,
+   * so that fields a wiki never holds, such as "Statistics 1",
+   * survive an update from the wiki.
+   *
+   * If the card is null, quietly does nothing.
+   *
+   * @param c the card to update from
+   */
   @Override
   void updateCard(Card c)
   {
-    throw new UnsupportedOperationException();
+    assert data != null;
+    if (c == null) return;
+
+    final Integer id = c.getId();
+    if (id == null) {
+      throw new IllegalArgumentException("Can't update from an unIDed card.");
+    }
+    final int position = positionOf(id);
+    if (position == -1) {
+      String msg =
+        String.format("Can't update id '%d' as it is not present.", id);
+      throw new IllegalArgumentException(msg);
+    }
+
+    final Card old = data.get(position);
+    data.set(position, newCard(merged(old.getData(), c), id));
+    recordUndo(() -> {
+      data.set(position, old);
+      cardsChanged();
+    });
+    cardsChanged();
+  }
+
+  /**
+   * Returns true if updating from the specified card
+   * would change the contents of the matching card.
+   * The fields are compared as updateCard would leave them.
+   *
+   * @param c the card to update from
+   * @return true if the update would change the card
+   */
+  @Override
+  boolean wouldChange(final Card c)
+  {
+    final int position = c.getId() == null ? -1 : positionOf(c.getId());
+    if (position == -1) {
+      String msg =
+        String.format("Can't compare id '%d' as it is not present.", c.getId());
+      throw new IllegalArgumentException(msg);
+    }
+    final Map<String, String> old = data.get(position).getData();
+    return !merged(old, c).equals(old);
+  }
+
+  /**
+   * Returns a card's fields as updating them from another card leaves them.
+   * Each field takes the other card's value if it has the field.
+   * If it hasn't, a field wikis hold was blank in the wiki, so is cleared,
+   * and any other field keeps its old value.
+   * Fields the deck doesn't have are not added.
+   *
+   * @param old the fields of the card being updated
+   * @param c   the card to update from
+   * @return the updated fields
+   */
+  private static Map<String, String> merged(final Map<String, String> old,
+                                            final Card c) {
+    final Map<String, String> from = c.getData();
+    final var result = new HashMap<String, String>(old);
+    for (Map.Entry<String, String> field : result.entrySet()) {
+      final String name = field.getKey();
+      if (from.containsKey(name)) {
+        field.setValue(from.get(name));
+      } else if (WikiData.holdsField(name)) {
+        field.setValue("");
+      }
+    }
+    return result;
   }
 
   // See the superclass for javadoc
@@ -174,14 +680,40 @@ class FDCards extends CardsHolder
         throw new IllegalArgumentException("Cannot get a 'null' IDed card");
     }
 
-    for(final var iter = data.iterator(); iter.hasNext(); ) {
-      Card c = iter.next();
-      Integer cardId = c.getId();
-      if (cardId.equals(id)) {
-        return c;
-      }
-    }
-    return null;
+    final int position = positionOf(id);
+    return position == -1 ? null : data.get(position);
+  }
+
+  // See the superclass for javadoc
+  @Override
+  boolean contains(final Integer id)
+  {
+    return id == null ? super.contains(id) : positionOf(id) != -1;
+  }
+
+  /**
+   * Returns true if a card has the ID,
+   * including records the load filter skipped.
+   *
+   * @param id the ID to check
+   * @return true if a loaded card or an unloaded record has the ID
+   */
+  @Override
+  boolean holdsId(final Integer id)
+  {
+    return id == null
+      ? super.contains(id)
+      : index.position(id) != IdIndex.ABSENT;
+  }
+
+  /**
+   * Returns true: reading only looks at the card list and the ID index.
+   *
+   * @return true
+   */
+  @Override
+  boolean allowsParallelReads() {
+    return true;
   }
 
   // See the superclass for javadoc
@@ -190,8 +722,16 @@ class FDCards extends CardsHolder
   {
     assert data != null;
 
+    if (unloadedCount == 0) {
+      final var ids = new ArrayList<Integer>(data.size());
+      for (int i = 0; i < data.size(); i++) {
+        ids.add(idAt(i));
+      }
+      return ids;
+    }
     return new ArrayList<Integer>(
                  data.stream()
+                     .filter(FDCards::isLoaded)
                      .map(c -> c.getId())
                      .collect(Collectors.toList()));
   }
@@ -201,28 +741,66 @@ class FDCards extends CardsHolder
   void zapIds()
   {
     assert data != null;
+    if (isPartiallyLoaded()) {
+      throw new IllegalStateException(
+        "Can't clear IDs of a partially loaded deck");
+    }
+    if (isRecording()) {
+      final List<Integer> oldIds = getIds();
+      recordUndo(() -> {
+        for (int i = 0; i < oldIds.size(); i++) {
+          if (oldIds.get(i) != null) {
+            data.set(i, newCard(data.get(i).getData(), oldIds.get(i)));
+          }
+        }
+        reindex();
+        cardsChanged();
+      });
+    }
     for (final var iter = data.listIterator(); iter.hasNext();) {
       final Card x = iter.next();
-      iter.set(new FDCard(x.getData(),null,fields));
+      iter.set(newCard(x.getData(), null));
     }
+    index.clear();
   }
 
   /**
    * Sets the Cards with null ID to have an ID.
    * The ID starts at the specified ID and proceeds numerically upward.
    *
-   * @param firstId the first ID to assign
+   * @param firstId   the first ID to assign
+   * @param positions the positions of the cards to consider, or null for all
    * @return the IDs assigned
    */
-  private List<Integer> setAndGetIds(int firstId) {
+  private List<Integer> setAndGetIds(int firstId, BitSet positions) {
     int nextId = firstId;
+    int position = 0;
+    final var replaced = new TreeMap<Integer, Card>();
     for(final var iter = data.listIterator(); iter.hasNext(); ) {
       final Card oldCard = iter.next();
-      if (oldCard.getId() == null) {
-        Card newCard = new FDCard(oldCard.getData(),nextId++,fields);
+      if (!isLoaded(oldCard)) {
+        continue;
+      }
+      final boolean wanted = positions == null || positions.get(position);
+      position++;
+      if (wanted && oldCard.getId() == null) {
+        Card newCard = newCard(oldCard.getData(), nextId++);
+        index.put(newCard.getId(), iter.previousIndex(), true);
         iter.set(newCard);
+        if (isRecording()) {
+          replaced.put(iter.previousIndex(), oldCard);
+        }
       }
     }
+    if (!replaced.isEmpty()) {
+      recordUndo(() -> {
+        replaced.forEach((p, c) -> {
+          index.remove(data.get(p).getId());
+          data.set(p, c);
+        });
+        cardsChanged();
+      });
+    }
     List<Integer> assigned = IntStream.range(firstId,nextId)
                                       .boxed()
                                       .collect(Collectors.toList());
@@ -231,23 +809,63 @@ class FDCards extends CardsHolder
 
   // See the superclass for javadoc
   @Override
-  List<Integer> markBlankIds()
+  List<Integer> markBlankIds(BitSet positions)
   {
     assert data != null;
 
     int nextId = getNextId();
-    return setAndGetIds(nextId);
+    return setAndGetIds(nextId, positions);
+  }
+
+  /**
+   * Builds the category index straight from the cards,
+   * rather than from a copy of them all as getCards would make.
+   *
+   * @return the new category index
+   */
+  @Override
+  CategoryIndex buildCategoryIndex() {
+    final var index = new CategoryIndex();
+    int position = 0;
+    for (Card c : data) {
+      if (isLoaded(c)) {
+        index.add(position++, c.getField(CategoryIndex.FIELD));
+      }
+    }
+    return index;
   }
 
   @Override
   List<Card> getCards()
   {
-    return new ArrayList<>(data);
+    if (unloadedCount == 0) {
+      return new ArrayList<>(data);
+    }
+    return data.stream()
+               .filter(FDCards::isLoaded)
+               .collect(Collectors.toCollection(ArrayList::new));
   }
 
   @Override
   void deleteCards(final List<Integer> ids) {
       ids.forEach(i -> java.util.Objects.requireNonNull(i));
-      data.removeIf(c -> ids.contains(c.getId()));
+      final var toDelete = new java.util.HashSet<>(ids);
+      if (isRecording()) {
+        final var deleted = new TreeMap<Integer, Card>();
+        for (int i = 0; i < data.size(); i++) {
+          final Integer id = idAt(i);
+          if (id != null && toDelete.contains(id) && isLoaded(data.get(i))) {
+            deleted.put(i, data.get(i));
+          }
+        }
+        recordUndo(() -> {
+          deleted.forEach((p, c) -> data.add(p, c));
+          reindex();
+          cardsChanged();
+        });
+      }
+      data.removeIf(c -> isLoaded(c) && toDelete.contains(c.getId()));
+      reindex();
+      cardsChanged();
   }
 }
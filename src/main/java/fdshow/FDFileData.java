@@ -2,8 +2,9 @@ package fdshow;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 
 /**
  * Represents a Flashcards Deluxe export data file.
@@ -21,17 +22,35 @@ public class FDFileData extends FDCards {
 
   /**
    * Saves the CardsHolder to the indicated file, and closes the file.
+   * The file is gzipped if its name ends in ".gz".
    * @param file the file to save the CardsHolder to
+   * @throws java.io.IOException if the file can't be written in full
    */
   @Override
   void saveTo(final File file)
   throws java.io.IOException {
-      var fw = new FileWriter(file);
-      try (java.io.PrintWriter pw = new java.io.PrintWriter(fw)) {
+      if (!print(new PrintWriter(FileIO.openWriter(file)))) {
+          throw new java.io.IOException(
+            "Trying to write flashcard file " + file);
+      }
+  }
+
+  /**
+   * Prints the header, field names and cards, and closes the writer.
+   * PrintWriter doesn't throw, so a failure to write must be asked about.
+   *
+   * @param pw the writer
+   * @return false if writing failed
+   */
+  private boolean print(final PrintWriter pw) {
+      try {
           pw.print(header.toString());
           pw.print(fieldNames.toString());
-          pw.print(super.toString());
+          printCards(pw);
+      } finally {
+          pw.close();
       }
+      return !pw.checkError();
   }
 
   /**
@@ -46,16 +65,25 @@ public class FDFileData extends FDCards {
     super.loadFrom(r, fieldNames);
   }
 
+  /**
+   * Returns the file header.
+   *
+   * @return the header
+   */
+  Header getHeader() {
+    return header;
+  }
+
   /**
    * Saves the file card data to the specified stream, and closes the stream.
    *
    * @param outStream the stream to save the file card data to
+   * @throws UncheckedIOException if the stream can't be written in full
    */
   public void saveTo(final OutputStream outStream) {
-    var pw = new java.io.PrintWriter(outStream);
-    pw.print(header.toString());
-    pw.print(fieldNames.toString());
-    pw.print(super.toString());
-    pw.close();
+    if (!print(new PrintWriter(outStream))) {
+      throw new UncheckedIOException(
+        new java.io.IOException("Trying to write flashcard data"));
+    }
   }
 }
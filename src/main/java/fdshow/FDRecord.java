@@ -0,0 +1,391 @@
+package fdshow;
+
+/*
+ * FDRecord's fdshow direct dependencies
+ *   FieldNames
+ *   CategoryIndex
+ *   StringDeduplicator
+ *   FlightEvents
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * One record of a Flashcards Deluxe file, as raw tokenized fields.
+ *
+ * The record is read into a single reusable buffer,
+ * keeping only where each field starts and ends,
+ * so that a filter can look at a few fields of each record
+ * without a Card, a Map or a String per field being made.
+ * Only records that pass the filter need to be turned into Cards.
+ *
+ * FDCard's format: If there are " (lone quotes) or line separators in a field
+ * then the field starts and ends with a lone quote, and any lone
+ * quotes in the actual text are replaced with "" (repeated quotes).
+ * Line separators are \r\n sequences.
+ * Fields are separated by tabs and records end with \r\n.
+ */
+class FDRecord {
+  /**
+   * The prefix that encodes the card ID in the Notes field,
+   * after the ID itself.
+   */
+  static final String ID_MARKER = " : DO NOT MODIFY THIS LINE ";
+
+  /**
+   * The names of the fields in the record.
+   */
+  private final String[] names;
+
+  /**
+   * The position of the Notes field, or -1 if there isn't one.
+   */
+  private final int notesIndex;
+
+  /**
+   * The field positions, by field name.
+   */
+  private final Map<String, Integer> indexByName = new HashMap<>();
+
+  /**
+   * The raw characters of the record, as read.
+   */
+  private final StringBuilder raw = new StringBuilder();
+
+  /**
+   * Where each field's content starts in raw.
+   */
+  private final int[] starts;
+
+  /**
+   * Where each field's content ends in raw.
+   */
+  private final int[] ends;
+
+  /**
+   * Whether each field was quoted.
+   */
+  private final boolean[] quoted;
+
+  /**
+   * Where the record's text ends in raw, before the record delimiter.
+   */
+  private int rawEnd;
+
+  /**
+   * Shares equal field values between records, or null not to.
+   */
+  private final StringDeduplicator dedup;
+
+  /**
+   * Scratch space for decoding quoted fields.
+   */
+  private final StringBuilder decoded = new StringBuilder();
+
+  /**
+   * Constructs an empty record with the specified fields.
+   *
+   * @param fields the field names in the order they will be read
+   */
+  FDRecord(final FieldNames fields) {
+    this(fields, null);
+  }
+
+  /**
+   * Constructs an empty record with the specified fields,
+   * whose field values are shared through the specified table.
+   *
+   * @param fields the field names in the order they will be read
+   * @param dedup  the table to share field values through, or null
+   */
+  FDRecord(final FieldNames fields, final StringDeduplicator dedup) {
+    this.dedup = dedup;
+    names = fields.toArray();
+    starts = new int[names.length];
+    ends = new int[names.length];
+    quoted = new boolean[names.length];
+    int notes = -1;
+    for (int i = 0; i < names.length; i++) {
+      indexByName.putIfAbsent(names[i], i);
+      if (names[i].equals("Notes")) {
+        notes = i;
+      }
+    }
+    notesIndex = notes;
+  }
+
+  /**
+   * Reads the next record from the reader, replacing this record's contents.
+   * The reader is positioned right before the fields of the record.
+   *
+   * @param r the reader from which to read the record
+   */
+  void readFrom(final Reader r) {
+    final var event = new FlightEvents.CardParse();
+    event.begin();
+    raw.setLength(0);
+    rawEnd = 0;
+    try {
+      for (int i = 0; i < names.length; i++) {
+        readField(r, i);
+      }
+    } catch (IOException x) {
+      throw new Error("Unexpected IOException");
+    }
+    if (event.shouldCommit()) {
+      event.cardId = FlightEvents.idString(getId());
+      event.chars = raw.length();
+      event.commit();
+    }
+  }
+
+  /**
+   * Reads the next field, and its delimiter, into raw.
+   *
+   * @param r the reader
+   * @param i the field's position
+   * @throws IOException if the reader does
+   */
+  private void readField(final Reader r, final int i) throws IOException {
+    int ch = r.read();
+    quoted[i] = ch == '"';
+    if (quoted[i]) {
+      raw.append('"');
+      starts[i] = raw.length();
+      ch = r.read();
+      while (ch != -1) {
+        if (ch == '"') {
+          ch = r.read();
+          if (ch != '"') {
+            break; // that was the closing quote
+          }
+          raw.append('"');
+        }
+        raw.append((char) ch);
+        ch = r.read();
+      }
+      ends[i] = raw.length();
+      raw.append('"');
+      assert ch == '\t' || ch == '\r' || ch == -1 : "Error in flashcard file";
+    } else {
+      starts[i] = raw.length();
+      while (ch != '\t' && ch != '\r' && ch != -1) {
+        raw.append((char) ch);
+        ch = r.read();
+      }
+      ends[i] = raw.length();
+    }
+    rawEnd = raw.length();
+    if (ch == '\r') {
+      ch = r.read(); // soak up \n
+      assert ch == '\n' || !quoted[i]
+        : "Return not followed by linefeed in flashcard file";
+    } else if (ch == '\t') {
+      raw.append('\t');
+    }
+  }
+
+  /**
+   * Returns the number of fields in the record.
+   *
+   * @return the number of fields
+   */
+  int length() {
+    return names.length;
+  }
+
+  /**
+   * Returns the position of the named field, or -1 if there isn't one.
+   *
+   * @param name the field name
+   * @return the position, or -1
+   */
+  int indexOf(final String name) {
+    final Integer i = indexByName.get(name);
+    return i == null ? -1 : i;
+  }
+
+  /**
+   * Returns the content of the specified field,
+   * converted from Flashcards Deluxe format to the internal format.
+   * That is, "" is replaced with " and \r\n with System.lineSeparator().
+   *
+   * @param i the field's position
+   * @return the field content
+   */
+  String field(final int i) {
+    if (!quoted[i]) {
+      return string(raw, starts[i], ends[i]);
+    }
+    final var accum = decoded;
+    accum.setLength(0);
+    for (int p = starts[i]; p < ends[i]; p++) {
+      final char ch = raw.charAt(p);
+      if (ch == '"') {
+        p++; // the second of two quotes
+      } else if (ch == '\r' && p + 1 < ends[i] && raw.charAt(p + 1) == '\n') {
+        accum.append(System.lineSeparator());
+        p++;
+        continue;
+      }
+      accum.append(ch);
+    }
+    return string(accum, 0, accum.length());
+  }
+
+  /**
+   * Returns part of a buffer as a String,
+   * shared through the deduplication table if there is one.
+   *
+   * @param chars the buffer
+   * @param start the index of the first character
+   * @param end   the index after the last character
+   * @return the String
+   */
+  private String string(final CharSequence chars, final int start, final int end) {
+    return dedup == null ? chars.subSequence(start, end).toString()
+                         : dedup.dedup(chars, start, end);
+  }
+
+  /**
+   * Returns the content of the named field, or null if there isn't one.
+   *
+   * @param name the field name
+   * @return the field content, or null
+   */
+  String field(final String name) {
+    final int i = indexOf(name);
+    return i == -1 ? null : field(i);
+  }
+
+  /**
+   * Returns the length of the ID encoding at the start of the Notes field,
+   * including the marker, or 0 if the Notes field does not encode an ID.
+   *
+   * @return the length of the encoding
+   */
+  private int idPrefixLength() {
+    if (notesIndex == -1) {
+      return 0;
+    }
+    final int start = starts[notesIndex];
+    final int end = ends[notesIndex];
+    int p = start;
+    if (p < end && raw.charAt(p) == '-') {
+      p++;
+    }
+    final int digits = p;
+    while (p < end && raw.charAt(p) >= '0' && raw.charAt(p) <= '9') {
+      p++;
+    }
+    if (p == digits || end - p < ID_MARKER.length()) {
+      return 0;
+    }
+    for (int m = 0; m < ID_MARKER.length(); m++) {
+      if (raw.charAt(p + m) != ID_MARKER.charAt(m)) {
+        return 0;
+      }
+    }
+    return p - start + ID_MARKER.length();
+  }
+
+  /**
+   * Returns the card ID encoded in the Notes field, or null if there isn't one.
+   *
+   * @return the card ID, or null
+   */
+  Integer getId() {
+    final int length = idPrefixLength();
+    if (length == 0) {
+      return null;
+    }
+    final int start = starts[notesIndex];
+    return Integer.valueOf(
+      raw.substring(start, start + length - ID_MARKER.length()));
+  }
+
+  /**
+   * Returns the record's fields as a map from field name to content.
+   * The card ID encoding, if any, is removed from the Notes field.
+   *
+   * @return the fields
+   */
+  Map<String, String> toMap() {
+    final var data = new HashMap<String, String>();
+    for (int i = 0; i < names.length; i++) {
+      data.put(names[i], field(i));
+    }
+    final int idLength = idPrefixLength();
+    if (idLength != 0) {
+      final String notes = data.get("Notes");
+      data.put("Notes", string(notes, idLength, notes.length()));
+    }
+    return data;
+  }
+
+  /**
+   * Returns the record exactly as it was read,
+   * without the record delimiter.
+   *
+   * @return the raw record
+   */
+  String rawText() {
+    return raw.substring(0, rawEnd);
+  }
+
+  /**
+   * Returns a filter accepting records with IDs
+   * from low to high, inclusive.
+   *
+   * @param low  the lowest ID
+   * @param high the highest ID
+   * @return the filter
+   */
+  static Predicate<FDRecord> idBetween(final int low, final int high) {
+    return rec -> {
+      final Integer id = rec.getId();
+      return id != null && id >= low && id <= high;
+    };
+  }
+
+  /**
+   * Returns a filter accepting records with any of the specified IDs.
+   *
+   * @param ids the IDs, among which nulls are ignored
+   * @return the filter
+   */
+  static Predicate<FDRecord> idIn(final Collection<Integer> ids) {
+    final var copy = new HashSet<>(ids);
+    return rec -> {
+      final Integer id = rec.getId();
+      return id != null && copy.contains(id);
+    };
+  }
+
+  /**
+   * Returns a filter accepting records that have IDs.
+   *
+   * @return the filter
+   */
+  static Predicate<FDRecord> hasId() {
+    return rec -> rec.idPrefixLength() != 0;
+  }
+
+  /**
+   * Returns a filter accepting records in any of the specified categories.
+   *
+   * @param categories the categories
+   * @return the filter
+   */
+  static Predicate<FDRecord> inCategories(final Collection<String> categories) {
+    final var copy = new ArrayList<>(categories);
+    return rec -> CategoryIndex.matches(rec.field(CategoryIndex.FIELD), copy);
+  }
+}
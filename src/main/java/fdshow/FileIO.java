@@ -0,0 +1,98 @@
+package fdshow;
+
+/*
+ * FileIO's fdshow direct dependencies
+ *   ParallelGzipOutputStream
+ *   PipelinedFileOutputStream
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens flashcard and wiki files for reading and writing,
+ * gzipping and gunzipping those whose names end in ".gz".
+ *
+ * Text is read and written in the platform's default charset,
+ * as FileReader and FileWriter do.
+ */
+class FileIO {
+
+  private FileIO() { }; // prevent instantiation
+
+  /**
+   * The buffer size used for reading and writing, in bytes or chars.
+   */
+  static final int BUFFER_SIZE = 1 << 16;
+
+  /**
+   * Returns true if the file's name says it is gzipped.
+   *
+   * @param file the file
+   * @return true if the name ends in ".gz"
+   */
+  static boolean isGzipped(final File file) {
+    return file.getName().endsWith(".gz");
+  }
+
+  /**
+   * Returns the file's name without any ".gz" ending.
+   *
+   * @param file the file
+   * @return the name, as it would be uncompressed
+   */
+  static String plainName(final File file) {
+    final String name = file.getName();
+    return isGzipped(file) ? name.substring(0, name.length() - 3) : name;
+  }
+
+  /**
+   * Opens a file for reading, gunzipping it if its name ends in ".gz".
+   *
+   * @param file the file
+   * @return the reader
+   * @throws IOException if the file can't be opened
+   */
+  static BufferedReader openReader(final File file) throws IOException {
+    InputStream in = new FileInputStream(file);
+    try {
+      if (isGzipped(file)) {
+        in = new GZIPInputStream(in, BUFFER_SIZE);
+      }
+    } catch (IOException e) {
+      in.close();
+      throw e;
+    }
+    return new BufferedReader(
+      new InputStreamReader(in, Charset.defaultCharset()), BUFFER_SIZE);
+  }
+
+  /**
+   * Opens a file for writing, gzipping it if its name ends in ".gz".
+   * Blocks are compressed in parallel,
+   * and written to the file on a thread of their own,
+   * so that making the text and writing it overlap.
+   *
+   * @param file the file
+   * @return the writer
+   * @throws IOException if the file can't be opened
+   */
+  static Writer openWriter(final File file) throws IOException {
+    OutputStream out = new PipelinedFileOutputStream(file);
+    if (isGzipped(file)) {
+      out = new ParallelGzipOutputStream(out);
+    }
+    return new BufferedWriter(
+      new OutputStreamWriter(out, Charset.defaultCharset()), BUFFER_SIZE);
+  }
+}
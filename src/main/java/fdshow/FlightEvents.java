@@ -0,0 +1,183 @@
+package fdshow;
+
+/*
+ * FlightEvents' fdshow direct dependencies
+ *   Card
+ */
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events for the work done on each card,
+ * so that a recording of a slow sync shows which cards
+ * or which phases the time went on.
+ *
+ * The events are disabled by default,
+ * so unless they are asked for they cost next to nothing.
+ * App's --jfr option records them to a file;
+ * or they can be enabled in a recording started some other way,
+ * with settings such as fdshow.CardParse#enabled=true.
+ *
+ * Each event is used the same way:
+ * create it and begin it before the work,
+ * then, if shouldCommit says it is wanted,
+ * fill in its fields and commit it after.
+ * That way the fields are only worked out when they will be recorded.
+ */
+final class FlightEvents {
+
+  private FlightEvents() { }; // prevent instantiation
+
+  /**
+   * The category all the events are shown under.
+   */
+  private static final String CATEGORY = "fdshow";
+
+  /**
+   * Reading a record of a flashcard file.
+   */
+  @Name("fdshow.CardParse")
+  @Label("Card Parse")
+  @Description("Reading one record of a flashcard file")
+  @Category(CATEGORY)
+  @Enabled(false)
+  @StackTrace(false)
+  static final class CardParse extends Event {
+    /**
+     * The ID of the card read, or "&lt;NULL&gt;".
+     */
+    @Label("Card ID")
+    String cardId;
+
+    /**
+     * The number of characters read.
+     */
+    @Label("Characters")
+    int chars;
+  }
+
+  /**
+   * Work on a card in a wiki document.
+   */
+  @Name("fdshow.WikiCard")
+  @Label("Wiki Card")
+  @Description("Reading, adding, updating or deleting a card in a wiki")
+  @Category(CATEGORY)
+  @Enabled(false)
+  @StackTrace(false)
+  static final class WikiCard extends Event {
+    /**
+     * What was done: "read", "add", "update" or "delete".
+     */
+    @Label("Operation")
+    String operation;
+
+    /**
+     * The ID of the card, or "&lt;NULL&gt;".
+     */
+    @Label("Card ID")
+    String cardId;
+
+    /**
+     * The number of characters in the card's fields.
+     */
+    @Label("Characters")
+    int chars;
+  }
+
+  /**
+   * A phase of a sync.
+   */
+  @Name("fdshow.SyncPhase")
+  @Label("Sync Phase")
+  @Description("One step of syncing a flashcard file with a wiki")
+  @Category(CATEGORY)
+  @Enabled(false)
+  @StackTrace(false)
+  static final class SyncPhase extends Event {
+    /**
+     * The Sync method.
+     */
+    @Label("Phase")
+    String phase;
+
+    /**
+     * The number of cards the phase changed.
+     */
+    @Label("Cards")
+    int cards;
+  }
+
+  /**
+   * All the event classes.
+   */
+  static final List<Class<? extends Event>> ALL =
+    List.of(CardParse.class, WikiCard.class, SyncPhase.class);
+
+  /**
+   * Returns the printable form of a card ID.
+   *
+   * @param id the ID, possibly null
+   * @return the ID as a string, or "&lt;NULL&gt;"
+   */
+  static String idString(final Integer id) {
+    return id == null ? "<NULL>" : id.toString();
+  }
+
+  /**
+   * Returns the number of characters in a card's fields.
+   *
+   * @param c the card
+   * @return the total length of its field values
+   */
+  static int chars(final Card c) {
+    int total = 0;
+    for (String value : c.getData().values()) {
+      total += value == null ? 0 : value.length();
+    }
+    return total;
+  }
+
+  /**
+   * Starts a recording of all the events, and nothing else.
+   *
+   * @return the recording, to be dumped and closed by the caller
+   */
+  static Recording startRecording() {
+    final var recording = new Recording();
+    recording.setName("fdshow");
+    for (Class<? extends Event> event : ALL) {
+      recording.enable(event).withoutThreshold();
+    }
+    recording.start();
+    return recording;
+  }
+
+  /**
+   * Stops a recording, writes it to a file, and closes it.
+   *
+   * @param recording the recording
+   * @param file      where to write it
+   * @throws IOException if the file can't be written
+   */
+  static void finishRecording(final Recording recording, final Path file)
+  throws IOException {
+    try {
+      recording.stop();
+      recording.dump(file);
+    } finally {
+      recording.close();
+    }
+  }
+}
@@ -71,6 +71,24 @@ class Header {
     return accum.toString();
   }
 
+  /**
+   * Returns the value of the named header line,
+   * without the leading "*\t" name and without the trailing \r\n.
+   * Returns null if there is no such header line.
+   *
+   * @param name the header line name, for example "deck-stats-1"
+   * @return the value, or null
+   */
+  String getValue(final String name) {
+    final String prefix = "*\t" + name + "\t";
+    for (String line : data) {
+      if (line.startsWith(prefix)) {
+        return line.substring(prefix.length(), line.length() - "\r\n".length());
+      }
+    }
+    return null;
+  }
+
   /**
    * Returns a representation of the header suitable for
    * writing into a Flashcards Deluxe data file.
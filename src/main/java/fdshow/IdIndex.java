@@ -0,0 +1,248 @@
+package fdshow;
+
+//
+// IdIndex's fdshow direct dependencies
+//   None.
+//
+
+import java.util.OptionalInt;
+
+/**
+ * Maps card IDs to their positions in a list of cards,
+ * noting with each whether the card was loaded or only kept unloaded.
+ *
+ * Keys and values are plain ints in open addressing arrays,
+ * so an entry costs a few bytes rather than a boxed map entry,
+ * and whether a card is loaded is known without reading the card,
+ * which may be spilled to disk.
+ */
+class IdIndex {
+  /**
+   * The position of an ID that isn't in the index.
+   */
+  static final int ABSENT = -1;
+
+  /**
+   * The smallest number of slots.
+   */
+  private static final int MIN_CAPACITY = 16;
+
+  /**
+   * The IDs, by slot.
+   */
+  private int[] keys;
+
+  /**
+   * The position of each ID, complemented if the card is unloaded.
+   */
+  private int[] values;
+
+  /**
+   * Which slots are in use.
+   */
+  private boolean[] used;
+
+  /**
+   * The number of IDs in the index.
+   */
+  private int size;
+
+  /**
+   * Makes an empty index.
+   */
+  IdIndex() {
+    allocate(MIN_CAPACITY);
+  }
+
+  /**
+   * @return the number of IDs in the index
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * @param id the ID
+   * @return the position of the card with the ID, loaded or not,
+   *         or ABSENT if the ID isn't in the index
+   */
+  int position(final int id) {
+    final int slot = find(id);
+    if (slot < 0) {
+      return ABSENT;
+    }
+    final int value = values[slot];
+    return value < 0 ? ~value : value;
+  }
+
+  /**
+   * @param id the ID
+   * @return true if the ID is in the index and its card is loaded
+   */
+  boolean isLoaded(final int id) {
+    final int slot = find(id);
+    return slot >= 0 && values[slot] >= 0;
+  }
+
+  /**
+   * @param id the ID
+   * @return true if the ID is in the index and its card is unloaded
+   */
+  boolean isUnloaded(final int id) {
+    final int slot = find(id);
+    return slot >= 0 && values[slot] < 0;
+  }
+
+  /**
+   * Adds an ID, or replaces its entry.
+   *
+   * @param id       the ID
+   * @param position the position of the card with the ID
+   * @param loaded   true if the card is loaded
+   */
+  void put(final int id, final int position, final boolean loaded) {
+    if (position < 0) {
+      throw new IllegalArgumentException("Negative position " + position);
+    }
+    int slot = find(id);
+    if (slot < 0) {
+      if (2 * (size + 1) > keys.length) {
+        resize(2 * keys.length);
+      }
+      slot = ~find(id);
+      keys[slot] = id;
+      used[slot] = true;
+      size++;
+    }
+    values[slot] = loaded ? position : ~position;
+  }
+
+  /**
+   * Adds an ID, unless it's already in the index.
+   *
+   * @param id       the ID
+   * @param position the position of the card with the ID
+   * @param loaded   true if the card is loaded
+   * @return true if the ID was added
+   */
+  boolean putIfAbsent(final int id, final int position, final boolean loaded) {
+    if (find(id) >= 0) {
+      return false;
+    }
+    put(id, position, loaded);
+    return true;
+  }
+
+  /**
+   * Removes an ID, if it's in the index.
+   *
+   * @param id the ID
+   */
+  void remove(final int id) {
+    int gap = find(id);
+    if (gap < 0) {
+      return;
+    }
+    used[gap] = false;
+    size--;
+    // Shift back the entries that probed past the gap
+    final int mask = keys.length - 1;
+    for (int i = (gap + 1) & mask; used[i]; i = (i + 1) & mask) {
+      final int home = hash(keys[i]) & mask;
+      final boolean reachesGap = gap <= i ? home <= gap || home > i
+                                          : home <= gap && home > i;
+      if (reachesGap) {
+        keys[gap] = keys[i];
+        values[gap] = values[i];
+        used[gap] = true;
+        used[i] = false;
+        gap = i;
+      }
+    }
+  }
+
+  /**
+   * Removes every ID.
+   */
+  void clear() {
+    allocate(MIN_CAPACITY);
+  }
+
+  /**
+   * @return the greatest ID in the index, if any
+   */
+  OptionalInt maxId() {
+    boolean any = false;
+    int max = Integer.MIN_VALUE;
+    for (int i = 0; i < keys.length; i++) {
+      if (used[i]) {
+        any = true;
+        max = Math.max(max, keys[i]);
+      }
+    }
+    return any ? OptionalInt.of(max) : OptionalInt.empty();
+  }
+
+  /**
+   * Finds the slot of an ID.
+   *
+   * @param id the ID
+   * @return the ID's slot, or the complement of the empty slot
+   *         where it would go
+   */
+  private int find(final int id) {
+    final int mask = keys.length - 1;
+    for (int i = hash(id) & mask; ; i = (i + 1) & mask) {
+      if (!used[i]) {
+        return ~i;
+      }
+      if (keys[i] == id) {
+        return i;
+      }
+    }
+  }
+
+  /**
+   * Spreads IDs, which are often consecutive, over the slots.
+   *
+   * @param id the ID
+   * @return the hash
+   */
+  private static int hash(final int id) {
+    final int h = id * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Replaces the arrays with empty ones.
+   *
+   * @param capacity the number of slots, a power of two
+   */
+  private void allocate(final int capacity) {
+    keys = new int[capacity];
+    values = new int[capacity];
+    used = new boolean[capacity];
+    size = 0;
+  }
+
+  /**
+   * Moves the entries into bigger arrays.
+   *
+   * @param capacity the new number of slots, a power of two
+   */
+  private void resize(final int capacity) {
+    final int[] oldKeys = keys;
+    final int[] oldValues = values;
+    final boolean[] oldUsed = used;
+    allocate(capacity);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldUsed[i]) {
+        final int slot = ~find(oldKeys[i]);
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+        used[slot] = true;
+        size++;
+      }
+    }
+  }
+}
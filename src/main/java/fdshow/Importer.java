@@ -0,0 +1,458 @@
+package fdshow;
+
+/*
+ * Importer's fdshow direct dependencies
+ *   Card
+ *   CardsHolder
+ *   FDCard
+ *   FDFileData
+ *   FieldNames
+ *   WikiData
+ *   WikiDirectory
+ *   Backups
+ *   FileIO
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+/**
+ * Imports cards in bulk into a flashcard file or a wiki,
+ * from tab or comma separated text,
+ * or from lines of colon separated fields, front:back, as SimpleCard reads.
+ *
+ * The rows are streamed, a batch at a time,
+ * so the input can be far bigger than the heap.
+ * Each batch is checked and made into cards in parallel,
+ * while the next batch is being read,
+ * and then added to the target in one go with CardsHolder.addCards.
+ *
+ * Without --header, the columns are the fields "Text 1", "Text 2", ...
+ * Rows with more columns than there are field names,
+ * or with fields the flashcard file doesn't have, are rejected and reported.
+ * The imported cards have no IDs; the next sync gives them some.
+ */
+@Command(name = "Importer",
+          description = "Imports cards in bulk into a flashcard or wiki file",
+          mixinStandardHelpOptions = true,
+          version = "pre-release")
+public class Importer implements Callable<Integer> {
+
+  /**
+   * Adds logging ability.
+   */
+  static final Logger LOGGER = Logger.getLogger(Importer.class.getName());
+
+  /**
+   * The most rejected rows reported one by one.
+   */
+  static final int MAX_REPORTED = 10;
+
+  /**
+   * The formats rows can be in.
+   */
+  enum Format {
+    /** Tab separated values, one row a line. */
+    TSV,
+    /** Comma separated values, with fields quoted as RFC 4180 says. */
+    CSV,
+    /** Colon separated fields, one card a line, as SimpleCard reads. */
+    COLON
+  }
+
+  /**
+   * The file to import from.
+   */
+  @Parameters(
+    index = "0",
+    description = "File to import from (.tsv, .csv or colon separated)")
+  private File inputFile;
+
+  /**
+   * The file or directory to import into.
+   */
+  @Parameters(
+    index = "1",
+    description = "Flashcard file, wiki file or wiki directory to import into")
+  private File targetFile;
+
+  /**
+   * The format of the input.
+   */
+  @Option(names = "--format",
+    description = "TSV, CSV or COLON (default from the input file name)")
+  private Format format;
+
+  /**
+   * True if the first row names the fields.
+   */
+  @Option(names = "--header",
+    description = "the first row names the fields")
+  private boolean header;
+
+  /**
+   * The number of rows in a batch.
+   */
+  @Option(names = "--batch",
+    description = "rows checked and added at a time (default 10000)")
+  private int batchSize = 10_000;
+
+  /**
+   * The number of backup generations to keep of the target.
+   */
+  @Option(names = "--backups",
+    description = "backup generations to keep (default 3)")
+  private int backupCount = Backups.DEFAULT_GENERATIONS;
+
+  /**
+   * The number of rows rejected so far.
+   */
+  private final AtomicInteger rejected = new AtomicInteger();
+
+  /**
+   * Imports the cards.
+   *
+   * @param args the command line arguments
+   */
+  public static void main(final String[] args) {
+    int exitCode = new CommandLine(new Importer()).execute(args);
+    System.exit(exitCode);
+  }
+
+  /**
+   * Imports the cards.
+   */
+  @Override
+  public Integer call() throws Exception {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Batch size must be at least 1");
+    }
+    final long start = System.nanoTime();
+    final Format rowFormat = format != null ? format : formatOf(inputFile);
+    final CardsHolder target = open(targetFile);
+    final FieldNames fields = target instanceof FDFileData
+      ? ((FDFileData) target).getFieldNames()
+      : null;
+
+    int rows = 0;
+    int added = 0;
+    try (BufferedReader in = FileIO.openReader(inputFile)) {
+      String[] names = null;
+      if (header) {
+        final String first = nextRecord(in, rowFormat);
+        if (first == null) {
+          throw new IllegalArgumentException(inputFile + " has no header row");
+        }
+        names = columns(first, rowFormat);
+      }
+      CompletableFuture<List<Card>> pending = null;
+      for (List<String> batch = nextBatch(in, rowFormat);
+           !batch.isEmpty();
+           batch = nextBatch(in, rowFormat)) {
+        final int firstRow = rows + (header ? 2 : 1);
+        rows += batch.size();
+        final List<String> records = batch;
+        final String[] columnNames = names;
+        final var converting = CompletableFuture.supplyAsync(
+          () -> toCards(records, firstRow, rowFormat, columnNames, fields));
+        if (pending != null) {
+          added += append(target, pending.join());
+        }
+        pending = converting;
+      }
+      if (pending != null) {
+        added += append(target, pending.join());
+      }
+    }
+
+    final var backups = new Backups(targetFile, backupCount);
+    backups.backUp();
+    target.saveTo(targetFile);
+    backups.await();
+
+    final long ms = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+    LOGGER.log(Level.INFO,
+               "Imported {0} of {1} rows, {2} rejected, in {3} ms ({4} rows/s)",
+               new Object[]{added, rows, rejected.get(), ms, rows * 1000L / ms});
+    return 0;
+  }
+
+  /**
+   * Returns the format suggested by a file's name.
+   *
+   * @param file the file
+   * @return the format
+   */
+  static Format formatOf(final File file) {
+    final String name = FileIO.plainName(file).toLowerCase(Locale.ROOT);
+    if (name.endsWith(".tsv")) {
+      return Format.TSV;
+    } else if (name.endsWith(".csv")) {
+      return Format.CSV;
+    }
+    return Format.COLON;
+  }
+
+  /**
+   * Loads the target.
+   * A wiki file that doesn't exist yet starts out empty;
+   * a flashcard file must exist, for its header and field names.
+   *
+   * @param file the flashcard file, wiki file or wiki directory
+   * @return the target's cards
+   * @throws IOException if the target can't be read
+   */
+  private CardsHolder open(final File file) throws IOException {
+    if (file.isDirectory()) {
+      final var pages = new WikiDirectory(file);
+      pages.setBackupGenerations(backupCount);
+      pages.loadFrom(file);
+      return pages;
+    }
+    final String name = FileIO.plainName(file);
+    final CardsHolder holder;
+    if (name.endsWith(".html")) {
+      holder = new WikiData();
+      if (!file.exists()) {
+        return holder;
+      }
+    } else if (name.endsWith(".txt")) {
+      holder = new FDFileData();
+    } else {
+      throw new IllegalArgumentException(
+        file.getName() + " file name must end in .html or .txt"
+        + " (optionally followed by .gz), or be a directory");
+    }
+    holder.loadFrom(file);
+    return holder;
+  }
+
+  /**
+   * Adds a batch of cards to the target.
+   *
+   * @param target the target
+   * @param cards  the cards
+   * @return the number of cards added
+   */
+  private static int append(final CardsHolder target, final List<Card> cards) {
+    target.addCards(cards);
+    return cards.size();
+  }
+
+  /**
+   * Reads the next batch of records.
+   *
+   * @param in     where to read them from
+   * @param format the format of the records
+   * @return the records, none if the input is used up
+   * @throws IOException if in does
+   */
+  private List<String> nextBatch(final BufferedReader in, final Format format)
+  throws IOException {
+    final var batch = new ArrayList<String>(batchSize);
+    String record;
+    while (batch.size() < batchSize && (record = nextRecord(in, format)) != null) {
+      batch.add(record);
+    }
+    return batch;
+  }
+
+  /**
+   * Reads the next record, skipping blank lines.
+   * A CSV record runs over as many lines as its quoted fields do.
+   *
+   * @param in     where to read it from
+   * @param format the format of the record
+   * @return the record, or null if the input is used up
+   * @throws IOException if in does
+   */
+  static String nextRecord(final BufferedReader in, final Format format)
+  throws IOException {
+    String line;
+    do {
+      line = in.readLine();
+    } while (line != null && line.isBlank());
+    if (line == null || format != Format.CSV) {
+      return line;
+    }
+    final var record = new StringBuilder(line);
+    int quotes = count(line, '"');
+    while (quotes % 2 != 0 && (line = in.readLine()) != null) {
+      record.append(System.lineSeparator()).append(line);
+      quotes += count(line, '"');
+    }
+    return record.toString();
+  }
+
+  /**
+   * Returns the number of times a character appears in a string.
+   *
+   * @param s the string
+   * @param c the character
+   * @return the count
+   */
+  private static int count(final String s, final char c) {
+    int n = 0;
+    for (int i = s.indexOf(c); i >= 0; i = s.indexOf(c, i + 1)) {
+      n++;
+    }
+    return n;
+  }
+
+  /**
+   * Splits a record into its columns.
+   *
+   * @param record the record
+   * @param format the format of the record
+   * @return the columns
+   */
+  static String[] columns(final String record, final Format format) {
+    switch (format) {
+      case TSV:
+        return record.split("\t", -1);
+      case CSV:
+        return csvColumns(record);
+      default:
+        return record.split(":"); // as SimpleCard splits it
+    }
+  }
+
+  /**
+   * Splits a CSV record into its columns.
+   * Quoted columns may hold commas, line breaks, and quotes written twice.
+   *
+   * @param record the record
+   * @return the columns
+   */
+  private static String[] csvColumns(final String record) {
+    final var columns = new ArrayList<String>();
+    final var column = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < record.length(); i++) {
+      final char c = record.charAt(i);
+      if (quoted) {
+        if (c != '"') {
+          column.append(c);
+        } else if (i + 1 < record.length() && record.charAt(i + 1) == '"') {
+          column.append('"');
+          i++;
+        } else {
+          quoted = false;
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        columns.add(column.toString());
+        column.setLength(0);
+      } else {
+        column.append(c);
+      }
+    }
+    columns.add(column.toString());
+    return columns.toArray(new String[0]);
+  }
+
+  /**
+   * Checks a batch of records and makes cards of them, in parallel.
+   * Rejected records are counted, and the first few reported.
+   *
+   * @param records  the records
+   * @param firstRow the row number of the first record, for reports
+   * @param format   the format of the records
+   * @param names    the field names from the header row, or null
+   * @param fields   the flashcard file's fields, or null for a wiki
+   * @return the cards, in order
+   */
+  private List<Card> toCards(
+          final List<String> records,
+          final int firstRow,
+          final Format format,
+          final String[] names,
+          final FieldNames fields) {
+    final Set<String> known =
+      fields == null ? null : new HashSet<>(Arrays.asList(fields.toArray()));
+    return IntStream.range(0, records.size())
+                    .parallel()
+                    .mapToObj(i -> toCard(records.get(i), firstRow + i,
+                                          format, names, fields, known))
+                    .filter(c -> c != null)
+                    .collect(Collectors.toList());
+  }
+
+  /**
+   * Checks a record and makes a card of it.
+   *
+   * @param record the record
+   * @param row    the row number, for reports
+   * @param format the format of the record
+   * @param names  the field names from the header row, or null
+   * @param fields the flashcard file's fields, or null for a wiki
+   * @param known  the flashcard file's field names, or null for a wiki
+   * @return the card, or null if the record is rejected
+   */
+  private Card toCard(
+          final String record,
+          final int row,
+          final Format format,
+          final String[] names,
+          final FieldNames fields,
+          final Set<String> known) {
+    final String[] values = columns(record, format);
+    if (names != null && values.length > names.length) {
+      return reject(row, values.length + " columns but only "
+                         + names.length + " field names");
+    }
+    final Map<String, String> data = new HashMap<>();
+    if (fields != null) {
+      for (String name : known) {
+        data.put(name, "");
+      }
+    }
+    for (int i = 0; i < values.length; i++) {
+      final String name = names != null ? names[i] : "Text " + (i + 1);
+      if (known != null && !known.contains(name)) {
+        if (values[i].isEmpty()) {
+          continue;
+        }
+        return reject(row, "no field '" + name + "' in " + targetFile.getName());
+      }
+      data.put(name, values[i]);
+    }
+    return fields == null ? new Card(data, null) : new FDCard(data, null, fields);
+  }
+
+  /**
+   * Counts a rejected row, and reports it if it is one of the first few.
+   *
+   * @param row    the row number
+   * @param reason why it was rejected
+   * @return null
+   */
+  private Card reject(final int row, final String reason) {
+    if (rejected.incrementAndGet() <= MAX_REPORTED) {
+      LOGGER.log(Level.WARNING, "Row {0} rejected: {1}",
+                 new Object[]{row, reason});
+    }
+    return null;
+  }
+}
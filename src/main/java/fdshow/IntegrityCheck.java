@@ -0,0 +1,1078 @@
+package fdshow;
+
+/*
+ * IntegrityCheck's fdshow direct dependencies
+ *   FDRecord
+ *   WikiDirectory
+ *   FileIO
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+/**
+ * Checks flashcard files and wikis for the problems that stop them
+ * loading or syncing, and says where each one is.
+ *
+ * Loading a damaged file stops at the first problem,
+ * with an assertion in FDRecord or a NumberFormatException
+ * when wiki IDs are next assigned, and doesn't say where it is.
+ * Cards with the same ID aren't noticed at all.
+ * This reads each file once, without making any Cards,
+ * and reports everything it finds by line and column:
+ * <ul>
+ *   <li>flashcard records with more or fewer fields than the field names,
+ *   <li>quotes that are never closed, or that are followed by more text,
+ *   <li>quotes and line breaks in fields that aren't quoted,
+ *   <li>IDs that aren't whole numbers, in flashcard Notes and wiki cards,
+ *   <li>IDs used by more than one card,
+ *   <li>wikis with no new-cards-here element, or more than one.
+ * </ul>
+ *
+ * The text is streamed, a window of a chunk per processor at a time,
+ * so only the window is held however big the file, gzipped or not.
+ * Flashcard records can run over several lines inside quotes,
+ * so whether the scan is inside quotes is carried from window to window,
+ * as is the start of the record the window ends in.
+ * The window's whole records are checked in parallel.
+ * A wiki window is cut at its last '<', so that no tag is split,
+ * and its chunks are scanned for tags in parallel.
+ * The IDs are checked for repeats in a bit set at the end.
+ *
+ * A quote in the wrong place throws the record ends after it out,
+ * so problems after the first quoting problem may follow from it.
+ */
+@Command(name = "IntegrityCheck",
+          description = "Checks flashcard files and wikis for damage",
+          mixinStandardHelpOptions = true,
+          version = "pre-release")
+public class IntegrityCheck implements Callable<Integer> {
+
+  /**
+   * Adds logging ability.
+   */
+  static final Logger LOGGER = Logger.getLogger(IntegrityCheck.class.getName());
+
+  /**
+   * The number of characters scanned as one chunk.
+   */
+  static final int CHUNK_SIZE = 1 << 20;
+
+  /**
+   * The number of chunks read into the window at a time.
+   */
+  private static final int CHUNKS_PER_WINDOW =
+    Runtime.getRuntime().availableProcessors();
+
+  /**
+   * The most characters of a bad ID quoted in a report.
+   */
+  private static final int MAX_QUOTED = 20;
+
+  /**
+   * Matches a wiki card or new-cards-here start tag.
+   */
+  private static final Pattern TAG = Pattern.compile(
+    "<(card|new-cards-here)(?=[\\s/>])([^<>]*)>", Pattern.CASE_INSENSITIVE);
+
+  /**
+   * Matches the id attribute among a tag's attributes.
+   */
+  private static final Pattern ID_ATTRIBUTE = Pattern.compile(
+    "(?:^|\\s)id\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s\"'>]+))",
+    Pattern.CASE_INSENSITIVE);
+
+  /**
+   * Matches a well formed ID.
+   */
+  private static final Pattern ID = Pattern.compile("-?[0-9]+");
+
+  /**
+   * The flashcard files, wiki files and wiki directories to check.
+   */
+  @Parameters(
+    arity = "1..*",
+    description = "Flashcard files, wiki files and wiki directories to check")
+  private List<File> files;
+
+  /**
+   * The most problems reported for each file.
+   */
+  @Option(names = "--max-reported",
+    description = "problems reported for each file (default 100)")
+  private int maxReported = 100;
+
+  /**
+   * Where to write the report.
+   */
+  private final PrintStream out;
+
+  /**
+   * Something wrong in a file, and where it is.
+   */
+  static final class Problem {
+    /**
+     * The file the problem is in.
+     */
+    final String file;
+
+    /**
+     * The line the problem is on, counting from 1.
+     */
+    final int line;
+
+    /**
+     * The column the problem starts at, counting from 1.
+     */
+    final int column;
+
+    /**
+     * What is wrong.
+     */
+    final String message;
+
+    /**
+     * Constructs a problem.
+     *
+     * @param file    the file
+     * @param line    the line, counting from 1
+     * @param column  the column, counting from 1
+     * @param message what is wrong
+     */
+    Problem(final String file, final int line, final int column,
+            final String message) {
+      this.file = file;
+      this.line = line;
+      this.column = column;
+      this.message = message;
+    }
+
+    /**
+     * Returns the problem as file:line:column: message.
+     */
+    @Override
+    public String toString() {
+      return file + ":" + line + ":" + column + ": " + message;
+    }
+  }
+
+  /**
+   * What checking a file found.
+   */
+  static final class Result {
+    /**
+     * The problems, in the order they are in the file.
+     */
+    final List<Problem> problems = new ArrayList<>();
+
+    /**
+     * The number of cards.
+     */
+    int cards;
+
+    /**
+     * The file's IDs, for checking for repeats.
+     */
+    private final List<IdUses> uses = new ArrayList<>();
+
+    /**
+     * The number of new-cards-here elements.
+     */
+    private int anchors;
+
+    /**
+     * Adds another result to this one.
+     *
+     * @param other the other result
+     */
+    private void add(final Result other) {
+      problems.addAll(other.problems);
+      cards += other.cards;
+      uses.addAll(other.uses);
+    }
+
+    /**
+     * Puts the problems in file, line and column order.
+     */
+    private void sort() {
+      problems.sort(Comparator.<Problem, String>comparing(p -> p.file)
+                              .thenComparingInt(p -> p.line)
+                              .thenComparingInt(p -> p.column));
+    }
+  }
+
+  /**
+   * The cards of a file and the IDs they have.
+   */
+  private static final class IdUses {
+    /**
+     * The file.
+     */
+    final String file;
+
+    /**
+     * Each card's ID, if it has one.
+     */
+    final int[] ids;
+
+    /**
+     * Whether each card has an ID.
+     */
+    final boolean[] hasId;
+
+    /**
+     * The line each card starts on.
+     */
+    final int[] lines;
+
+    /**
+     * The column each card starts at.
+     */
+    final int[] columns;
+
+    /**
+     * Constructs room for the specified number of cards.
+     *
+     * @param file  the file
+     * @param cards the number of cards
+     */
+    IdUses(final String file, final int cards) {
+      this.file = file;
+      ids = new int[cards];
+      hasId = new boolean[cards];
+      lines = new int[cards];
+      columns = new int[cards];
+    }
+  }
+
+  /**
+   * A set of IDs, a bit per possible ID.
+   * IDs are given out upward from Integer.MIN_VALUE,
+   * so the negative ones are kept counting up from there.
+   */
+  private static final class IdSet {
+    /**
+     * The negative IDs, less Integer.MIN_VALUE.
+     */
+    private final BitSet negative = new BitSet();
+
+    /**
+     * The IDs from zero up.
+     */
+    private final BitSet nonNegative = new BitSet();
+
+    /**
+     * Adds an ID.
+     *
+     * @param id the ID
+     * @return false if the ID was already in the set
+     */
+    boolean add(final int id) {
+      final BitSet bits = id < 0 ? negative : nonNegative;
+      final int bit = id < 0 ? id - Integer.MIN_VALUE : id;
+      if (bits.get(bit)) {
+        return false;
+      }
+      bits.set(bit);
+      return true;
+    }
+  }
+
+  /**
+   * A wiki start tag found by scanning a chunk.
+   */
+  private static final class Tag {
+    /**
+     * Where the tag starts.
+     */
+    final int offset;
+
+    /**
+     * The line feeds before the tag, in its chunk.
+     */
+    final int localLine;
+
+    /**
+     * Where the tag's line starts, or -1 if before the chunk.
+     */
+    final int lineStart;
+
+    /**
+     * True for a new-cards-here tag, false for a card.
+     */
+    final boolean anchor;
+
+    /**
+     * The card's id attribute, or null if it hasn't one.
+     */
+    final String id;
+
+    /**
+     * Constructs a tag.
+     *
+     * @param offset    where the tag starts
+     * @param localLine the line feeds before it in its chunk
+     * @param lineStart where its line starts, or -1 if before the chunk
+     * @param anchor    true for new-cards-here
+     * @param id        the id attribute, or null
+     */
+    Tag(final int offset, final int localLine, final int lineStart,
+        final boolean anchor, final String id) {
+      this.offset = offset;
+      this.localLine = localLine;
+      this.lineStart = lineStart;
+      this.anchor = anchor;
+      this.id = id;
+    }
+  }
+
+  /**
+   * What scanning a chunk of a wiki found.
+   */
+  private static final class WikiChunk {
+    /**
+     * The number of line feeds in the chunk.
+     */
+    int newlines;
+
+    /**
+     * Where the chunk's last line starts, or -1 if before the chunk.
+     */
+    int lastLineStart = -1;
+
+    /**
+     * The card and new-cards-here tags, in order.
+     */
+    final List<Tag> tags = new ArrayList<>();
+  }
+
+  /**
+   * Constructs an IntegrityCheck that reports to the specified stream.
+   *
+   * @param out the stream to report to
+   */
+  IntegrityCheck(final PrintStream out) {
+    this.out = out;
+  }
+
+  /**
+   * Checks the files.
+   *
+   * @param args the command line arguments
+   */
+  public static void main(final String[] args) {
+    int exitCode = new CommandLine(new IntegrityCheck(System.out)).execute(args);
+    System.exit(exitCode);
+  }
+
+  /**
+   * Checks the files and prints the problems.
+   *
+   * @return 0 if no problems were found, 1 if some were
+   */
+  @Override
+  public Integer call() throws Exception {
+    int total = 0;
+    for (File file : files) {
+      final long start = System.nanoTime();
+      final Result result = check(file);
+      final List<Problem> problems = result.problems;
+      problems.stream().limit(maxReported).forEach(out::println);
+      if (problems.size() > maxReported) {
+        out.println("... and " + (problems.size() - maxReported) + " more");
+      }
+      out.println(file + ": " + result.cards + " cards, "
+                  + problems.size()
+                  + (problems.size() == 1 ? " problem" : " problems"));
+      LOGGER.log(Level.INFO, "Checked {0} in {1} ms",
+                 new Object[]{file, (System.nanoTime() - start) / 1_000_000});
+      total += problems.size();
+    }
+    return total == 0 ? 0 : 1;
+  }
+
+  /**
+   * Checks a flashcard file, wiki file or wiki directory.
+   *
+   * @param file the file or directory
+   * @return what was found
+   * @throws IOException if the file can't be read
+   */
+  static Result check(final File file) throws IOException {
+    if (file.isDirectory()) {
+      return checkDirectory(file);
+    }
+    final String name = FileIO.plainName(file);
+    if (!name.endsWith(".html") && !name.endsWith(".txt")) {
+      throw new IllegalArgumentException(
+        file.getName() + " file name must end in .html or .txt"
+        + " (optionally followed by .gz), or be a directory");
+    }
+    try (Reader in = FileIO.openReader(file)) {
+      return name.endsWith(".html")
+        ? checkWiki(file.getPath(), in, CHUNK_SIZE)
+        : checkDeck(file.getPath(), in, CHUNK_SIZE);
+    }
+  }
+
+  /**
+   * Reads more of a file into the window.
+   *
+   * @param in     the file
+   * @param window the window, which grows by up to count characters
+   * @param count  the number of characters to read
+   * @param buf    a buffer to read through
+   * @return true if the end of the file was reached
+   * @throws IOException if the file can't be read
+   */
+  private static boolean fill(final Reader in, final StringBuilder window,
+                              final int count, final char[] buf)
+  throws IOException {
+    int left = count;
+    while (left > 0) {
+      final int n = in.read(buf, 0, Math.min(left, buf.length));
+      if (n == -1) {
+        return true;
+      }
+      window.append(buf, 0, n);
+      left -= n;
+    }
+    return false;
+  }
+
+  /**
+   * Returns the number of characters read into the window at a time.
+   *
+   * @param chunkSize the number of characters scanned as one chunk
+   * @return the number of characters
+   */
+  private static int windowSize(final int chunkSize) {
+    return (int) Math.min((long) chunkSize * CHUNKS_PER_WINDOW,
+                          Integer.MAX_VALUE / 4);
+  }
+
+  /**
+   * Returns true if the reader is at the specified text,
+   * leaving the reader where it was.
+   *
+   * @param in the reader
+   * @param s  the text, no longer than in can push back
+   * @return true if the next characters are s
+   * @throws IOException if the reader can't be read
+   */
+  private static boolean lookingAt(final PushbackReader in, final String s)
+  throws IOException {
+    final char[] read = new char[s.length()];
+    int n = 0;
+    while (n < read.length) {
+      final int ch = in.read();
+      if (ch == -1) {
+        break;
+      }
+      read[n++] = (char) ch;
+    }
+    in.unread(read, 0, n);
+    return n == read.length && s.equals(new String(read));
+  }
+
+  /**
+   * Checks the text of a flashcard file.
+   *
+   * @param name      the file name to report problems against
+   * @param in        the text
+   * @param chunkSize the number of characters scanned as one chunk
+   * @return what was found
+   * @throws IOException if the text can't be read
+   */
+  static Result checkDeck(final String name, final Reader in,
+                          final int chunkSize) throws IOException {
+    final var result = new Result();
+    final var r = new PushbackReader(in, 2);
+
+    // The header and field names are short, so are read a character at a time.
+    int line = 1;
+    while (lookingAt(r, "*\t")) {
+      int ch = r.read();
+      while (ch != -1 && ch != '\r') {
+        ch = r.read();
+      }
+      if (ch == -1 || r.read() != '\n') {
+        result.problems.add(
+          new Problem(name, line, 1, "header line doesn't end in \\r\\n"));
+        return result;
+      }
+      line++;
+    }
+    final var names = new StringBuilder();
+    int ch = r.read();
+    if (ch == -1) {
+      result.problems.add(new Problem(name, line, 1, "no field names"));
+      return result;
+    }
+    for (; ch != -1 && ch != '\n'; ch = r.read()) {
+      names.append((char) ch);
+    }
+    final String[] fields = names.toString()
+                                 .replaceFirst("\r$", "")
+                                 .split("\t");
+    final int notesIndex = Arrays.asList(fields).indexOf("Notes");
+
+    // Find the record starts a window at a time,
+    // carrying the record the window ends in over to the next.
+    final int windowSize = windowSize(chunkSize);
+    final var window = new StringBuilder();
+    final char[] buf = new char[Math.min(windowSize, FileIO.BUFFER_SIZE)];
+    boolean insideQuotes = false;
+    char previous = '\n';
+    int lineAt = line + 1;
+    int recordLine = lineAt;
+    int scanned = 0;
+    boolean atEnd = false;
+    while (!atEnd) {
+      atEnd = fill(r, window, windowSize, buf);
+      final String text = window.toString();
+      final var startsBuilder = IntStream.builder().add(0);
+      final var linesBuilder = IntStream.builder().add(recordLine);
+      for (int p = scanned; p < text.length(); p++) {
+        final char c = text.charAt(p);
+        if (c == '"') {
+          insideQuotes = !insideQuotes;
+        } else if (c == '\n') {
+          lineAt++;
+          if (previous == '\r' && !insideQuotes) {
+            startsBuilder.add(p + 1);
+            linesBuilder.add(lineAt);
+          }
+        }
+        previous = c;
+      }
+      final int[] starts = startsBuilder.build().toArray();
+      final int[] lines = linesBuilder.build().toArray();
+      final int last = starts.length - 1;
+      // The last record is whole only at the end, and only if not empty.
+      final int records =
+        atEnd && starts[last] < text.length() ? starts.length : last;
+      checkRecords(name, text, starts, lines, records, fields.length,
+                   notesIndex, result);
+      window.delete(0, starts[last]);
+      scanned = window.length();
+      recordLine = lines[last];
+    }
+    findDuplicates(result);
+    result.sort();
+    return result;
+  }
+
+  /**
+   * Checks the whole records in a window of a flashcard file, in parallel.
+   * Each record ends two characters, its \r\n, before the next starts;
+   * the last ends at the end of the text.
+   *
+   * @param name       the file name
+   * @param text       the window's text
+   * @param starts     where the records start
+   * @param lines      the line each record starts on
+   * @param records    the number of records to check
+   * @param fieldCount the number of fields a record should have
+   * @param notesIndex the position of the Notes field, or -1
+   * @param result     where to add what was found
+   */
+  private static void checkRecords(final String name, final String text,
+                                   final int[] starts, final int[] lines,
+                                   final int records, final int fieldCount,
+                                   final int notesIndex, final Result result) {
+    final var uses = new IdUses(name, records);
+    result.problems.addAll(
+      IntStream.range(0, records)
+               .parallel()
+               .mapToObj(i -> checkRecord(
+                 name, text, starts[i],
+                 i + 1 < starts.length ? starts[i + 1] - 2 : text.length(),
+                 lines[i], fieldCount, notesIndex, uses, i))
+               .flatMap(List::stream)
+               .collect(Collectors.toList()));
+    System.arraycopy(lines, 0, uses.lines, 0, records);
+    Arrays.fill(uses.columns, 1);
+    result.cards += records;
+    result.uses.add(uses);
+  }
+
+  /**
+   * Checks a flashcard record's fields and ID,
+   * noting the ID, if any, in uses.
+   *
+   * @param name       the file name
+   * @param text       the text
+   * @param start      where the record starts
+   * @param end        where the record ends, before its \r\n
+   * @param line       the line the record starts on
+   * @param fieldCount the number of fields a record should have
+   * @param notesIndex the position of the Notes field, or -1
+   * @param uses       the file's IDs
+   * @param index      the record's position
+   * @return the problems found
+   */
+  private static List<Problem> checkRecord(
+          final String name,
+          final String text,
+          final int start,
+          final int end,
+          final int line,
+          final int fieldCount,
+          final int notesIndex,
+          final IdUses uses,
+          final int index) {
+    List<Problem> problems = Collections.emptyList();
+    int field = 0;
+    int notesStart = -1;
+    int notesEnd = -1;
+    int p = start;
+    while (true) {
+      final int contentStart;
+      final int contentEnd;
+      String problem = null;
+      int at = p;
+      if (p < end && text.charAt(p) == '"') {
+        int q = p + 1;
+        while (q < end && (text.charAt(q) != '"'
+                           || q + 1 < end && text.charAt(q + 1) == '"')) {
+          q += text.charAt(q) == '"' ? 2 : 1;
+        }
+        contentStart = p + 1;
+        contentEnd = Math.min(q, end);
+        if (q >= end) {
+          problem = "quote is never closed";
+          p = end;
+        } else {
+          p = q + 1;
+          if (p < end && text.charAt(p) != '\t') {
+            problem = "text after closing quote";
+            at = p;
+            p = nextTab(text, p, end);
+          }
+        }
+      } else {
+        contentStart = p;
+        p = nextTab(text, p, end);
+        contentEnd = p;
+        for (int q = contentStart; q < contentEnd && problem == null; q++) {
+          if (text.charAt(q) == '"') {
+            problem = "quote in a field that isn't quoted";
+            at = q;
+          } else if (text.charAt(q) == '\r') {
+            problem = "line break in a field that isn't quoted";
+            at = q;
+          }
+        }
+      }
+      if (problem != null) {
+        problems = add(problems,
+                       at(name, text, start, line, at, problem));
+      }
+      if (field == notesIndex) {
+        notesStart = contentStart;
+        notesEnd = contentEnd;
+      }
+      field++;
+      if (p >= end) {
+        break;
+      }
+      p++; // the tab
+    }
+    if (field != fieldCount) {
+      problems = add(problems, new Problem(
+        name, line, 1,
+        field + (field == 1 ? " field" : " fields")
+        + " where there should be " + fieldCount));
+    }
+    if (notesStart != -1) {
+      final int marker = indexOf(text, FDRecord.ID_MARKER, notesStart, notesEnd);
+      if (marker != -1) {
+        final String id = text.substring(notesStart, marker);
+        final Integer value = parseId(id);
+        if (value == null) {
+          problems = add(problems, at(name, text, start, line, notesStart,
+                                      "malformed ID '" + quote(id) + "'"));
+        } else {
+          uses.ids[index] = value;
+          uses.hasId[index] = true;
+        }
+      }
+    }
+    return problems;
+  }
+
+  /**
+   * Returns where the next tab is, or the end if there isn't one.
+   *
+   * @param text the text
+   * @param from where to start looking
+   * @param end  where to stop looking
+   * @return where the tab is, or end
+   */
+  private static int nextTab(final String text, final int from, final int end) {
+    int p = from;
+    while (p < end && text.charAt(p) != '\t') {
+      p++;
+    }
+    return p;
+  }
+
+  /**
+   * Returns where a string first is in part of the text, or -1.
+   *
+   * @param text the text
+   * @param s    the string to look for
+   * @param from where to start looking
+   * @param end  where the part of the text ends
+   * @return where the string is, or -1
+   */
+  private static int indexOf(final String text, final String s,
+                             final int from, final int end) {
+    for (int p = from; p + s.length() <= end; p++) {
+      if (text.regionMatches(p, s, 0, s.length())) {
+        return p;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns an ID as a number, or null if it isn't a well formed one.
+   *
+   * @param id the ID
+   * @return the number, or null
+   */
+  private static Integer parseId(final String id) {
+    if (!ID.matcher(id).matches()) {
+      return null;
+    }
+    try {
+      return Integer.valueOf(id);
+    } catch (NumberFormatException e) {
+      return null; // too big
+    }
+  }
+
+  /**
+   * Returns the start of some text, for quoting in a report.
+   *
+   * @param s the text
+   * @return the start of it
+   */
+  private static String quote(final String s) {
+    return s.length() <= MAX_QUOTED ? s : s.substring(0, MAX_QUOTED) + "...";
+  }
+
+  /**
+   * Adds a problem to a list that may be the shared empty list.
+   *
+   * @param problems the list
+   * @param problem  the problem
+   * @return the list with the problem added
+   */
+  private static List<Problem> add(final List<Problem> problems,
+                                   final Problem problem) {
+    final List<Problem> list =
+      problems.isEmpty() ? new ArrayList<>() : problems;
+    list.add(problem);
+    return list;
+  }
+
+  /**
+   * Makes a problem at a place in the text,
+   * counting lines from a place whose line is known.
+   *
+   * @param name      the file name
+   * @param text      the text
+   * @param lineStart where a known line starts
+   * @param line      that line
+   * @param offset    where the problem is, after lineStart
+   * @param message   what is wrong
+   * @return the problem
+   */
+  private static Problem at(final String name, final String text,
+                            final int lineStart, final int line,
+                            final int offset, final String message) {
+    int start = lineStart;
+    int n = line;
+    for (int p = lineStart; p < offset; p++) {
+      if (text.charAt(p) == '\n') {
+        n++;
+        start = p + 1;
+      }
+    }
+    return new Problem(name, n, offset - start + 1, message);
+  }
+
+  /**
+   * Checks the text of a wiki file.
+   *
+   * @param name      the file name to report problems against
+   * @param in        the text
+   * @param chunkSize the number of characters scanned as one chunk
+   * @return what was found
+   * @throws IOException if the text can't be read
+   */
+  static Result checkWiki(final String name, final Reader in,
+                          final int chunkSize) throws IOException {
+    final Result result = scanWiki(name, in, chunkSize);
+    checkAnchors(name, result);
+    findDuplicates(result);
+    result.sort();
+    return result;
+  }
+
+  /**
+   * Checks the pages of a wiki directory, which share their IDs.
+   * Only the new cards page needs a new-cards-here element.
+   *
+   * @param directory the directory
+   * @return what was found
+   * @throws IOException if a page can't be read
+   */
+  private static Result checkDirectory(final File directory)
+  throws IOException {
+    final var result = new Result();
+    final File[] pages = directory.listFiles(
+      f -> f.isFile() && f.getName().endsWith(".html"));
+    if (pages == null) {
+      throw new IOException("Can't list " + directory);
+    }
+    Arrays.sort(pages);
+    for (File page : pages) {
+      final Result pageResult;
+      try (Reader in = FileIO.openReader(page)) {
+        pageResult = scanWiki(page.getPath(), in, CHUNK_SIZE);
+      }
+      if (page.getName().equals(WikiDirectory.NEW_CARDS_PAGE)) {
+        checkAnchors(page.getPath(), pageResult);
+      }
+      result.add(pageResult);
+    }
+    findDuplicates(result);
+    result.sort();
+    return result;
+  }
+
+  /**
+   * Finds the card and new-cards-here tags of a wiki, a window at a time,
+   * and checks the cards' IDs are well formed.
+   *
+   * @param name      the file name
+   * @param in        the text
+   * @param chunkSize the number of characters scanned as one chunk
+   * @return what was found, not yet checked for repeated IDs
+   * @throws IOException if the text can't be read
+   */
+  private static Result scanWiki(final String name, final Reader in,
+                                 final int chunkSize) throws IOException {
+    final var result = new Result();
+    final int windowSize = windowSize(chunkSize);
+    final var window = new StringBuilder();
+    final char[] buf = new char[Math.min(windowSize, FileIO.BUFFER_SIZE)];
+    long base = 0; // where the window starts in the file
+    long lineStart = 0; // where the current line starts in the file
+    int newlinesBefore = 0;
+    boolean atEnd = false;
+    while (!atEnd) {
+      atEnd = fill(in, window, windowSize, buf);
+      final String text = window.toString();
+      // The window is scanned up to its last '<', so that no tag is split,
+      // and its chunks end before a '<' too.
+      final int end = atEnd ? text.length() : Math.max(0, text.lastIndexOf('<'));
+      final var boundaries = IntStream.builder().add(0);
+      for (int p = 0; p < end;) {
+        final int next = p + chunkSize >= end
+          ? -1
+          : text.indexOf('<', p + chunkSize);
+        p = next == -1 || next > end ? end : next;
+        boundaries.add(p);
+      }
+      final int[] bounds = boundaries.build().toArray();
+      final List<WikiChunk> chunks =
+        IntStream.range(0, bounds.length - 1)
+                 .parallel()
+                 .mapToObj(c -> scanWikiChunk(text, bounds[c], bounds[c + 1]))
+                 .collect(Collectors.toList());
+
+      final List<Tag> cards = new ArrayList<>();
+      final List<int[]> places = new ArrayList<>();
+      for (WikiChunk chunk : chunks) {
+        for (Tag tag : chunk.tags) {
+          final int line = 1 + newlinesBefore + tag.localLine;
+          final long from =
+            tag.lineStart == -1 ? lineStart : base + tag.lineStart;
+          final int column = (int) (base + tag.offset - from + 1);
+          if (tag.anchor) {
+            result.anchors++;
+          } else {
+            cards.add(tag);
+            places.add(new int[] {line, column});
+          }
+        }
+        newlinesBefore += chunk.newlines;
+        if (chunk.lastLineStart != -1) {
+          lineStart = base + chunk.lastLineStart;
+        }
+      }
+      addCards(name, cards, places, result);
+      window.delete(0, end);
+      base += end;
+    }
+    return result;
+  }
+
+  /**
+   * Notes the IDs of the cards found in a window of a wiki,
+   * and reports the malformed ones.
+   *
+   * @param name   the file name
+   * @param cards  the card tags, in order
+   * @param places the line and column of each
+   * @param result where to add what was found
+   */
+  private static void addCards(final String name, final List<Tag> cards,
+                               final List<int[]> places, final Result result) {
+    final var uses = new IdUses(name, cards.size());
+    for (int i = 0; i < cards.size(); i++) {
+      final String id = cards.get(i).id;
+      uses.lines[i] = places.get(i)[0];
+      uses.columns[i] = places.get(i)[1];
+      if (id != null) {
+        final Integer value = parseId(id);
+        if (value == null) {
+          result.problems.add(new Problem(
+            name, uses.lines[i], uses.columns[i],
+            id.isEmpty() ? "empty card ID"
+                         : "malformed card ID '" + quote(id) + "'"));
+        } else {
+          uses.ids[i] = value;
+          uses.hasId[i] = true;
+        }
+      }
+    }
+    result.cards += cards.size();
+    result.uses.add(uses);
+  }
+
+  /**
+   * Finds the card and new-cards-here tags in a chunk of a wiki.
+   *
+   * @param text  the text
+   * @param start where the chunk starts
+   * @param end   where the chunk ends
+   * @return what was found
+   */
+  private static WikiChunk scanWikiChunk(final String text, final int start,
+                                         final int end) {
+    final var chunk = new WikiChunk();
+    final Matcher m = TAG.matcher(text).region(start, end);
+    int p = start;
+    while (m.find()) {
+      for (; p < m.start(); p++) {
+        if (text.charAt(p) == '\n') {
+          chunk.newlines++;
+          chunk.lastLineStart = p + 1;
+        }
+      }
+      final boolean anchor = m.group(1).equalsIgnoreCase("new-cards-here");
+      String id = null;
+      if (!anchor) {
+        final Matcher a = ID_ATTRIBUTE.matcher(m.group(2));
+        if (a.find()) {
+          id = a.group(1) != null ? a.group(1)
+             : a.group(2) != null ? a.group(2)
+             : a.group(3);
+        }
+      }
+      chunk.tags.add(new Tag(m.start(), chunk.newlines, chunk.lastLineStart,
+                             anchor, id));
+    }
+    for (; p < end; p++) {
+      if (text.charAt(p) == '\n') {
+        chunk.newlines++;
+        chunk.lastLineStart = p + 1;
+      }
+    }
+    return chunk;
+  }
+
+  /**
+   * Checks a wiki has one new-cards-here element to add new cards under.
+   *
+   * @param name   the file name
+   * @param result what scanning the wiki found
+   */
+  private static void checkAnchors(final String name, final Result result) {
+    if (result.anchors == 0) {
+      result.problems.add(new Problem(
+        name, 1, 1, "no new-cards-here element, so no cards can be added"));
+    } else if (result.anchors > 1) {
+      result.problems.add(new Problem(
+        name, 1, 1, result.anchors + " new-cards-here elements;"
+                    + " new cards go under the first"));
+    }
+  }
+
+  /**
+   * Reports each card whose ID an earlier card already has.
+   * The IDs go through a bit set once;
+   * only if there are repeats are they gone through again,
+   * to say where each repeated ID was first used.
+   *
+   * @param result the cards to check, and where to report
+   */
+  private static void findDuplicates(final Result result) {
+    final var seen = new IdSet();
+    final Set<Integer> repeated = new HashSet<>();
+    for (IdUses uses : result.uses) {
+      for (int i = 0; i < uses.ids.length; i++) {
+        if (uses.hasId[i] && !seen.add(uses.ids[i])) {
+          repeated.add(uses.ids[i]);
+        }
+      }
+    }
+    if (repeated.isEmpty()) {
+      return;
+    }
+    final Map<Integer, String> first = new HashMap<>();
+    for (IdUses uses : result.uses) {
+      for (int i = 0; i < uses.ids.length; i++) {
+        if (uses.hasId[i] && repeated.contains(uses.ids[i])) {
+          final String here = uses.file + ":" + uses.lines[i];
+          final String earlier = first.putIfAbsent(uses.ids[i], here);
+          if (earlier != null) {
+            result.problems.add(new Problem(
+              uses.file, uses.lines[i], uses.columns[i],
+              "duplicate ID " + uses.ids[i] + ", first used at " + earlier));
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,293 @@
+package fdshow;
+
+/*
+ * MediaCache's fdshow direct dependencies
+ *   Card
+ */
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import javax.imageio.ImageIO;
+
+/**
+ * Resolves the files named in cards' Picture and Sound fields,
+ * and keeps downscaled thumbnails of the pictures.
+ *
+ * Thumbnails are cached on disk under a name made from a hash
+ * of the picture's contents,
+ * so a picture that hasn't changed is never scaled again,
+ * however it is renamed or moved.
+ */
+class MediaCache {
+  /**
+   * Adds logging ability.
+   */
+  static final Logger LOGGER = Logger.getLogger(MediaCache.class.getName());
+
+  /**
+   * The largest width or height of a thumbnail, in pixels.
+   */
+  static final int THUMBNAIL_SIZE = 160;
+
+  /**
+   * The directory that the media file names are relative to.
+   */
+  private final Path mediaDir;
+
+  /**
+   * The directory the thumbnails are cached in.
+   */
+  private final Path cacheDir;
+
+  /**
+   * The directory that links are made relative to,
+   * normally the wiki file's directory.
+   */
+  private final Path linkBase;
+
+  /**
+   * The thumbnail for each picture field value already looked at.
+   * Empty where there is no thumbnail.
+   */
+  private final ConcurrentHashMap<String, Optional<Path>> thumbnails =
+    new ConcurrentHashMap<>();
+
+  /**
+   * The number of thumbnails made, rather than found in the cache.
+   */
+  private final AtomicInteger made = new AtomicInteger();
+
+  /**
+   * Constructs a MediaCache.
+   *
+   * @param mediaDir the directory that media file names are relative to
+   * @param cacheDir the directory to cache thumbnails in
+   * @param linkBase the directory that links are made relative to
+   */
+  MediaCache(final File mediaDir, final File cacheDir, final File linkBase) {
+    this.mediaDir = mediaDir.toPath().toAbsolutePath();
+    this.cacheDir = cacheDir.toPath().toAbsolutePath();
+    this.linkBase = linkBase.toPath().toAbsolutePath();
+  }
+
+  /**
+   * Returns true for the fields that name pictures.
+   *
+   * @param fname the field name
+   * @return true for a picture field
+   */
+  static boolean isPicture(final String fname) {
+    return fname.startsWith("Picture ");
+  }
+
+  /**
+   * Returns true for the fields that name sounds.
+   *
+   * @param fname the field name
+   * @return true for a sound field
+   */
+  static boolean isSound(final String fname) {
+    return fname.startsWith("Sound ");
+  }
+
+  /**
+   * Makes, in parallel, the thumbnails for all the pictures
+   * the cards name, so they are ready when the cards are written.
+   *
+   * @param cards the cards
+   */
+  void prepare(final Collection<Card> cards) {
+    final List<String> pictureFields =
+      Arrays.stream(Card.FIELD_NAMES_OF_INTEREST)
+            .filter(MediaCache::isPicture)
+            .collect(Collectors.toList());
+    final Set<String> pictures =
+      cards.stream()
+           .flatMap(c -> pictureFields.stream().map(c::getField))
+           .filter(v -> v != null && !v.isBlank())
+           .collect(Collectors.toSet());
+    final long start = System.nanoTime();
+    final int before = made.get();
+    pictures.parallelStream().forEach(this::thumbnailFor);
+    LOGGER.log(
+      Level.INFO,
+      "{0} pictures, {1} thumbnails made, in {2} ms",
+      new Object[]{pictures.size(), made.get() - before,
+                   (System.nanoTime() - start) / 1_000_000});
+  }
+
+  /**
+   * Returns the media file a field value names,
+   * or null if it doesn't name a readable file.
+   *
+   * @param value the field value
+   * @return the file, or null
+   */
+  Path resolve(final String value) {
+    if (value == null || value.isBlank()) {
+      return null;
+    }
+    try {
+      final Path file = mediaDir.resolve(value.strip());
+      return Files.isRegularFile(file) && Files.isReadable(file) ? file : null;
+    } catch (java.nio.file.InvalidPathException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the thumbnail of the picture a field value names,
+   * making it if it is not already cached,
+   * or null if there is no such picture or it can't be read.
+   *
+   * @param value the picture field value
+   * @return the thumbnail file, or null
+   */
+  Path thumbnailFor(final String value) {
+    Optional<Path> known = thumbnails.get(value);
+    if (known == null) {
+      // made outside the map, so slow pictures don't hold up other lookups
+      known = Optional.ofNullable(makeThumbnail(resolve(value)));
+      thumbnails.putIfAbsent(value, known);
+    }
+    return known.orElse(null);
+  }
+
+  /**
+   * Returns a link to a file, relative to the link base directory,
+   * with '/' separators.
+   *
+   * @param file the file
+   * @return the link
+   */
+  String link(final Path file) {
+    final var relative = linkBase.relativize(file.toAbsolutePath());
+    final var parts = new StringBuilder();
+    for (Path part : relative) {
+      if (parts.length() != 0) {
+        parts.append('/');
+      }
+      parts.append(part);
+    }
+    return parts.toString();
+  }
+
+  /**
+   * Returns the cached thumbnail of the specified picture,
+   * making it first if need be.
+   *
+   * @param picture the picture, possibly null
+   * @return the thumbnail, or null if the picture can't be read
+   */
+  private Path makeThumbnail(final Path picture) {
+    if (picture == null) {
+      return null;
+    }
+    try {
+      final Path thumbnail = cacheDir.resolve(contentHash(picture) + ".png");
+      if (Files.exists(thumbnail)) {
+        return thumbnail;
+      }
+      final BufferedImage image = ImageIO.read(picture.toFile());
+      if (image == null) {
+        return null; // not a format ImageIO knows
+      }
+      Files.createDirectories(cacheDir);
+      final Path partial = Files.createTempFile(cacheDir, "thumb", ".tmp");
+      ImageIO.write(scale(image), "png", partial.toFile());
+      Files.move(partial, thumbnail, StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+      made.incrementAndGet();
+      return thumbnail;
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Can't make a thumbnail of " + picture, e);
+      return null;
+    }
+  }
+
+  /**
+   * Returns the image scaled to fit within THUMBNAIL_SIZE,
+   * or the image itself if it already fits.
+   *
+   * @param image the image
+   * @return the scaled image
+   */
+  private static BufferedImage scale(final BufferedImage image) {
+    final int width = image.getWidth();
+    final int height = image.getHeight();
+    final double factor =
+      Math.min(1.0, (double) THUMBNAIL_SIZE / Math.max(width, height));
+    if (factor == 1.0) {
+      return image;
+    }
+    final int w = Math.max(1, (int) Math.round(width * factor));
+    final int h = Math.max(1, (int) Math.round(height * factor));
+    final var scaled = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+    final Graphics2D g = scaled.createGraphics();
+    try {
+      g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                         RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      g.drawImage(image, 0, 0, w, h, null);
+    } finally {
+      g.dispose();
+    }
+    return scaled;
+  }
+
+  /**
+   * Returns a hex SHA-256 hash of the file's contents
+   * and the thumbnail size.
+   *
+   * @param file the file
+   * @return the hash
+   * @throws IOException if the file can't be read
+   */
+  private static String contentHash(final Path file) throws IOException {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new Error("SHA-256 is always available", e);
+    }
+    digest.update(Integer.toString(THUMBNAIL_SIZE).getBytes());
+    final byte[] buffer = new byte[1 << 16];
+    try (InputStream in = Files.newInputStream(file)) {
+      for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+        digest.update(buffer, 0, n);
+      }
+    }
+    final var hex = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+  /**
+   * Returns the number of thumbnails made, rather than found in the cache.
+   *
+   * @return the number made
+   */
+  int getMadeCount() {
+    return made.get();
+  }
+}
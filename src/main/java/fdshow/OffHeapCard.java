@@ -0,0 +1,92 @@
+package fdshow;
+
+/*
+ * OffHeapCard's fdshow direct dependencies
+ *   FDCard
+ *   OffHeapText
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An FDCard whose field contents are kept in OffHeapText,
+ * and only turned back into Strings when asked for.
+ *
+ * On the heap it keeps just the names of its fields,
+ * Strings shared with the other cards of its deck,
+ * and a handle for each field's contents.
+ * Like Card, it is immutable.
+ */
+class OffHeapCard extends FDCard {
+  /**
+   * Where the field contents are kept.
+   */
+  private final OffHeapText text;
+
+  /**
+   * The names of the fields.
+   */
+  private final String[] names;
+
+  /**
+   * The handle of each field's contents, in the order of names.
+   */
+  private final long[] handles;
+
+  /**
+   * Constructs an OffHeapCard, copying the field contents into the text.
+   *
+   * @param dataByField the data to fill the card with
+   * @param id          the card ID number, possibly null
+   * @param fields      the field names in the order they will be written
+   * @param text        where to keep the field contents
+   */
+  OffHeapCard(
+          final Map<String, String> dataByField,
+          final Integer id,
+          final FieldNames fields,
+          final OffHeapText text) {
+    super(id, fields);
+    this.text = text;
+    names = new String[dataByField.size()];
+    handles = new long[names.length];
+    int i = 0;
+    for (Map.Entry<String, String> e : dataByField.entrySet()) {
+      names[i] = e.getKey();
+      handles[i] = text.put(e.getValue());
+      i++;
+    }
+  }
+
+  /**
+   * Returns a new Map from field name to field contents,
+   * decoding every field.
+   *
+   * @return the Map
+   */
+  @Override
+  Map<String, String> getData() {
+    final var data = new HashMap<String, String>(names.length * 2);
+    for (int i = 0; i < names.length; i++) {
+      data.put(names[i], text.get(handles[i]));
+    }
+    return data;
+  }
+
+  /**
+   * Returns the contents of a single field, decoding just that field.
+   *
+   * @param name the field name
+   * @return the field contents, or null
+   */
+  @Override
+  String getField(final String name) {
+    for (int i = 0; i < names.length; i++) {
+      if (names[i].equals(name)) {
+        return text.get(handles[i]);
+      }
+    }
+    return null;
+  }
+}
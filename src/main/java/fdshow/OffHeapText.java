@@ -0,0 +1,122 @@
+package fdshow;
+
+//
+// OffHeapText's fdshow direct dependencies
+//   None.
+//
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds strings as UTF-8 bytes in direct buffers, outside the Java heap,
+ * so that a huge deck's text is not something the garbage collector
+ * has to trace or copy.
+ *
+ * Strings are only ever added, never removed,
+ * and are all let go together by release,
+ * typically when the deck they belong to is loaded afresh.
+ * The buffers' memory goes back to the system
+ * once the collector notices they are unreachable.
+ *
+ * Each string is known by a handle, a long,
+ * which is all its holder need keep on the heap.
+ */
+class OffHeapText {
+  /**
+   * The handle of null.
+   */
+  static final long NULL = -1L;
+
+  /**
+   * The size of each buffer, in bytes.
+   * A string bigger than this gets a buffer of its own.
+   */
+  static final int CHUNK_SIZE = 1 << 20;
+
+  /**
+   * The buffers, in the order they were filled.
+   */
+  private final List<ByteBuffer> chunks = new ArrayList<>();
+
+  /**
+   * The number of bytes of text held.
+   */
+  private long bytes;
+
+  /**
+   * True once released.
+   */
+  private boolean released;
+
+  /**
+   * Adds a string.
+   *
+   * @param s the string, which may be null
+   * @return the string's handle
+   */
+  synchronized long put(final String s) {
+    checkNotReleased();
+    if (s == null) {
+      return NULL;
+    }
+    final byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+    final int length = utf8.length + Integer.BYTES;
+    ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+    if (chunk == null || chunk.remaining() < length) {
+      chunk = ByteBuffer.allocateDirect(Math.max(CHUNK_SIZE, length));
+      chunks.add(chunk);
+    }
+    final long handle = ((long) (chunks.size() - 1) << 32) | chunk.position();
+    chunk.putInt(utf8.length);
+    chunk.put(utf8);
+    bytes += utf8.length;
+    return handle;
+  }
+
+  /**
+   * Returns the string with the specified handle.
+   *
+   * @param handle the handle put returned
+   * @return the string, which may be null
+   */
+  synchronized String get(final long handle) {
+    checkNotReleased();
+    if (handle == NULL) {
+      return null;
+    }
+    final ByteBuffer chunk = chunks.get((int) (handle >>> 32));
+    final var utf8 = new byte[chunk.getInt((int) handle)];
+    chunk.duplicate().position((int) handle + Integer.BYTES).get(utf8);
+    return new String(utf8, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Lets go of all the strings.
+   * Getting a string afterwards throws IllegalStateException.
+   */
+  synchronized void release() {
+    chunks.clear();
+    released = true;
+  }
+
+  /**
+   * Returns the number of bytes of text held, not counting overheads.
+   *
+   * @return the number of bytes
+   */
+  synchronized long size() {
+    return bytes;
+  }
+
+  /**
+   * Throws IllegalStateException if the strings have been let go.
+   */
+  private void checkNotReleased() {
+    if (released) {
+      throw new IllegalStateException("Off-heap text has been released");
+    }
+  }
+}
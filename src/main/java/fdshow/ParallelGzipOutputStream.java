@@ -0,0 +1,206 @@
+package fdshow;
+
+//
+// ParallelGzipOutputStream's fdshow direct dependencies
+//   None.
+//
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzips what is written to it, compressing blocks in parallel.
+ *
+ * Each block is compressed on its own, as a complete gzip member,
+ * and the members are written out in order.
+ * Concatenated members are a valid gzip file,
+ * which GZIPInputStream and gunzip read as one.
+ * Compression is a little worse than a single member,
+ * since each block starts without a dictionary,
+ * but with large blocks the difference is small.
+ *
+ * At most a few blocks per processor are held in memory at once.
+ */
+class ParallelGzipOutputStream extends OutputStream {
+  /**
+   * The default block size, in bytes.
+   */
+  static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+  /**
+   * Where the compressed members go.
+   */
+  private final OutputStream out;
+
+  /**
+   * The block being filled.
+   */
+  private byte[] block;
+
+  /**
+   * The number of bytes in the block being filled.
+   */
+  private int filled;
+
+  /**
+   * The blocks being compressed, in order.
+   */
+  private final ArrayDeque<CompletableFuture<byte[]>> pending =
+    new ArrayDeque<>();
+
+  /**
+   * The most blocks being compressed at once.
+   */
+  private final int maxPending =
+    2 * Runtime.getRuntime().availableProcessors();
+
+  /**
+   * True once closed.
+   */
+  private boolean closed;
+
+  /**
+   * Constructs a ParallelGzipOutputStream with the default block size.
+   *
+   * @param out where to write the gzipped data
+   */
+  ParallelGzipOutputStream(final OutputStream out) {
+    this(out, DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Constructs a ParallelGzipOutputStream.
+   *
+   * @param out       where to write the gzipped data
+   * @param blockSize the number of bytes compressed in each block
+   */
+  ParallelGzipOutputStream(final OutputStream out, final int blockSize) {
+    if (blockSize < 1) {
+      throw new IllegalArgumentException("Block size must be at least 1");
+    }
+    this.out = out;
+    block = new byte[blockSize];
+  }
+
+  // See OutputStream for javadoc
+  @Override
+  public void write(final int b) throws IOException {
+    if (filled == block.length) {
+      submitBlock();
+    }
+    block[filled++] = (byte) b;
+  }
+
+  // See OutputStream for javadoc
+  @Override
+  public void write(final byte[] b, final int off, final int len)
+  throws IOException {
+    int from = off;
+    int left = len;
+    while (left > 0) {
+      if (filled == block.length) {
+        submitBlock();
+      }
+      final int n = Math.min(left, block.length - filled);
+      System.arraycopy(b, from, block, filled, n);
+      filled += n;
+      from += n;
+      left -= n;
+    }
+  }
+
+  /**
+   * Starts compressing the filled block,
+   * first writing out finished blocks if too many are pending.
+   *
+   * @throws IOException if writing fails
+   */
+  private void submitBlock() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    final byte[] data = Arrays.copyOf(block, filled);
+    filled = 0;
+    pending.add(CompletableFuture.supplyAsync(() -> compress(data)));
+    while (pending.size() >= maxPending) {
+      writeFirstPending();
+    }
+  }
+
+  /**
+   * Waits for the first pending block to be compressed, and writes it.
+   *
+   * @throws IOException if compressing or writing fails
+   */
+  private void writeFirstPending() throws IOException {
+    try {
+      out.write(pending.remove().get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while compressing", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Compressing failed", e.getCause());
+    }
+  }
+
+  /**
+   * Returns the data compressed as a gzip member.
+   *
+   * @param data the data
+   * @return the gzip member
+   */
+  private static byte[] compress(final byte[] data) {
+    final var member = new ByteArrayOutputStream(data.length / 4 + 64);
+    try (var gzip = new GZIPOutputStream(member, 1 << 16)) {
+      gzip.write(data);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // can't happen, writing to memory
+    }
+    return member.toByteArray();
+  }
+
+  /**
+   * Writes out the blocks compressed so far.
+   * The block being filled is not compressed until it is full or closed.
+   *
+   * @throws IOException if writing fails
+   */
+  @Override
+  public void flush() throws IOException {
+    while (!pending.isEmpty() && pending.peek().isDone()) {
+      writeFirstPending();
+    }
+    out.flush();
+  }
+
+  /**
+   * Compresses and writes everything, and closes the underlying stream.
+   *
+   * @throws IOException if compressing or writing fails
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    try {
+      if (filled > 0 || pending.isEmpty()) {
+        submitBlock(); // an empty file still needs one member
+      }
+      while (!pending.isEmpty()) {
+        writeFirstPending();
+      }
+    } finally {
+      closed = true;
+      block = null;
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,251 @@
+package fdshow;
+
+//
+// PipelinedFileOutputStream's fdshow direct dependencies
+//   None.
+//
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes to a file on a thread of its own,
+ * so that the thread making the data doesn't wait for the disk.
+ *
+ * What is written fills a buffer; a full buffer is handed to the
+ * writer thread, and writing goes on into the next free buffer
+ * while the full one goes to the file.
+ * There is a fixed pool of buffers, reused as they are written out,
+ * so memory stays bounded however big the file,
+ * and the thread making the data waits only when the disk falls
+ * a whole pool behind.
+ *
+ * A failure to write is thrown from the next write, flush or close.
+ */
+class PipelinedFileOutputStream extends OutputStream {
+  /**
+   * The default buffer size, in bytes.
+   */
+  static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+  /**
+   * The default number of buffers.
+   */
+  static final int DEFAULT_BUFFERS = 4;
+
+  /**
+   * Handed to the writer thread to stop it.
+   */
+  private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+  /**
+   * The file being written.
+   */
+  private final FileChannel channel;
+
+  /**
+   * The buffers ready to be filled.
+   */
+  private final BlockingQueue<ByteBuffer> free;
+
+  /**
+   * The buffers waiting to be written, in order.
+   */
+  private final BlockingQueue<ByteBuffer> full;
+
+  /**
+   * Writes the full buffers to the file.
+   */
+  private final Thread writer;
+
+  /**
+   * The buffer being filled.
+   */
+  private ByteBuffer buffer;
+
+  /**
+   * The first failure of the writer thread, or null.
+   */
+  private volatile IOException failure;
+
+  /**
+   * True once closed.
+   */
+  private boolean closed;
+
+  /**
+   * Opens a file for writing with the default buffers.
+   *
+   * @param file the file, which is replaced if it exists
+   * @throws IOException if the file can't be opened
+   */
+  PipelinedFileOutputStream(final File file) throws IOException {
+    this(file, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFERS);
+  }
+
+  /**
+   * Opens a file for writing.
+   *
+   * @param file       the file, which is replaced if it exists
+   * @param bufferSize the size of each buffer, in bytes
+   * @param buffers    the number of buffers, at least two
+   * @throws IOException if the file can't be opened
+   */
+  PipelinedFileOutputStream(final File file, final int bufferSize,
+                            final int buffers) throws IOException {
+    if (bufferSize < 1) {
+      throw new IllegalArgumentException("Buffer size must be at least 1");
+    }
+    if (buffers < 2) {
+      throw new IllegalArgumentException("There must be at least 2 buffers");
+    }
+    channel = FileChannel.open(file.toPath(),
+                               StandardOpenOption.CREATE,
+                               StandardOpenOption.TRUNCATE_EXISTING,
+                               StandardOpenOption.WRITE);
+    free = new ArrayBlockingQueue<>(buffers);
+    full = new ArrayBlockingQueue<>(buffers + 1);
+    for (int i = 1; i < buffers; i++) {
+      free.add(ByteBuffer.allocateDirect(bufferSize));
+    }
+    buffer = ByteBuffer.allocateDirect(bufferSize);
+    writer = new Thread(this::drain, "writer of " + file.getName());
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  // See OutputStream for javadoc
+  @Override
+  public void write(final int b) throws IOException {
+    if (!buffer.hasRemaining()) {
+      handOff();
+    }
+    buffer.put((byte) b);
+  }
+
+  // See OutputStream for javadoc
+  @Override
+  public void write(final byte[] b, final int off, final int len)
+  throws IOException {
+    int from = off;
+    int left = len;
+    while (left > 0) {
+      if (!buffer.hasRemaining()) {
+        handOff();
+      }
+      final int n = Math.min(left, buffer.remaining());
+      buffer.put(b, from, n);
+      from += n;
+      left -= n;
+    }
+  }
+
+  /**
+   * Hands the buffer being filled to the writer thread,
+   * and takes a free one, waiting for one to be written out if need be.
+   *
+   * @throws IOException if closed, or if writing has failed
+   */
+  private void handOff() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    throwIfFailed();
+    try {
+      buffer.flip();
+      full.put(buffer);
+      buffer = free.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while writing", e);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Writes the full buffers to the file, in order, until told to stop.
+   * Runs on the writer thread.
+   * After a failure, of any kind, buffers are still taken and freed,
+   * unwritten, so that the thread filling them never waits forever.
+   */
+  private void drain() {
+    try {
+      for (ByteBuffer b = full.take(); b != END; b = full.take()) {
+        if (failure == null) {
+          try {
+            while (b.hasRemaining()) {
+              channel.write(b);
+            }
+          } catch (IOException e) {
+            failure = e;
+          } catch (Throwable e) {
+            failure = new IOException("Writer thread failed", e);
+          }
+        }
+        free.add(b);
+      }
+    } catch (InterruptedException e) {
+      failure = new IOException("Interrupted while writing", e);
+    }
+  }
+
+  /**
+   * Throws the writer thread's failure, if there has been one.
+   *
+   * @throws IOException the failure
+   */
+  private void throwIfFailed() throws IOException {
+    final IOException e = failure;
+    if (e != null) {
+      throw new IOException("Writing failed", e);
+    }
+  }
+
+  /**
+   * Hands what has been written so far to the writer thread.
+   * It reaches the file by the time the stream is closed.
+   *
+   * @throws IOException if writing has failed
+   */
+  @Override
+  public void flush() throws IOException {
+    if (buffer.position() > 0) {
+      handOff();
+    }
+    throwIfFailed();
+  }
+
+  /**
+   * Writes everything out, waits for the writer thread to finish,
+   * and closes the file.
+   *
+   * @throws IOException if writing fails
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      buffer.flip();
+      full.put(buffer);
+      full.put(END);
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      writer.interrupt();
+      throw new IOException("Interrupted while writing", e);
+    } finally {
+      buffer = END; // full, so that writing again finds the stream closed
+      channel.close();
+    }
+    throwIfFailed();
+  }
+}
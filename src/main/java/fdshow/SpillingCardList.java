@@ -0,0 +1,427 @@
+package fdshow;
+
+//
+// SpillingCardList's fdshow direct dependencies
+//   Card
+//
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/**
+ * A list of cards that keeps the cards themselves in a temporary file,
+ * so that a deck far bigger than the heap can be loaded and synced.
+ *
+ * Only each card's ID and where it is in the file are kept on the heap,
+ * about a dozen bytes a card,
+ * along with the most recently used cards, up to a fixed number.
+ * The file is memory mapped in large chunks,
+ * so reading a card back is a copy out of the page cache.
+ *
+ * The file is only ever appended to:
+ * replacing a card writes it afresh and abandons the old copy.
+ * The space is given back when the list is closed,
+ * or, failing that, when the program exits.
+ *
+ * How cards are turned into bytes and back is up to a Codec,
+ * since only the owner of the list knows what kinds of card it holds.
+ *
+ * Methods are synchronized, since even reading moves cards in and out
+ * of the recently used cards.
+ */
+class SpillingCardList extends AbstractList<Card>
+    implements RandomAccess, Closeable {
+
+  /**
+   * Turns cards into bytes and back.
+   */
+  interface Codec {
+    /**
+     * Writes a card.
+     *
+     * @param c   the card
+     * @param out where to write it
+     * @throws IOException if out does
+     */
+    void write(Card c, DataOutputStream out) throws IOException;
+
+    /**
+     * Reads a card written by write.
+     *
+     * @param in where to read it from
+     * @return the card
+     * @throws IOException if in does
+     */
+    Card read(DataInputStream in) throws IOException;
+  }
+
+  /**
+   * The default most cards kept on the heap.
+   */
+  static final int DEFAULT_HOT_CARDS = 4096;
+
+  /**
+   * The size of each mapped chunk of the file, in bytes.
+   * A card bigger than this gets a chunk of its own.
+   */
+  static final int CHUNK_SIZE = 1 << 26;
+
+  /**
+   * Turns cards into bytes and back.
+   */
+  private final Codec codec;
+
+  /**
+   * The file the cards are kept in.
+   */
+  private final FileChannel channel;
+
+  /**
+   * The mapped chunks of the file, in order.
+   */
+  private final List<MappedByteBuffer> chunks = new ArrayList<>();
+
+  /**
+   * The length of the file mapped so far.
+   */
+  private long mapped;
+
+  /**
+   * Where each card is: its chunk number in the top half,
+   * and its offset in the chunk in the bottom half.
+   */
+  private long[] locations = new long[16];
+
+  /**
+   * The ID of each card, where it has one.
+   */
+  private int[] ids = new int[16];
+
+  /**
+   * The positions of the cards that have no ID.
+   */
+  private final BitSet unIded = new BitSet();
+
+  /**
+   * The number of cards.
+   */
+  private int size;
+
+  /**
+   * The most recently used cards, by location.
+   */
+  private final LinkedHashMap<Long, Card> hot;
+
+  /**
+   * Where cards are encoded before being copied into the file.
+   */
+  private final ByteArrayOutputStream scratch = new ByteArrayOutputStream();
+
+  /**
+   * Constructs an empty list, keeping its cards in a new temporary file.
+   *
+   * @param directory where to put the file, or null for the default
+   * @param hotCards  the most cards to keep on the heap
+   * @param codec     turns cards into bytes and back
+   * @throws IOException if the file can't be created
+   */
+  SpillingCardList(
+          final File directory,
+          final int hotCards,
+          final Codec codec)
+  throws IOException {
+    if (hotCards < 0) {
+      throw new IllegalArgumentException("Can't keep fewer than no cards");
+    }
+    this.codec = codec;
+    final Path file = directory == null
+      ? Files.createTempFile("fdshow-", ".cards")
+      : Files.createTempFile(directory.toPath(), "fdshow-", ".cards");
+    file.toFile().deleteOnExit();
+    channel = FileChannel.open(file,
+                               StandardOpenOption.READ,
+                               StandardOpenOption.WRITE,
+                               StandardOpenOption.DELETE_ON_CLOSE);
+    hot = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Long, Card> e) {
+        return size() > hotCards;
+      }
+    };
+  }
+
+  // See List for javadoc
+  @Override
+  public synchronized int size() {
+    return size;
+  }
+
+  // See List for javadoc
+  @Override
+  public synchronized Card get(final int index) {
+    return load(checked(index), true);
+  }
+
+  /**
+   * Returns the ID of the card at the specified position,
+   * without reading the card.
+   *
+   * @param index the position
+   * @return the card's ID, or null if it has none
+   */
+  synchronized Integer idAt(final int index) {
+    checked(index);
+    return unIded.get(index) ? null : ids[index];
+  }
+
+  // See List for javadoc
+  @Override
+  public synchronized Card set(final int index, final Card c) {
+    final Card old = load(checked(index), false);
+    hot.remove(locations[index]);
+    place(index, c);
+    return old;
+  }
+
+  // See List for javadoc
+  @Override
+  public synchronized void add(final int index, final Card c) {
+    if (index < 0 || index > size) {
+      throw new IndexOutOfBoundsException(index);
+    }
+    if (size == locations.length) {
+      locations = Arrays.copyOf(locations, size * 2);
+      ids = Arrays.copyOf(ids, size * 2);
+    }
+    System.arraycopy(locations, index, locations, index + 1, size - index);
+    System.arraycopy(ids, index, ids, index + 1, size - index);
+    shiftUnIded(index, 1);
+    size++;
+    modCount++;
+    place(index, c);
+  }
+
+  // See List for javadoc
+  @Override
+  public synchronized Card remove(final int index) {
+    final Card old = load(checked(index), false);
+    hot.remove(locations[index]);
+    System.arraycopy(locations, index + 1, locations, index, size - index - 1);
+    System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+    shiftUnIded(index + 1, -1);
+    size--;
+    modCount++;
+    return old;
+  }
+
+  /**
+   * Removes the cards matching the filter in a single pass,
+   * rather than one remove at a time as AbstractList would.
+   *
+   * @param filter says which cards to remove
+   * @return true if any were removed
+   */
+  @Override
+  public synchronized boolean removeIf(final Predicate<? super Card> filter) {
+    int kept = 0;
+    for (int i = 0; i < size; i++) {
+      if (filter.test(load(i, false))) {
+        hot.remove(locations[i]);
+        continue;
+      }
+      locations[kept] = locations[i];
+      ids[kept] = ids[i];
+      unIded.set(kept, unIded.get(i));
+      kept++;
+    }
+    if (kept == size) {
+      return false;
+    }
+    unIded.clear(kept, size);
+    size = kept;
+    modCount++;
+    return true;
+  }
+
+  // See List for javadoc
+  @Override
+  public synchronized void clear() {
+    size = 0;
+    unIded.clear();
+    hot.clear();
+    modCount++;
+  }
+
+  /**
+   * Gives back the file's space.
+   * The list must not be used afterwards.
+   *
+   * @throws IOException if the file can't be closed
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    chunks.clear();
+    hot.clear();
+    size = 0;
+    channel.close();
+  }
+
+  /**
+   * Returns the number of bytes of file the cards take up,
+   * including abandoned copies and the unused end of the last chunk.
+   *
+   * @return the bytes of file mapped
+   */
+  synchronized long fileSize() {
+    return mapped;
+  }
+
+  /**
+   * Checks that a position is in the list.
+   *
+   * @param index the position
+   * @return the position
+   */
+  private int checked(final int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException(index);
+    }
+    return index;
+  }
+
+  /**
+   * Moves the no-ID marks at and after a position along.
+   *
+   * @param from  the first position to move
+   * @param delta how far to move them
+   */
+  private void shiftUnIded(final int from, final int delta) {
+    final BitSet moved = unIded.get(from, Math.max(from, size));
+    unIded.clear(Math.min(from, from + delta), size + Math.max(delta, 0));
+    for (int i = moved.nextSetBit(0); i >= 0; i = moved.nextSetBit(i + 1)) {
+      unIded.set(from + delta + i);
+    }
+  }
+
+  /**
+   * Writes a card to the file and puts it at a position.
+   *
+   * @param index the position
+   * @param c     the card
+   */
+  private void place(final int index, final Card c) {
+    final long location = append(c);
+    locations[index] = location;
+    final Integer id = c.getId();
+    ids[index] = id == null ? 0 : id;
+    unIded.set(index, id == null);
+    hot.put(location, c);
+  }
+
+  /**
+   * Appends a card to the file.
+   *
+   * @param c the card
+   * @return where the card was written
+   */
+  private long append(final Card c) {
+    scratch.reset();
+    try {
+      codec.write(c, new DataOutputStream(scratch));
+      final int length = scratch.size() + Integer.BYTES;
+      MappedByteBuffer chunk =
+        chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+      if (chunk == null || chunk.remaining() < length) {
+        final int chunkSize = Math.max(CHUNK_SIZE, length);
+        chunk = channel.map(FileChannel.MapMode.READ_WRITE, mapped, chunkSize);
+        mapped += chunkSize;
+        chunks.add(chunk);
+      }
+      final long location =
+        ((long) (chunks.size() - 1) << 32) | chunk.position();
+      chunk.putInt(scratch.size());
+      chunk.put(scratch.toByteArray());
+      return location;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Returns the card at a position, reading it from the file if need be.
+   *
+   * @param index    the position
+   * @param remember true to keep the card among the recently used
+   * @return the card
+   */
+  private Card load(final int index, final boolean remember) {
+    final long location = locations[index];
+    final Card known = hot.get(location);
+    if (known != null) {
+      return known;
+    }
+    final MappedByteBuffer chunk = chunks.get((int) (location >>> 32));
+    final var bytes = new byte[chunk.getInt((int) location)];
+    chunk.duplicate().position((int) location + Integer.BYTES).get(bytes);
+    final Card c;
+    try {
+      c = codec.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    if (remember) {
+      hot.put(location, c);
+    }
+    return c;
+  }
+
+  /**
+   * Writes a string of any length.
+   * DataOutputStream.writeUTF is limited to 64K bytes,
+   * which a card's notes can exceed.
+   *
+   * @param s   the string
+   * @param out where to write it
+   * @throws IOException if out does
+   */
+  static void writeString(final String s, final DataOutputStream out)
+  throws IOException {
+    final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Reads a string written by writeString.
+   *
+   * @param in where to read it from
+   * @return the string
+   * @throws IOException if in does
+   */
+  static String readString(final DataInputStream in) throws IOException {
+    final var bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,211 @@
+package fdshow;
+
+//
+// StringDeduplicator's fdshow direct dependencies
+//   None.
+//
+
+/**
+ * A bounded table of strings, used while loading cards,
+ * so that equal field values share one String instance.
+ *
+ * Decks repeat themselves a great deal:
+ * empty Picture and Sound fields, a handful of categories,
+ * boilerplate in Extra Info.
+ * Unlike String.intern, the table belongs to one load
+ * and is dropped with it.
+ *
+ * Lookups can be made straight from a character buffer,
+ * so a repeated value costs no allocation at all.
+ */
+class StringDeduplicator {
+  /**
+   * The default most strings the table will hold.
+   */
+  static final int DEFAULT_MAX_ENTRIES = 1 << 16;
+
+  /**
+   * The default longest string the table will hold.
+   */
+  static final int DEFAULT_MAX_LENGTH = 1024;
+
+  /**
+   * The open addressing hash table.
+   */
+  private final String[] table;
+
+  /**
+   * The most strings the table will hold.
+   */
+  private final int maxEntries;
+
+  /**
+   * The longest string the table will hold.
+   */
+  private final int maxLength;
+
+  /**
+   * The number of strings in the table.
+   */
+  private int entries;
+
+  /**
+   * The number of lookups answered from the table.
+   */
+  private long hits;
+
+  /**
+   * The approximate number of heap bytes the hits saved.
+   */
+  private long bytesSaved;
+
+  /**
+   * Constructs a table with the default bounds.
+   */
+  StringDeduplicator() {
+    this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_LENGTH);
+  }
+
+  /**
+   * Constructs a table with the specified bounds.
+   *
+   * @param maxEntries the most strings the table will hold
+   * @param maxLength  the longest string the table will hold
+   */
+  StringDeduplicator(final int maxEntries, final int maxLength) {
+    this.maxEntries = maxEntries;
+    this.maxLength = maxLength;
+    // keep the table at most half full
+    table = new String[Integer.highestOneBit(Math.max(maxEntries, 1)) << 2];
+  }
+
+  /**
+   * Returns a String equal to the specified characters,
+   * sharing an earlier instance where there is one.
+   *
+   * @param chars the characters
+   * @param start the index of the first character
+   * @param end   the index after the last character
+   * @return the String
+   */
+  String dedup(final CharSequence chars, final int start, final int end) {
+    final int length = end - start;
+    if (length > maxLength) {
+      return chars.subSequence(start, end).toString();
+    }
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + chars.charAt(i);
+    }
+    final int mask = table.length - 1;
+    int slot = spread(hash) & mask;
+    for (String s = table[slot]; s != null; s = table[slot]) {
+      if (s.hashCode() == hash && sameChars(s, chars, start, length)) {
+        hits++;
+        bytesSaved += sizeOf(s);
+        return s;
+      }
+      slot = (slot + 1) & mask;
+    }
+    final String s = chars.subSequence(start, end).toString();
+    if (entries < maxEntries) {
+      table[slot] = s;
+      entries++;
+    }
+    return s;
+  }
+
+  /**
+   * Returns a String equal to the specified String,
+   * sharing an earlier instance where there is one.
+   *
+   * @param s the String, possibly null
+   * @return the shared String, or null if s is null
+   */
+  String dedup(final String s) {
+    return s == null ? null : dedup(s, 0, s.length());
+  }
+
+  /**
+   * Spreads the hash bits so that the low bits used as a slot vary.
+   *
+   * @param hash the hash
+   * @return the spread hash
+   */
+  private static int spread(final int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  /**
+   * Returns true if the String and the characters are the same.
+   *
+   * @param s      the String
+   * @param chars  the characters
+   * @param start  the index of the first character
+   * @param length the number of characters
+   * @return true if they are the same
+   */
+  private static boolean sameChars(
+          final String s,
+          final CharSequence chars,
+          final int start,
+          final int length) {
+    if (s.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (s.charAt(i) != chars.charAt(start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the approximate heap size of a String and its character array,
+   * assuming compact strings and compressed object pointers.
+   *
+   * @param s the String
+   * @return the approximate size in bytes
+   */
+  private static long sizeOf(final String s) {
+    int bytesPerChar = 1;
+    for (int i = 0; i < s.length(); i++) {
+      if (s.charAt(i) > 0xFF) {
+        bytesPerChar = 2;
+        break;
+      }
+    }
+    final long array = (16 + (long) s.length() * bytesPerChar + 7) & ~7L;
+    return 24 + array;
+  }
+
+  /**
+   * Returns the number of lookups answered from the table.
+   *
+   * @return the number of hits
+   */
+  long getHits() {
+    return hits;
+  }
+
+  /**
+   * Returns the approximate number of heap bytes the hits saved.
+   *
+   * @return the bytes saved
+   */
+  long getBytesSaved() {
+    return bytesSaved;
+  }
+
+  /**
+   * Returns a one line report of the strings shared and bytes saved.
+   *
+   * @return the report
+   */
+  String report() {
+    return String.format(
+      "%d repeated strings shared (%d distinct), about %d bytes saved",
+      hits, entries, bytesSaved);
+  }
+}
@@ -3,9 +3,12 @@ package fdshow;
 //
 // fdshow classes that this class knows about:
 //    CardsHolder
+//    SyncSubscriber
+//    FlightEvents
 //
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.logging.Level;
@@ -47,17 +50,22 @@ class Sync {
    * @return the number of matches updated
    */
    static int update(final CardsHolder from, final CardsHolder to) {
+    final var event = new FlightEvents.SyncPhase();
+    event.begin();
     // get list to update
     final List<Integer> theUpdates =
             from.getIds()
                 .stream()
                 .filter(Objects::nonNull) // omit "new" cards
                 .filter(id -> to.contains(id)) // omit "deleted" cards
+                .filter(id -> from.contains(id)) // omit unloaded cards
                 .collect(Collectors.toList());
     // update the items on the list
+    to.prefetch(theUpdates);
     theUpdates.forEach(id -> to.updateCard(from.getCard(id)));
     // and report
     LOGGER.log(Level.INFO, "{0} cards updated", theUpdates.size());
+    commit(event, "update", theUpdates.size());
 
     // return the number of items updated
     return theUpdates.size();
@@ -75,10 +83,13 @@ class Sync {
     static void deleteExtraCards(
             final CardsHolder base,
             final CardsHolder update) {
+        final var event = new FlightEvents.SyncPhase();
+        event.begin();
         final ArrayList<Integer> wip = update.getIds();
         wip.removeAll(base.getIds());
         update.deleteCards(wip);
         LOGGER.log(Level.INFO, "{0} cards deleted", wip.size());
+        commit(event, "deleteExtraCards", wip.size());
     }
   /**
    * Copies unmatched cards, that have IDs, from 'from' to 'to'.
@@ -89,21 +100,27 @@ class Sync {
   static int copyUnmatchedIdedCards(
             final CardsHolder from,
             final CardsHolder to) {
+        final var event = new FlightEvents.SyncPhase();
+        event.begin();
         final List<Integer> toMove =
             from.getIds()
                 .stream()
                 .filter(Objects::nonNull)
                 .filter(id -> !to.contains(id))
                 .collect(Collectors.toList());
+        from.prefetch(toMove);
         toMove.forEach(id -> to.addCard(from.getCard(id)));
         final int count = toMove.size();
         LOGGER.info("Moved "
                 + count
                 + " unmatched but IDed cards from source to destination");
+        commit(event, "copyUnmatchedIdedCards", count);
         return count;
   }
 
   static void markAndAddNewCards(final CardsHolder from, final CardsHolder to) {
+    final var event = new FlightEvents.SyncPhase();
+    event.begin();
     //
     // Get marked cards to copy
     //
@@ -120,5 +137,108 @@ class Sync {
     // Report on the results
     //
     LOGGER.log(Level.INFO, "{0} cards added", newFrom.size());
+    commit(event, "markAndAddNewCards", newFrom.size());
+  }
+
+  /**
+   * Commits a sync phase event, if it is wanted.
+   *
+   * @param event the event, begun before the phase
+   * @param phase the name of the phase
+   * @param cards the number of cards the phase changed
+   */
+  private static void commit(
+          final FlightEvents.SyncPhase event,
+          final String phase,
+          final int cards) {
+    if (event.shouldCommit()) {
+      event.phase = phase;
+      event.cards = cards;
+      event.commit();
+    }
+  }
+
+  /**
+   * Returns a subscriber that updates cards in "to"
+   * from the matching cards it is sent, as they arrive.
+   * The streaming form of update, reporting as it does.
+   * The phase starts when the subscriber is made.
+   *
+   * @param to CardsHolder to update matches to
+   * @return the subscriber, whose result is the number of cards updated
+   */
+  static SyncSubscriber updating(final CardsHolder to) {
+    final var event = new FlightEvents.SyncPhase();
+    event.begin();
+    return new SyncSubscriber(
+      c -> {
+        if (c.getId() == null || !to.contains(c.getId())) {
+          return 0;
+        }
+        to.updateCard(c);
+        return 1;
+      },
+      updated -> {
+        LOGGER.log(Level.INFO, "{0} cards updated", updated);
+        commit(event, "update", updated);
+        return 0;
+      });
+  }
+
+  /**
+   * Returns a subscriber that copies the IDed cards it is sent
+   * that have no match in "to", as they arrive.
+   * The streaming form of copyUnmatchedIdedCards, reporting as it does.
+   * The phase starts when the subscriber is made.
+   *
+   * @param to the CardsHolder to copy the cards to
+   * @return the subscriber, whose result is the number of cards copied
+   */
+  static SyncSubscriber copyingUnmatchedIdedCards(final CardsHolder to) {
+    final var event = new FlightEvents.SyncPhase();
+    event.begin();
+    return new SyncSubscriber(
+      c -> {
+        if (c.getId() == null || to.contains(c.getId())) {
+          return 0;
+        }
+        to.addCard(c);
+        return 1;
+      },
+      count -> {
+        LOGGER.info("Moved "
+                + count
+                + " unmatched but IDed cards from source to destination");
+        commit(event, "copyUnmatchedIdedCards", count);
+        return 0;
+      });
+  }
+
+  /**
+   * Returns a subscriber that, once it has been sent all the cards,
+   * deletes the cards in "update" that weren't among them.
+   * Only the IDs of the cards sent are kept meanwhile.
+   * The streaming form of deleteExtraCards.
+   *
+   * @param update the CardsHolder to delete cards out of
+   * @return the subscriber, whose result is the number of cards deleted
+   */
+  static SyncSubscriber deletingExtraCards(final CardsHolder update) {
+    final var seen = new HashSet<Integer>();
+    return new SyncSubscriber(
+      c -> {
+        seen.add(c.getId());
+        return 0;
+      },
+      none -> {
+        final var event = new FlightEvents.SyncPhase();
+        event.begin();
+        final ArrayList<Integer> wip = update.getIds();
+        wip.removeIf(id -> id == null || seen.contains(id));
+        update.deleteCards(wip);
+        LOGGER.log(Level.INFO, "{0} cards deleted", wip.size());
+        commit(event, "deleteExtraCards", wip.size());
+        return wip.size();
+      });
   }
 }
@@ -0,0 +1,239 @@
+package fdshow;
+
+//
+// SyncPlan's fdshow direct dependencies
+//   CardsHolder
+//
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * What a sync would do, worked out without doing it.
+ *
+ * The plan is made from the two holders' IDs,
+ * and, for the cards that would be updated,
+ * from comparing each card with what the update would make of it.
+ * Neither holder is changed,
+ * so planning costs a fraction of syncing with -r,
+ * which makes every change and then throws it away.
+ *
+ * The steps are planned in the order App runs them:
+ * ignore IDs, move, delete, update, add.
+ * Each step sees the IDs as the steps before it would leave them.
+ */
+class SyncPlan {
+  /**
+   * The most IDs listed for each step in the report.
+   */
+  static final int MAX_LISTED = 20;
+
+  /**
+   * The IDed "from" cards that would be copied to "to".
+   */
+  private final List<Integer> moves = new ArrayList<>();
+
+  /**
+   * The "to" cards that would be deleted.
+   */
+  private final List<Integer> deletes = new ArrayList<>();
+
+  /**
+   * The "to" cards that would be updated.
+   */
+  private final List<Integer> updates = new ArrayList<>();
+
+  /**
+   * The "to" cards whose contents the update would change.
+   */
+  private final List<Integer> changes = new ArrayList<>();
+
+  /**
+   * The number of unIDed "from" cards that would be IDed and added.
+   */
+  private int adds;
+
+  /**
+   * The first ID the added cards would get.
+   */
+  private int firstAddedId;
+
+  /**
+   * True if the "from" IDs would be cleared first.
+   */
+  private boolean zapsIds;
+
+  /**
+   * Constructs an empty plan.
+   */
+  private SyncPlan() { }
+
+  /**
+   * Plans a sync.
+   *
+   * @param from      the CardsHolder synced from
+   * @param to        the CardsHolder synced to
+   * @param ignoreIds true to plan clearing the "from" IDs first
+   * @param move      true to plan copying unmatched IDed cards
+   * @param delete    true to plan deleting unmatched "to" cards
+   * @param update    true to plan updating matching cards
+   * @param add       true to plan adding unIDed "from" cards
+   * @return the plan
+   */
+  static SyncPlan of(
+          final CardsHolder from,
+          final CardsHolder to,
+          final boolean ignoreIds,
+          final boolean move,
+          final boolean delete,
+          final boolean update,
+          final boolean add) {
+    final var plan = new SyncPlan();
+    final List<Integer> fromIds = from.getIds();
+    final Set<Integer> fromIded;
+    if (ignoreIds) {
+      plan.zapsIds = true;
+      fromIded = Collections.emptySet();
+    } else {
+      fromIded = fromIds.stream()
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toCollection(HashSet::new));
+    }
+    final Set<Integer> toIded = to.getIds()
+                                  .stream()
+                                  .filter(Objects::nonNull)
+                                  .collect(Collectors.toCollection(HashSet::new));
+
+    if (move) {
+      for (Integer id : fromIds) {
+        if (fromIded.contains(id) && !toIded.contains(id)) {
+          plan.moves.add(id);
+        }
+      }
+      toIded.addAll(plan.moves);
+    }
+    final Set<Integer> moved = new HashSet<>(plan.moves);
+    if (delete) {
+      for (Integer id : to.getIds()) {
+        if (id != null && !fromIded.contains(id)) {
+          plan.deletes.add(id);
+        }
+      }
+      toIded.removeAll(plan.deletes);
+    }
+    if (update) {
+      from.prefetch(fromIded);
+      to.prefetch(toIded);
+      for (Integer id : fromIds) {
+        if (fromIded.contains(id) && toIded.contains(id)
+            && from.contains(id)) {
+          plan.updates.add(id);
+          if (!moved.contains(id) && to.wouldChange(from.getCard(id))) {
+            plan.changes.add(id);
+          }
+        }
+      }
+    }
+    if (add) {
+      plan.adds = ignoreIds
+        ? fromIds.size()
+        : (int) fromIds.stream().filter(Objects::isNull).count();
+      plan.firstAddedId = ignoreIds ? Integer.MIN_VALUE : from.getNextId();
+    }
+    return plan;
+  }
+
+  /**
+   * Returns the IDs of the cards that would be moved.
+   *
+   * @return the IDs, in "from" order
+   */
+  List<Integer> getMoves() {
+    return Collections.unmodifiableList(moves);
+  }
+
+  /**
+   * Returns the IDs of the cards that would be deleted.
+   *
+   * @return the IDs, in "to" order
+   */
+  List<Integer> getDeletes() {
+    return Collections.unmodifiableList(deletes);
+  }
+
+  /**
+   * Returns the IDs of the cards that would be updated.
+   *
+   * @return the IDs, in "from" order
+   */
+  List<Integer> getUpdates() {
+    return Collections.unmodifiableList(updates);
+  }
+
+  /**
+   * Returns the IDs of the updated cards whose contents would change.
+   *
+   * @return the IDs, in "from" order
+   */
+  List<Integer> getChanges() {
+    return Collections.unmodifiableList(changes);
+  }
+
+  /**
+   * Returns the number of cards that would be IDed and added.
+   *
+   * @return the number of cards
+   */
+  int getAdds() {
+    return adds;
+  }
+
+  /**
+   * Returns the plan as a report for people.
+   *
+   * @return the report, a line per step
+   */
+  String report() {
+    final var sb = new StringBuilder();
+    final String nl = System.lineSeparator();
+    if (zapsIds) {
+      sb.append("clear all 'from' IDs").append(nl);
+    }
+    sb.append("move:   ").append(count(moves)).append(nl);
+    sb.append("delete: ").append(count(deletes)).append(nl);
+    sb.append("update: ").append(updates.size()).append(" cards, of which ")
+      .append(count(changes)).append(" would change").append(nl);
+    sb.append("add:    ").append(adds).append(" cards");
+    if (adds != 0) {
+      sb.append(", as IDs ").append(firstAddedId)
+        .append(" to ").append(firstAddedId + adds - 1);
+    }
+    return sb.append(nl).toString();
+  }
+
+  /**
+   * Returns the number of IDs followed by the first few of them.
+   *
+   * @param ids the IDs
+   * @return the count and IDs
+   */
+  private static String count(final List<Integer> ids) {
+    final var sb = new StringBuilder().append(ids.size());
+    sb.append(ids.size() == 1 ? " card" : " cards");
+    if (ids.isEmpty()) {
+      return sb.toString();
+    }
+    sb.append(' ')
+      .append(ids.subList(0, Math.min(ids.size(), MAX_LISTED)));
+    if (ids.size() > MAX_LISTED) {
+      sb.setLength(sb.length() - 1);
+      sb.append(", ...]");
+    }
+    return sb.toString();
+  }
+}
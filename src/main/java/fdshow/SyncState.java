@@ -0,0 +1,193 @@
+package fdshow;
+
+//
+// SyncState's fdshow direct dependencies
+//   None.
+//
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+/**
+ * Remembers what the flashcard and wiki files looked like
+ * after the last successful sync,
+ * so that a run that would find nothing to do can skip loading them.
+ *
+ * Each file is fingerprinted by its size, modification time
+ * and a CRC32C of its contents.
+ * The CRC is only worked out when the size hasn't changed,
+ * and is read through a memory mapping,
+ * so checking even a large file takes milliseconds.
+ *
+ * The options the sync was run with are remembered too,
+ * since a sync with different options may have work to do
+ * on files that haven't changed.
+ */
+class SyncState {
+
+  private SyncState() { }; // prevent instantiation
+
+  /**
+   * Adds logging ability.
+   */
+  static final Logger LOGGER = Logger.getLogger(SyncState.class.getName());
+
+  /**
+   * The most bytes mapped at once.
+   */
+  private static final long MAP_CHUNK = 1L << 30;
+
+  /**
+   * Returns the file that the state of a sync to the specified file is kept in.
+   *
+   * @param toFile the file synced to
+   * @return the state file
+   */
+  static File stateFileFor(final File toFile) {
+    return new File(toFile.getPath() + ".syncstate");
+  }
+
+  /**
+   * Returns true if the files and options are as recorded
+   * after the last successful sync.
+   *
+   * @param stateFile the state file
+   * @param fromFile  the file synced from
+   * @param toFile    the file synced to
+   * @param options   the sync options, as a string
+   * @return true if nothing has changed since the recorded sync
+   * @throws IOException if the files can't be read
+   */
+  static boolean unchanged(
+          final File stateFile,
+          final File fromFile,
+          final File toFile,
+          final String options)
+  throws IOException {
+    if (!stateFile.isFile()) {
+      return false;
+    }
+    final var state = new Properties();
+    try (InputStream in = new FileInputStream(stateFile)) {
+      state.load(in);
+    }
+    final long start = System.nanoTime();
+    final boolean same = options.equals(state.getProperty("options"))
+                      && matches(state, "from", fromFile)
+                      && matches(state, "to", toFile);
+    LOGGER.log(Level.FINE, "Checked for changes in {0} ms",
+               (System.nanoTime() - start) / 1_000_000);
+    return same;
+  }
+
+  /**
+   * Records the files and options after a successful sync.
+   * Nothing is recorded for a directory of wiki pages,
+   * so syncs involving one always run.
+   *
+   * @param stateFile the state file
+   * @param fromFile  the file synced from
+   * @param toFile    the file synced to
+   * @param options   the sync options, as a string
+   * @throws IOException if the files can't be read or the state written
+   */
+  static void record(
+          final File stateFile,
+          final File fromFile,
+          final File toFile,
+          final String options)
+  throws IOException {
+    if (!fromFile.isFile() || !toFile.isFile()) {
+      return;
+    }
+    final var state = new Properties();
+    state.setProperty("options", options);
+    put(state, "from", fromFile);
+    put(state, "to", toFile);
+    try (OutputStream out = new FileOutputStream(stateFile)) {
+      state.store(out, "fdshow sync state");
+    }
+  }
+
+  /**
+   * Adds a file's fingerprint to the state.
+   *
+   * @param state  the state
+   * @param prefix the prefix of the fingerprint's property names
+   * @param file   the file
+   * @throws IOException if the file can't be read
+   */
+  private static void put(
+          final Properties state,
+          final String prefix,
+          final File file)
+  throws IOException {
+    state.setProperty(prefix + ".path", file.getAbsolutePath());
+    state.setProperty(prefix + ".size", Long.toString(file.length()));
+    state.setProperty(prefix + ".modified", Long.toString(file.lastModified()));
+    state.setProperty(prefix + ".crc32c", Long.toHexString(crc(file)));
+  }
+
+  /**
+   * Returns true if a file matches its fingerprint in the state.
+   * The contents are only checked if the path and size match.
+   *
+   * @param state  the state
+   * @param prefix the prefix of the fingerprint's property names
+   * @param file   the file
+   * @return true if the file matches
+   * @throws IOException if the file can't be read
+   */
+  private static boolean matches(
+          final Properties state,
+          final String prefix,
+          final File file)
+  throws IOException {
+    if (!file.isFile()
+        || !file.getAbsolutePath().equals(state.getProperty(prefix + ".path"))
+        || !Long.toString(file.length())
+                .equals(state.getProperty(prefix + ".size"))) {
+      return false;
+    }
+    if (!Long.toString(file.lastModified())
+             .equals(state.getProperty(prefix + ".modified"))) {
+      LOGGER.log(Level.FINE, "{0} touched; checking contents", file);
+    }
+    return Long.toHexString(crc(file))
+               .equals(state.getProperty(prefix + ".crc32c"));
+  }
+
+  /**
+   * Returns the CRC32C of a file's contents, read through a memory mapping.
+   *
+   * @param file the file
+   * @return the CRC
+   * @throws IOException if the file can't be read
+   */
+  static long crc(final File file) throws IOException {
+    final var crc = new CRC32C();
+    try (FileChannel channel =
+           FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      final long size = channel.size();
+      for (long position = 0; position < size; position += MAP_CHUNK) {
+        final MappedByteBuffer mapped = channel.map(
+          FileChannel.MapMode.READ_ONLY,
+          position,
+          Math.min(MAP_CHUNK, size - position));
+        crc.update(mapped);
+      }
+    }
+    return crc.getValue();
+  }
+}
@@ -0,0 +1,127 @@
+package fdshow;
+
+/*
+ * SyncSubscriber's fdshow direct dependencies
+ *   Card
+ */
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToIntFunction;
+
+/**
+ * Subscribes to a stream of cards, acting on each as it arrives,
+ * and counts the cards acted on.
+ *
+ * Cards are requested a batch at a time,
+ * so a slow action holds the publisher back
+ * rather than letting cards pile up.
+ *
+ * Made by the streaming Sync operations.
+ */
+class SyncSubscriber implements Flow.Subscriber<Card> {
+  /**
+   * The number of cards requested at a time.
+   */
+  static final int BATCH = 64;
+
+  /**
+   * Acts on a card, returning the number of cards changed.
+   */
+  private final ToIntFunction<Card> action;
+
+  /**
+   * Acts once all the cards have arrived, given the number changed so far,
+   * returning the number of cards it changed.
+   */
+  private final IntUnaryOperator finish;
+
+  /**
+   * Completed with the number of cards changed,
+   * or exceptionally if the stream or an action fails.
+   */
+  private final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+  /**
+   * The subscription, once subscribed.
+   */
+  private Flow.Subscription subscription;
+
+  /**
+   * The cards requested but not yet arrived.
+   */
+  private int outstanding;
+
+  /**
+   * The number of cards changed so far.
+   */
+  private int count;
+
+  /**
+   * Constructs a SyncSubscriber.
+   *
+   * @param action acts on each card, returning the number of cards changed
+   * @param finish acts at the end, given the number of cards changed so far,
+   *               returning the number of cards it changed
+   */
+  SyncSubscriber(final ToIntFunction<Card> action,
+                 final IntUnaryOperator finish) {
+    this.action = action;
+    this.finish = finish;
+  }
+
+  /**
+   * Returns the result: the number of cards changed.
+   *
+   * @return the result
+   */
+  CompletableFuture<Integer> getResult() {
+    return result;
+  }
+
+  // See Flow.Subscriber for javadoc
+  @Override
+  public void onSubscribe(final Flow.Subscription s) {
+    if (subscription != null) {
+      s.cancel();
+      return;
+    }
+    subscription = s;
+    outstanding = BATCH;
+    s.request(BATCH);
+  }
+
+  // See Flow.Subscriber for javadoc
+  @Override
+  public void onNext(final Card c) {
+    try {
+      count += action.applyAsInt(c);
+    } catch (RuntimeException e) {
+      subscription.cancel();
+      result.completeExceptionally(e);
+      return;
+    }
+    if (--outstanding == 0) {
+      outstanding = BATCH;
+      subscription.request(BATCH);
+    }
+  }
+
+  // See Flow.Subscriber for javadoc
+  @Override
+  public void onError(final Throwable t) {
+    result.completeExceptionally(t);
+  }
+
+  // See Flow.Subscriber for javadoc
+  @Override
+  public void onComplete() {
+    try {
+      count += finish.applyAsInt(count);
+      result.complete(count);
+    } catch (RuntimeException e) {
+      result.completeExceptionally(e);
+    }
+  }
+}
@@ -0,0 +1,145 @@
+package fdshow;
+
+/*
+ * Transaction's fdshow direct dependencies
+ *   CardsHolder
+ */
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Makes a run of changes to some CardsHolders all or nothing.
+ *
+ * While a transaction is open, each holder records in it
+ * how to undo every card added, updated or deleted,
+ * and every ID assigned or cleared.
+ * Only what a change replaces is kept,
+ * such as the old card, or the removed wiki element and where it was,
+ * so a transaction costs nothing up front,
+ * where copying a holder first would copy every card.
+ *
+ * Commit keeps the changes; rollback undoes them, newest first.
+ * Closing a transaction that hasn't been committed rolls it back,
+ * so that a sync that fails part way leaves the holders as they were:
+ *
+ * <pre>
+ *   try (var tx = new Transaction(from, to)) {
+ *     Sync.update(from, to);
+ *     Sync.markAndAddNewCards(from, to);
+ *     tx.commit();
+ *   }
+ * </pre>
+ *
+ * Loading and saving are not recorded.
+ * A transaction is not thread safe; holders shared between threads
+ * should be changed and rolled back under ConcurrentHolder.atomically.
+ */
+class Transaction implements AutoCloseable {
+  /**
+   * Adds logging ability.
+   */
+  static final Logger LOGGER = Logger.getLogger(Transaction.class.getName());
+
+  /**
+   * The holders whose changes are recorded.
+   */
+  private final List<CardsHolder> holders;
+
+  /**
+   * How to undo each change, newest first.
+   */
+  private final Deque<Runnable> undoLog = new ArrayDeque<>();
+
+  /**
+   * True once committed or rolled back.
+   */
+  private boolean finished;
+
+  /**
+   * Starts a transaction, recording changes to the specified holders.
+   *
+   * @param holders the holders
+   * @throws IllegalStateException if a holder is already in a transaction
+   */
+  Transaction(final CardsHolder... holders) {
+    this.holders = List.of(holders);
+    for (int i = 0; i < holders.length; i++) {
+      try {
+        holders[i].setTransaction(this);
+      } catch (IllegalStateException e) {
+        for (int j = 0; j < i; j++) {
+          holders[j].setTransaction(null);
+        }
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Records how to undo a change.
+   * Called by the holders as they change.
+   *
+   * @param undo undoes the change
+   */
+  void record(final Runnable undo) {
+    if (finished) {
+      throw new IllegalStateException("Transaction already finished");
+    }
+    undoLog.push(undo);
+  }
+
+  /**
+   * Returns the number of changes recorded so far.
+   *
+   * @return the number of changes
+   */
+  int size() {
+    return undoLog.size();
+  }
+
+  /**
+   * Keeps the changes, and stops recording.
+   */
+  void commit() {
+    finish();
+    undoLog.clear();
+  }
+
+  /**
+   * Undoes the changes, newest first, and stops recording.
+   */
+  void rollback() {
+    finish();
+    final int count = undoLog.size();
+    while (!undoLog.isEmpty()) {
+      undoLog.pop().run();
+    }
+    holders.forEach(CardsHolder::cardsChanged);
+    LOGGER.log(Level.INFO, "Rolled back {0} changes", count);
+  }
+
+  /**
+   * Rolls back, unless already committed or rolled back.
+   */
+  @Override
+  public void close() {
+    if (!finished) {
+      rollback();
+    }
+  }
+
+  /**
+   * Stops the holders recording.
+   */
+  private void finish() {
+    if (finished) {
+      throw new IllegalStateException("Transaction already finished");
+    }
+    finished = true;
+    holders.forEach(h -> h.setTransaction(null));
+  }
+}
@@ -1,24 +1,39 @@
 package fdshow;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.LinkedList;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Objects;
 import java.util.function.ToIntFunction;
 import java.util.function.Function;
 import java.util.OptionalInt;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
 import org.jsoup.nodes.TextNode;
 import org.jsoup.select.Elements;
 
@@ -31,22 +46,92 @@ import org.jsoup.select.Elements;
  */
 class WikiData extends CardsHolder {
 
+  /**
+   * Adds logging ability.
+   */
+  static final Logger LOGGER = Logger.getLogger(WikiData.class.getName());
+
   /**
    * Contains the wiki document that the class operates on.
    */
   private Document doc;
 
+  /**
+   * Shares equal field values between the cards made from the document.
+   * Replaced on each load.
+   */
+  private StringDeduplicator dedup = new StringDeduplicator();
+
+  /**
+   * The card elements, by card ID.
+   * Kept in step with the document, so that finding a card
+   * doesn't mean searching the whole document.
+   */
+  private final Map<Integer, Element> cardsById = new HashMap<>();
+
+  /**
+   * The new-cards-here element, once it has been found.
+   */
+  private Element newCardsHere;
+
+  /**
+   * Card subtrees to clone, by the names of the fields shown on the card.
+   * Each field's value element is left empty, ready to be filled.
+   */
+  private final Map<List<String>, Element> cardTemplates = new HashMap<>();
+
+  /**
+   * Finds pictures and sounds and their thumbnails, or null not to.
+   */
+  private MediaCache media;
+
+  /**
+   * A line break, to clone.
+   */
+  private static final Element LINE_BREAK = new Element("br");
+
   /**
    * Constructs a minimal wiki,
    * having no cards, but having somewhere to put new cards.
    */
   WikiData() {
     makeMinimalWiki();
+    indexCards();
   }
 
   WikiData(final WikiData other) {
       doc = other.doc.clone();
       assert doc.hasSameValue(other.doc);
+      indexCards();
+  }
+
+  /**
+   * Sets where to find the pictures and sounds that cards name.
+   * Cards written from then on link to them,
+   * showing a thumbnail of each picture.
+   *
+   * @param media the media cache, or null for no links
+   */
+  void setMediaCache(final MediaCache media) {
+    this.media = media;
+  }
+
+  /**
+   * Rebuilds the card ID index, and forgets anything else
+   * that depends on the old document.
+   * Cards with IDs that aren't numbers are left out of the index.
+   */
+  private void indexCards() {
+    cardsById.clear();
+    newCardsHere = null;
+    cardTemplates.clear();
+    for (Element cardNode : doc.select("card[id]")) {
+      try {
+        cardsById.putIfAbsent(Integer.valueOf(cardNode.attr("id")), cardNode);
+      } catch (NumberFormatException nfe) {
+        // reported when IDs are next assigned
+      }
+    }
   }
 
   /**
@@ -74,6 +159,10 @@ class WikiData extends CardsHolder {
     r.transferTo(w);
     String input = w.toString();
     doc = Jsoup.parse(input);
+    dedup = new StringDeduplicator();
+    indexCards();
+    cardsChanged();
+    getCategoryIndex();
   }
   /**
    * Converts the wiki data into a complete HTML string.
@@ -88,6 +177,7 @@ class WikiData extends CardsHolder {
 
   /**
    * Save the HTML file to the specified destination.
+   * The file is gzipped if its name ends in ".gz".
    * @param file the destination to save the HTML file to.
    * @throws java.io.IOException if there is a problem writing to the Writer
    */
@@ -95,13 +185,219 @@ class WikiData extends CardsHolder {
   void saveTo(final File file)
   throws java.io.IOException {
     assert doc != null;
-    try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+    try (Writer writer = FileIO.openWriter(file)) {
         writer.write(doc.outerHtml());
     } catch (IOException e) {
         throw new java.io.IOException("Trying to write HTML wiki file", e);
     }
   }
 
+  /**
+   * Saves the cards as a set of small pages, beside an index page,
+   * so that a big wiki can be browsed without opening it all at once.
+   *
+   * IDed cards are put on pages by ID, pageSize IDs to a page,
+   * so a card stays on the same page however the wiki grows.
+   * The cards under new-cards-here, and any without IDs,
+   * go on a page of their own.
+   * Pages whose contents haven't changed are not rewritten,
+   * and pages that have no cards left are deleted.
+   *
+   * The pages are named after the index page:
+   * wiki.html has pages wiki-0000.html, wiki-0001.html, ... and wiki-new.html.
+   *
+   * The pages are a read-only export, for browsing.
+   * They hold the cards only, not the wiki's other content,
+   * and edits made to them are never synced;
+   * the wiki file itself is still the one that is read and rewritten.
+   *
+   * @param indexFile the index page
+   * @param pageSize  the number of card IDs to a page
+   * @return the number of pages written
+   * @throws java.io.IOException if there is a problem writing the pages
+   */
+  int saveToPages(final File indexFile, final int pageSize)
+  throws java.io.IOException {
+    assert doc != null;
+    if (pageSize < 1) {
+      throw new IllegalArgumentException("Page size must be at least 1");
+    }
+    final Path dir = indexFile.getAbsoluteFile().toPath().getParent();
+    final String base = FileIO.plainName(indexFile).replaceFirst("\\.html?$", "");
+
+    //
+    // Sort the cards onto pages, keeping them in document order
+    //
+    final Set<Element> newCards = Collections.newSetFromMap(new IdentityHashMap<>());
+    newCards.addAll(newCardsHere().select("card"));
+    final var pages = new TreeMap<Long, List<Element>>();
+    final var unplaced = new ArrayList<Element>();
+    for (Element cardNode : doc.select("card")) {
+      final Integer id = newCards.contains(cardNode) ? null : idOf(cardNode);
+      if (id == null) {
+        unplaced.add(cardNode);
+      } else {
+        pages.computeIfAbsent(pageOf(id, pageSize), k -> new ArrayList<>())
+             .add(cardNode);
+      }
+    }
+
+    //
+    // Write the pages, then the index, then clear away empty pages
+    //
+    final Set<String> names = new HashSet<>();
+    int written = 0;
+    final Long[] numbers = pages.keySet().toArray(new Long[0]);
+    for (int i = 0; i < numbers.length; i++) {
+      final String name = pageName(base, numbers[i]);
+      final var nav = pageNav(base,
+        i == 0 ? null : pageName(base, numbers[i - 1]),
+        i + 1 == numbers.length ? null : pageName(base, numbers[i + 1]));
+      names.add(name);
+      written += writeIfChanged(dir.resolve(name),
+        page("Page " + numbers[i], nav, pages.get(numbers[i])));
+    }
+    final String newName = base + "-new.html";
+    names.add(newName);
+    written += writeIfChanged(dir.resolve(newName),
+      page("New Cards", pageNav(base, null, null), unplaced));
+
+    final var index = new Element("ul");
+    makeAndAppendElement("a", makeAndAppendElement("li", index))
+      .attr("href", newName)
+      .text("New cards (" + unplaced.size() + ")");
+    for (Long number : numbers) {
+      makeAndAppendElement("a", makeAndAppendElement("li", index))
+        .attr("href", pageName(base, number))
+        .text("Page " + number + " (" + pages.get(number).size() + ")");
+    }
+    written += writeIfChanged(indexFile.toPath(),
+      page("Cards", index, List.of()));
+
+    final var pageNamePattern =
+      Pattern.compile(Pattern.quote(base) + "-\\d+\\.html");
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+      for (Path file : files) {
+        final String name = file.getFileName().toString();
+        if (pageNamePattern.matcher(name).matches() && !names.contains(name)) {
+          Files.delete(file);
+        }
+      }
+    }
+    LOGGER.log(Level.INFO, "{0} of {1} wiki pages rewritten",
+               new Object[]{written, names.size() + 1});
+    return written;
+  }
+
+  /**
+   * Returns the ID of a card element,
+   * or null if it has none or it isn't a number.
+   *
+   * @param cardNode the card element
+   * @return the ID, or null
+   */
+  private static Integer idOf(final Element cardNode) {
+    try {
+      return cardNode.hasAttr("id") ? Integer.valueOf(cardNode.attr("id")) : null;
+    } catch (NumberFormatException nfe) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the number of the page a card ID belongs on.
+   * IDs are counted from Integer.MIN_VALUE, where assigning them starts,
+   * so with small pages the number can be beyond an int.
+   *
+   * @param id       the card ID
+   * @param pageSize the number of card IDs to a page
+   * @return the page number, never negative
+   */
+  static long pageOf(final int id, final int pageSize) {
+    return ((long) id - Integer.MIN_VALUE) / pageSize;
+  }
+
+  /**
+   * Returns the file name of a numbered page.
+   *
+   * @param base   the index page's name, without extension
+   * @param number the page number
+   * @return the file name
+   */
+  private static String pageName(final String base, final long number) {
+    return String.format("%s-%04d.html", base, number);
+  }
+
+  /**
+   * Makes the links between pages.
+   *
+   * @param base the index page's name, without extension
+   * @param prev the previous page's file name, or null if none
+   * @param next the next page's file name, or null if none
+   * @return the nav element
+   */
+  private Element pageNav(
+          final String base,
+          final String prev,
+          final String next) {
+    final var nav = doc.createElement("nav");
+    makeAndAppendElement("a", nav).attr("href", base + ".html").text("Index");
+    if (prev != null) {
+      nav.appendText(" ");
+      makeAndAppendElement("a", nav).attr("href", prev).text("Previous");
+    }
+    if (next != null) {
+      nav.appendText(" ");
+      makeAndAppendElement("a", nav).attr("href", next).text("Next");
+    }
+    return nav;
+  }
+
+  /**
+   * Makes a page, with this wiki's head, showing copies of some cards.
+   *
+   * @param heading the page heading
+   * @param nav     the element to show above the cards
+   * @param cards   the card elements
+   * @return the HTML of the page
+   */
+  private String page(
+          final String heading,
+          final Element nav,
+          final List<Element> cards) {
+    final Document page = Jsoup.parse("<!DOCTYPE html><html></html>");
+    for (Element e : doc.head().children()) {
+      page.head().appendChild(e.clone());
+    }
+    page.body().appendChild(nav);
+    makeAndAppendElement("h1", page.body()).text(heading);
+    for (Element cardNode : cards) {
+      page.body().appendChild(cardNode.clone());
+    }
+    return page.outerHtml();
+  }
+
+  /**
+   * Writes the contents to the file, unless the file already holds them.
+   * Leaving unchanged pages alone keeps the browser's
+   * and any file syncing tool's work down.
+   *
+   * @param file     the file
+   * @param contents the contents
+   * @return 1 if the file was written, otherwise 0
+   * @throws java.io.IOException if there is a problem writing the file
+   */
+  private static int writeIfChanged(final Path file, final String contents)
+  throws java.io.IOException {
+    final byte[] bytes = contents.getBytes(StandardCharsets.UTF_8);
+    if (Files.isRegularFile(file) && Files.size(file) == bytes.length
+        && Arrays.equals(Files.readAllBytes(file), bytes)) {
+      return 0;
+    }
+    Files.write(file, bytes);
+    return 1;
+  }
+
 
   /**
    * Updates a given card.
@@ -118,47 +414,157 @@ class WikiData extends CardsHolder {
       throw new IllegalArgumentException("Arguments can't be null");
     }
 
-    final var cardData = newCard.getData();
-
+    final var event = new FlightEvents.WikiCard();
+    event.begin();
+    if (isRecording()) {
+      // detach the old children properly, so they can be put back
+      final List<Node> oldChildren = new ArrayList<>(oldCard.childNodes());
+      oldChildren.forEach(Node::remove);
+      recordUndo(() -> {
+        oldCard.empty();
+        oldCard.insertChildren(0, oldChildren);
+        cardsChanged();
+      });
+    }
     oldCard.empty();
+    oldCard.insertChildren(0, makeCardNode(newCard).childNodes());
+    commit(event, "update", newCard);
+  }
 
-    for (String fname : Card.FIELD_NAMES_OF_INTEREST) {
-      final String fdata = cardData.get(fname);
-      appendCardField(fname, fdata, oldCard);
+  /**
+   * Commits a wiki card event, if it is wanted.
+   *
+   * @param event     the event, begun before the work
+   * @param operation what was done to the card
+   * @param c         the card
+   */
+  private static void commit(
+          final FlightEvents.WikiCard event,
+          final String operation,
+          final Card c) {
+    if (event.shouldCommit()) {
+      event.operation = operation;
+      event.cardId = FlightEvents.idString(c.getId());
+      event.chars = FlightEvents.chars(c);
+      event.commit();
     }
   }
 
   /**
-   * Append the specified card field name and data
-   * below the specified card DOM element, as the last child.
+   * Returns true if the specified field is shown on wiki cards.
    *
    * @param fname The name of the field
    * @param fdata The data contained in the field
-   * @param cardNd The card node in the DOM
+   * @return true if the field is shown
+   */
+  private static boolean isShown(final String fname, final String fdata) {
+    return fdata != null && !fdata.strip().isEmpty() && holdsField(fname);
+  }
+
+  /**
+   * Returns true if the named field is one wiki cards show when it isn't
+   * blank.  A card read from the wiki without such a field had it blank;
+   * the other fields, such as "Statistics 1", the wiki never holds.
+   *
+   * @param fname the name of the field
+   * @return true if wiki cards hold the field
+   */
+  static boolean holdsField(final String fname) {
+    return !fname.equals("Statistics 1")
+           && Arrays.asList(Card.FIELD_NAMES_OF_INTEREST).contains(fname);
+  }
+
+  /**
+   * Makes a card DOM element, without an ID, holding the card's fields.
+   *
+   * The element is cloned from a template for the card's field layout,
+   * so only the field values need filling in.
+   *
+   * HTML that is present in the flashcard field will be escaped
+   * such that it will be <b>visible</b> in a browser, rather <b>functional</b>.
+   *
+   * @param c the card
+   * @return the card element, not yet in the document
+   */
+  private Element makeCardNode(final Card c) {
+    final var cardData = c.getData();
+    final var layout = new ArrayList<String>(Card.FIELD_NAMES_OF_INTEREST.length);
+    for (String fname : Card.FIELD_NAMES_OF_INTEREST) {
+      if (isShown(fname, cardData.get(fname))) {
+        layout.add(fname);
+      }
+    }
+    final Element cardNd =
+      cardTemplates.computeIfAbsent(layout, this::makeCardTemplate).clone();
+    final Elements fieldNds = cardNd.children();
+    for (int i = 0; i < layout.size(); i++) {
+      final Element valueNd = fieldNds.get(i).child(1);
+      appendLines(cardData.get(layout.get(i)), valueNd);
+      if (media != null) {
+        appendMediaLink(layout.get(i), cardData.get(layout.get(i)),
+                        fieldNds.get(i));
+      }
+    }
+    return cardNd;
+  }
+
+  /**
+   * Appends a link to the picture or sound a field names,
+   * if it is one and the file can be found.
+   * Pictures are shown as thumbnails linking to the full picture.
+   *
+   * @param fname   the name of the field
+   * @param fdata   the data contained in the field
+   * @param fieldNd the field node in the DOM
    */
-  private void appendCardField(
+  private void appendMediaLink(
           final String fname,
           final String fdata,
-          final Element cardNd) {
-      if (fdata != null && !fdata.strip().isEmpty()
-                        && !fname.equals("Statistics 1")) {
-        final var fieldNd = makeAndAppendElement("field", cardNd);
-        final var nameNd = makeAndAppendElement("name", fieldNd);
-        final var valueNd = makeAndAppendElement("value", fieldNd);
-        makeAndAppendText(fname, nameNd);
-        makeAndAppendText(" : ", fieldNd);
-        makeAndAppendText(fdata, valueNd);
+          final Element fieldNd) {
+    if (MediaCache.isPicture(fname)) {
+      final var picture = media.resolve(fdata);
+      final var thumbnail = media.thumbnailFor(fdata);
+      if (picture != null && thumbnail != null) {
+        final var a = makeAndAppendElement("a", fieldNd)
+                        .attr("href", media.link(picture));
+        makeAndAppendElement("img", a)
+          .attr("class", "thumbnail")
+          .attr("src", media.link(thumbnail));
+      }
+    } else if (MediaCache.isSound(fname)) {
+      final var sound = media.resolve(fdata);
+      if (sound != null) {
+        makeAndAppendElement("audio", fieldNd)
+          .attr("controls", true)
+          .attr("preload", "none")
+          .attr("src", media.link(sound));
       }
+    }
+  }
+
+  /**
+   * Makes a card template for the specified field layout.
+   * Each field has its name filled in and an empty value.
+   *
+   * @param layout the names of the fields on the card, in order
+   * @return the template
+   */
+  private Element makeCardTemplate(final List<String> layout) {
+    final var cardNd = doc.createElement("card");
+    for (String fname : layout) {
+      final var fieldNd = makeAndAppendElement("field", cardNd);
+      final var nameNd = makeAndAppendElement("name", fieldNd);
+      makeAndAppendElement("value", fieldNd);
+      appendLines(fname, nameNd);
+      appendLines(" : ", fieldNd);
+    }
+    return cardNd;
   }
 
   /**
    * Adds the specified card to the document, under the specified parent.
    * Places it as the last sibling.
    *
-   * HTML that is present in the flashcard field will be escaped
-   * such that it will be <b>visible</b> in a browser, rather <b>functional</b>.
-   * This may change in the future.
-   *
    * @param c      The card to place.
    * @param parent The parent to place the card under, as the last child.
    */
@@ -176,11 +582,22 @@ class WikiData extends CardsHolder {
         + "' as it is already present.");
     }
 
-    final var cardNd = makeAndAppendElement("card", parent);
+    final var event = new FlightEvents.WikiCard();
+    event.begin();
+    final Element cardNd = makeCardNode(c);
     if (c.getId() != null) {
         cardNd.attr("id", c.getId().toString());
+        cardsById.put(c.getId(), cardNd);
     }
-    updateCardInDoc(c, cardNd);
+    parent.appendChild(cardNd);
+    recordUndo(() -> {
+      cardNd.remove();
+      if (c.getId() != null) {
+        cardsById.remove(c.getId());
+      }
+      cardsChanged();
+    });
+    commit(event, "add", c);
   }
 
   /**
@@ -200,18 +617,32 @@ class WikiData extends CardsHolder {
   }
 
   /**
-   * Creates a text element and makes it a child of the specified parent.
+   * Appends text to the specified parent,
+   * as text nodes separated by line breaks.
+   * Trailing line separators are dropped.
    *
    * @param text   the text
-   * @param parent the element to use as the parent for the created element
+   * @param parent the element to append the text to
    */
-  private void makeAndAppendText(final String text, final Element parent) {
-    String[] lines = text.split(System.lineSeparator());
-
-    parent.appendChild(new TextNode(lines[0]));
-    for (int i = 1; i < lines.length; i++) {
-      parent.appendChild(new Element("br"));
-      parent.appendChild(new TextNode(lines[i]));
+  private static void appendLines(final String text, final Element parent) {
+    final String separator = System.lineSeparator();
+    int end = text.length();
+    while (end >= separator.length()
+           && text.startsWith(separator, end - separator.length())) {
+      end -= separator.length();
+    }
+    int start = 0;
+    while (true) {
+      int eol = text.indexOf(separator, start);
+      if (eol == -1 || eol >= end) {
+        eol = end;
+      }
+      parent.appendChild(new TextNode(text.substring(start, eol)));
+      if (eol == end) {
+        break;
+      }
+      parent.appendChild(LINE_BREAK.clone());
+      start = eol + separator.length();
     }
   }
 
@@ -233,8 +664,9 @@ class WikiData extends CardsHolder {
       throw new IllegalArgumentException(msg);
     }
 
-    Element toUpdate = doc.getElementById(id.toString());
+    Element toUpdate = cardsById.get(id);
     updateCardInDoc(c, toUpdate);
+    cardsChanged();
   }
 
   /**
@@ -244,10 +676,24 @@ class WikiData extends CardsHolder {
    * @return the created Card
    */
   private Card asCard(final Element cardNode) {
+    return asCard(cardNode, dedup);
+  }
+
+  /**
+   * Creates a Card from a card Element,
+   * sharing field names and values through the specified table.
+   *
+   * @param cardNode the card node from which to create the Card
+   * @param dedup    the table to share strings through, or null not to
+   * @return the created Card
+   */
+  static Card asCard(final Element cardNode, final StringDeduplicator dedup) {
     if (cardNode == null) {
         return null;
     }
 
+    final var event = new FlightEvents.WikiCard();
+    event.begin();
     Integer id = null;
     if (!cardNode.attr("id").equals("")) {
         id = Integer.valueOf(cardNode.attr("id"));
@@ -258,14 +704,65 @@ class WikiData extends CardsHolder {
       String name = null;
       String value = null;
       try {
-        name = f.select("name").first().html();
-        value = f.select("value").first().html();
+        name = f.select("name").first().text();
+        value = plainText(f.select("value").first());
       } catch (NullPointerException e) { // turn into a clearer exception
         throw new IllegalStateException(e);
       }
+      if (dedup != null) {
+        name = dedup.dedup(name);
+        value = dedup.dedup(value);
+      }
       fieldMap.put(name, value);
     }
-    return new Card(fieldMap, id);
+    final var card = new Card(fieldMap, id);
+    commit(event, "read", card);
+    return card;
+  }
+
+  /**
+   * Returns the text of a field value element as a flashcard holds it:
+   * line breaks become line separators, entities are unescaped,
+   * and any other markup is dropped, keeping its text.
+   * The saved wiki is pretty printed, so within each line
+   * runs of whitespace count as a single space,
+   * and the ends of each line are stripped.
+   *
+   * @param value the value element
+   * @return the plain text
+   */
+  static String plainText(final Element value) {
+    final var lines = new ArrayList<String>();
+    final var line = new StringBuilder();
+    appendText(value, lines, line);
+    lines.add(line.toString());
+    for (int i = 0; i < lines.size(); i++) {
+      lines.set(i, WHITESPACE.matcher(lines.get(i)).replaceAll(" ").strip());
+    }
+    return String.join(System.lineSeparator(), lines);
+  }
+
+  /**
+   * Appends the text under a node to the line being built,
+   * starting a new line at each line break.
+   *
+   * @param node  the node
+   * @param lines the lines finished so far
+   * @param line  the line being built
+   */
+  private static void appendText(final Node node, final List<String> lines,
+                                 final StringBuilder line) {
+    for (Node child : node.childNodes()) {
+      if (child instanceof TextNode) {
+        line.append(((TextNode) child).getWholeText());
+      } else if (child instanceof Element
+                 && ((Element) child).tagName().equals("br")) {
+        lines.add(line.toString());
+        line.setLength(0);
+      } else {
+        appendText(child, lines, line);
+      }
+    }
   }
 
   // see superclass for javadoc
@@ -274,8 +771,78 @@ class WikiData extends CardsHolder {
     assert doc != null;
     Objects.requireNonNull(id, "id must not be null");
 
-    final Element cardNode = doc.getElementById(String.valueOf(id));
-    return asCard(cardNode);
+    return asCard(cardsById.get(id));
+  }
+
+  /**
+   * Returns true if updating from the specified card
+   * would change the contents of the matching card.
+   *
+   * The card is rendered as updateCard would render it,
+   * but outside the document, and read back,
+   * so that it compares like for like with the card in the document.
+   * Runs of whitespace count as a single space,
+   * as they do in HTML, since a loaded wiki is laid out differently
+   * from a freshly rendered card.
+   *
+   * @param c the card to update from
+   * @return true if the update would change the card
+   */
+  @Override
+  boolean wouldChange(final Card c) {
+    assert doc != null;
+    final Element old = c.getId() == null ? null : cardsById.get(c.getId());
+    if (old == null) {
+      throw new IllegalArgumentException(
+        String.format("Can't compare id '%d' as it is not present.", c.getId()));
+    }
+    return !collapsed(asCard(makeCardNode(c), null).getData())
+             .equals(collapsed(asCard(old).getData()));
+  }
+
+  /**
+   * Pattern matching runs of whitespace.
+   */
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  /**
+   * Returns card data with each run of whitespace made a single space.
+   *
+   * @param data the card data
+   * @return the collapsed card data
+   */
+  private static Map<String, String> collapsed(final Map<String, String> data) {
+    final var result = new HashMap<String, String>();
+    data.forEach((k, v) -> result.put(k, v == null
+      ? null
+      : WHITESPACE.matcher(v).replaceAll(" ").strip()));
+    return result;
+  }
+
+  // see superclass for javadoc
+  @Override
+  boolean contains(final Integer id) {
+    assert doc != null;
+    return cardsById.containsKey(id);
+  }
+
+  /**
+   * Returns the new-cards-here element.
+   *
+   * @return the element
+   * @throws IllegalStateException if there isn't exactly one
+   */
+  private Element newCardsHere() {
+    if (newCardsHere == null || newCardsHere.parent() == null) {
+      Elements nodes = doc.getElementsByTag("new-cards-here");
+      if (nodes.size() == 0) {
+        throw new IllegalStateException("There is no new-cards-here element");
+      } else if (nodes.size() > 1) {
+        throw new IllegalStateException("More than one new-card-here element");
+      }
+      newCardsHere = nodes.get(0);
+    }
+    return newCardsHere;
   }
 
   /**
@@ -303,14 +870,28 @@ class WikiData extends CardsHolder {
       throw new IllegalArgumentException(msg);
     }
 
-    Elements nodes = doc.getElementsByTag("new-cards-here");
-    if (nodes.size() == 0) {
-      throw new IllegalStateException("There is no new-cards-here element");
-    } else if (nodes.size() > 1) {
-      throw new IllegalStateException("More than one new-card-here element");
-    }
+    addCardToDoc(c, newCardsHere());
+    cardsChanged();
+  }
 
-    addCardToDoc(c, nodes.get(0));
+  /**
+   * Adds the specified cards, in order, after checking all their IDs,
+   * as the last children under the new-cards-here tag.
+   *
+   * @param cards the cards to add
+   * @throws IllegalArgumentException if an ID is present or repeated
+   */
+  @Override
+  void addCards(final List<? extends Card> cards) {
+    assert doc != null;
+    checkNewIds(cards);
+    final Element parent = newCardsHere();
+    for (Card c : cards) {
+      if (c != null) {
+        addCardToDoc(c, parent);
+      }
+    }
+    cardsChanged();
   }
 
   // see superclass for javadoc
@@ -331,12 +912,28 @@ class WikiData extends CardsHolder {
   @Override
   void zapIds() {
     assert doc != null;
+    if (isRecording()) {
+      final var oldIds = new ArrayList<Element>();
+      final var oldValues = new ArrayList<String>();
+      for (Element card : doc.select("card[id]")) {
+        oldIds.add(card);
+        oldValues.add(card.attr("id"));
+      }
+      recordUndo(() -> {
+        for (int i = 0; i < oldIds.size(); i++) {
+          oldIds.get(i).attr("id", oldValues.get(i));
+        }
+        indexCards();
+        cardsChanged();
+      });
+    }
     doc.select("card").attr("id", null);
+    cardsById.clear();
   }
 
   // see superclass for javadoc
   @Override
-  List<Integer> markBlankIds() {
+  List<Integer> markBlankIds(final BitSet positions) {
 
     assert doc != null;
 
@@ -358,19 +955,46 @@ class WikiData extends CardsHolder {
                                   .mapToInt(idAsInt)
                                   .max();
 
-    int nextId = oldMax.isPresent() ? oldMax.getAsInt() + 1
-                                    : Integer.MIN_VALUE;
+    return markBlankIds(positions, oldMax.isPresent() ? oldMax.getAsInt() + 1
+                                                      : Integer.MIN_VALUE);
+  }
+
+  /**
+   * Put IDs on the unIDed cards at the specified positions,
+   * numbering them upward from the specified ID,
+   * and return a list of those new IDs.
+   * For when IDs must not clash with cards outside this wiki.
+   *
+   * @param positions the positions to consider, or null for all cards
+   * @param firstId   the first ID to assign
+   * @return the newly assigned card IDs
+   */
+  List<Integer> markBlankIds(final BitSet positions, final int firstId) {
+    assert doc != null;
+    int nextId = firstId;
 
     //
     // Go through the cards that need IDing, and ID them.
     // Also, collect and return their newly assigned numbers.
     //
-    final Elements haveNots = doc.select("card:not([id])");
-    final var it = haveNots.iterator();
+    final Elements cards = doc.select("card");
     final var collector = new LinkedList<Integer>();
-    while (it.hasNext()) {
-      collector.add(nextId);
-      it.next().attr("id", String.valueOf(nextId++));
+    for (int i = 0; i < cards.size(); i++) {
+      final Element card = cards.get(i);
+      if ((positions == null || positions.get(i)) && !card.hasAttr("id")) {
+        collector.add(nextId);
+        cardsById.put(nextId, card);
+        card.attr("id", String.valueOf(nextId++));
+      }
+    }
+    if (!collector.isEmpty()) {
+      final var assigned = new ArrayList<>(collector);
+      recordUndo(() -> {
+        for (Integer id : assigned) {
+          cardsById.remove(id).removeAttr("id");
+        }
+        cardsChanged();
+      });
     }
 
     //
@@ -387,19 +1011,66 @@ class WikiData extends CardsHolder {
     if (cardElements.isEmpty()) {
       return new ArrayList<>();
     }
-    return cardElements.stream()
-                       .map(e -> asCard(e))
-                       .collect(Collectors.toList());
+    final List<Card> cards = cardElements.stream()
+                                         .map(e -> asCard(e))
+                                         .collect(Collectors.toList());
+    LOGGER.log(Level.FINE, "Wiki cards: {0}", dedup.report());
+    return cards;
   }
 
   private void deleteCard(final Integer id) {
-      doc.select("card[id=" + id + "]").remove();
+      final var event = new FlightEvents.WikiCard();
+      event.begin();
+      for (Element card : doc.select("card[id=" + id + "]")) {
+        if (isRecording()) {
+          final Element parent = card.parent();
+          final int index = card.siblingIndex();
+          final Element indexed = cardsById.get(id);
+          recordUndo(() -> {
+            parent.insertChildren(index, card);
+            cardsById.put(id, indexed);
+            cardsChanged();
+          });
+        }
+        card.remove();
+      }
+      cardsById.remove(id);
+      if (event.shouldCommit()) {
+        event.operation = "delete";
+        event.cardId = FlightEvents.idString(id);
+        event.commit();
+      }
   }
 
   @Override
   void deleteCards(final List<Integer> ids) {
         ids.forEach(i -> java.util.Objects.requireNonNull(i));
         ids.forEach(i -> deleteCard(i));
+        cardsChanged();
+  }
+
+  /**
+   * Builds the category index straight from the DOM,
+   * looking only at each card's "Category 1" field.
+   *
+   * @return the new category index
+   */
+  @Override
+  CategoryIndex buildCategoryIndex() {
+    assert doc != null;
+    final var index = new CategoryIndex();
+    int position = 0;
+    for (Element cardNode : doc.select("card")) {
+      for (Element f : cardNode.select("field")) {
+        final Element name = f.selectFirst("name");
+        if (name != null && name.html().equals(CategoryIndex.FIELD)) {
+          final Element value = f.selectFirst("value");
+          index.add(position, value == null ? null : value.html());
+        }
+      }
+      position++;
+    }
+    return index;
   }
 
   /**
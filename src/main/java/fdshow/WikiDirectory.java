@@ -0,0 +1,775 @@
+package fdshow;
+
+/*
+ * WikiDirectory's fdshow direct dependencies
+ *   CardsHolder
+ *   WikiData
+ *   Card
+ *   Backups
+ *   FileIO
+ *   Transaction
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * A CardsHolder over a directory of wiki pages,
+ * so that a big wiki can be organized into topic pages
+ * without every sync reading and writing all of it.
+ *
+ * Each page is an HTML file of the kind WikiData reads.
+ * A page is only parsed when one of its cards is needed.
+ * Which page each card is on is kept in an index file in the directory,
+ * so opening the directory reads only the index,
+ * and any pages changed since the index was written.
+ * Saving rewrites only the pages whose cards changed.
+ * Pages are parsed, and saved, in parallel.
+ *
+ * The cards are in order of page file name, then of place on the page.
+ * New cards go on the page new-cards.html, which is made if need be.
+ */
+class WikiDirectory extends CardsHolder {
+  /**
+   * Adds logging ability.
+   */
+  static final Logger LOGGER = Logger.getLogger(WikiDirectory.class.getName());
+
+  /**
+   * The name of the index file.
+   */
+  static final String INDEX_NAME = ".fdshow-index";
+
+  /**
+   * The name of the page new cards are added to.
+   */
+  static final String NEW_CARDS_PAGE = "new-cards.html";
+
+  /**
+   * The first line of the index file, naming its format.
+   */
+  private static final String INDEX_HEADER = "fdshow wiki index 1";
+
+  /**
+   * How an unIDed card is written in the index file.
+   */
+  private static final String NO_ID = "-";
+
+  /**
+   * A page of the wiki.
+   */
+  private static final class Page {
+    /**
+     * The page's file name.
+     */
+    private final String name;
+
+    /**
+     * When the page's file was last modified, as the index records it.
+     */
+    private final long modified;
+
+    /**
+     * The length of the page's file, as the index records it.
+     */
+    private final long length;
+
+    /**
+     * The IDs of the page's cards, in order, with null for unIDed cards.
+     */
+    private List<Integer> ids;
+
+    /**
+     * The page's cards, or null until they are needed.
+     */
+    private WikiData data;
+
+    /**
+     * True if the page's cards have changed since it was saved.
+     */
+    private boolean dirty;
+
+    /**
+     * Constructs a page.
+     *
+     * @param name     the page's file name
+     * @param modified when the file was last modified
+     * @param length   the length of the file
+     * @param ids      the IDs of the page's cards, or null if not known
+     */
+    Page(
+            final String name,
+            final long modified,
+            final long length,
+            final List<Integer> ids) {
+      this.name = name;
+      this.modified = modified;
+      this.length = length;
+      this.ids = ids;
+    }
+  }
+
+  /**
+   * The directory.
+   */
+  private final File directory;
+
+  /**
+   * The pages, in order of file name.
+   */
+  private final List<Page> pages = new ArrayList<>();
+
+  /**
+   * The page each card is on, by card ID.
+   * Where IDs are repeated, the first page with the ID is the one indexed.
+   */
+  private final Map<Integer, Page> pageById = new HashMap<>();
+
+  /**
+   * The number of backup generations kept of each page rewritten.
+   */
+  private int backupGenerations;
+
+  /**
+   * The transaction the pages record their changes in, or null.
+   */
+  private Transaction transaction;
+
+  /**
+   * Constructs a WikiDirectory over the specified directory.
+   * Nothing is read until open is called.
+   *
+   * @param directory the directory of pages
+   */
+  WikiDirectory(final File directory) {
+    this.directory = Objects.requireNonNull(directory);
+  }
+
+  /**
+   * Sets the number of backup generations kept of each page rewritten.
+   *
+   * @param generations the number of generations, or 0 for no backups
+   */
+  void setBackupGenerations(final int generations) {
+    if (generations < 0) {
+      throw new IllegalArgumentException("Can't keep fewer than no backups");
+    }
+    backupGenerations = generations;
+  }
+
+  /**
+   * Finds the pages, and the cards on each,
+   * from the index where it is up to date,
+   * and otherwise by parsing the page.
+   * The index is rewritten if any page had to be parsed.
+   *
+   * @throws IOException if the directory or a page can't be read
+   */
+  void open() throws IOException {
+    if (!directory.isDirectory()) {
+      throw new FileNotFoundException(directory + " is not a directory");
+    }
+    final long start = System.nanoTime();
+    final Map<String, Page> indexed = readIndex();
+    pages.clear();
+    pageById.clear();
+    final var stale = new ArrayList<Page>();
+    for (File file : listPages()) {
+      final Page known = indexed.get(file.getName());
+      if (known != null
+          && known.modified == file.lastModified()
+          && known.length == file.length()) {
+        pages.add(known);
+      } else {
+        final var page = new Page(file.getName(), file.lastModified(),
+                                  file.length(), null);
+        pages.add(page);
+        stale.add(page);
+      }
+    }
+    loadAll(stale);
+    for (Page page : stale) {
+      page.ids = page.data.getIds();
+    }
+    pages.forEach(this::index);
+    if (!stale.isEmpty() || indexed.size() != pages.size()) {
+      writeIndex(directory);
+    }
+    cardsChanged();
+    LOGGER.log(Level.INFO, "Opened {0} wiki pages, {1} of them parsed, in {2} ms",
+               new Object[]{pages.size(), stale.size(),
+                            (System.nanoTime() - start) / 1_000_000});
+  }
+
+  /**
+   * Loading from a single reader is not supported,
+   * as the cards are spread over the pages;
+   * use loadFrom(File) with the directory, or open.
+   *
+   * @param r the Reader to load from
+   */
+  @Override
+  void loadFrom(final BufferedReader r) {
+    throw new UnsupportedOperationException(
+      "Load a wiki directory from its directory, not a reader");
+  }
+
+  /**
+   * Opens the pages, as open does.
+   *
+   * @param file this WikiDirectory's directory
+   * @throws IOException if the directory or a page can't be read
+   * @throws IllegalArgumentException if file is some other directory
+   */
+  @Override
+  void loadFrom(final File file) throws IOException {
+    if (!file.getAbsoluteFile().equals(directory.getAbsoluteFile())) {
+      throw new IllegalArgumentException(
+        "Wiki directory " + directory + " can't be loaded from " + file);
+    }
+    open();
+  }
+
+  /**
+   * Saves the pages into the specified directory, and indexes them.
+   * Saving into this WikiDirectory's own directory
+   * rewrites only the pages whose cards changed,
+   * backing each up first if backups are kept.
+   * Saving elsewhere writes every page.
+   *
+   * @param target the directory to save into
+   * @throws IOException if a page or the index can't be written
+   */
+  @Override
+  void saveTo(final File target) throws IOException {
+    final long start = System.nanoTime();
+    final boolean inPlace =
+      target.getCanonicalFile().equals(directory.getCanonicalFile());
+    if (!inPlace) {
+      Files.createDirectories(target.toPath());
+      loadAll(pages);
+    }
+    final List<Page> toWrite = pages.stream()
+                                    .filter(p -> !inPlace || p.dirty)
+                                    .collect(Collectors.toList());
+    try {
+      toWrite.parallelStream().forEach(page -> {
+        try {
+          savePage(page, new File(target, page.name), inPlace);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    if (inPlace) {
+      toWrite.forEach(page -> page.dirty = false);
+    }
+    writeIndex(target);
+    LOGGER.log(Level.INFO, "{0} of {1} wiki pages rewritten in {2} ms",
+               new Object[]{toWrite.size(), pages.size(),
+                            (System.nanoTime() - start) / 1_000_000});
+  }
+
+  /**
+   * Saves a page, backing up the file it replaces if asked to.
+   *
+   * @param page   the page
+   * @param file   where to save it
+   * @param backUp true to back up the file first
+   * @throws IOException if the page can't be written or backed up
+   */
+  private void savePage(final Page page, final File file, final boolean backUp)
+  throws IOException {
+    if (!backUp || backupGenerations == 0) {
+      page.data.saveTo(file);
+      return;
+    }
+    final var backups = new Backups(file, backupGenerations);
+    backups.backUp();
+    page.data.saveTo(file);
+    backups.await();
+  }
+
+  /**
+   * Returns the page files in the directory, in order of name.
+   *
+   * @return the page files
+   */
+  private List<File> listPages() {
+    final File[] files = directory.listFiles(
+      f -> f.isFile() && f.getName().endsWith(".html")
+           && !f.getName().startsWith("."));
+    if (files == null) {
+      throw new UncheckedIOException(
+        new IOException("Can't list " + directory));
+    }
+    Arrays.sort(files);
+    return Arrays.asList(files);
+  }
+
+  /**
+   * Reads the index file.
+   * A missing or unreadable index is treated as empty,
+   * so that every page is parsed.
+   *
+   * @return the pages the index knows of, by file name
+   */
+  private Map<String, Page> readIndex() {
+    final var indexed = new HashMap<String, Page>();
+    final Path file = directory.toPath().resolve(INDEX_NAME);
+    if (!Files.isRegularFile(file)) {
+      return indexed;
+    }
+    try {
+      final List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+      if (lines.isEmpty() || !lines.get(0).equals(INDEX_HEADER)) {
+        LOGGER.log(Level.WARNING, "Ignoring index {0} of unknown format", file);
+        return indexed;
+      }
+      for (String line : lines.subList(1, lines.size())) {
+        final String[] parts = line.split("\t", -1);
+        final var ids = new ArrayList<Integer>();
+        if (!parts[3].isEmpty()) {
+          for (String id : parts[3].split(" ")) {
+            ids.add(id.equals(NO_ID) ? null : Integer.valueOf(id));
+          }
+        }
+        indexed.put(parts[0], new Page(parts[0],
+                                       Long.parseLong(parts[1]),
+                                       Long.parseLong(parts[2]),
+                                       ids));
+      }
+    } catch (IOException | RuntimeException e) {
+      LOGGER.log(Level.WARNING, "Ignoring unreadable index " + file, e);
+      indexed.clear();
+    }
+    return indexed;
+  }
+
+  /**
+   * Writes the index file of the pages as saved in the specified directory.
+   *
+   * @param target the directory
+   * @throws IOException if the index can't be written
+   */
+  private void writeIndex(final File target) throws IOException {
+    final var sb = new StringBuilder(INDEX_HEADER).append('\n');
+    for (Page page : pages) {
+      final var file = new File(target, page.name);
+      sb.append(page.name).append('\t')
+        .append(file.lastModified()).append('\t')
+        .append(file.length()).append('\t')
+        .append(page.ids.stream()
+                        .map(id -> id == null ? NO_ID : id.toString())
+                        .collect(Collectors.joining(" ")))
+        .append('\n');
+    }
+    final Path index = target.toPath().resolve(INDEX_NAME);
+    final Path partial = target.toPath().resolve(INDEX_NAME + ".partial");
+    Files.write(partial, sb.toString().getBytes(StandardCharsets.UTF_8));
+    Files.move(partial, index, StandardCopyOption.REPLACE_EXISTING,
+               StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Indexes a page's cards by ID.
+   *
+   * @param page the page
+   */
+  private void index(final Page page) {
+    for (Integer id : page.ids) {
+      if (id != null) {
+        pageById.putIfAbsent(id, page);
+      }
+    }
+  }
+
+  /**
+   * Returns a page's cards, parsing the page if that hasn't been done.
+   * A page that hasn't been saved yet starts empty.
+   *
+   * @param page the page
+   * @return the page's cards
+   */
+  private WikiData load(final Page page) {
+    if (page.data == null) {
+      final var data = new WikiData();
+      final var file = new File(directory, page.name);
+      if (file.exists()) {
+        try (BufferedReader r = FileIO.openReader(file)) {
+          data.loadFrom(r);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+      data.setTransaction(transaction);
+      page.data = data;
+    }
+    return page.data;
+  }
+
+  /**
+   * Parses those of the pages that haven't been, in parallel.
+   *
+   * @param toLoad the pages
+   */
+  private void loadAll(final Collection<Page> toLoad) {
+    final long start = System.nanoTime();
+    final List<Page> unloaded = toLoad.stream()
+                                      .filter(p -> p.data == null)
+                                      .collect(Collectors.toList());
+    unloaded.parallelStream().forEach(this::load);
+    if (!unloaded.isEmpty()) {
+      LOGGER.log(Level.FINE, "Parsed {0} wiki pages in {1} ms",
+                 new Object[]{unloaded.size(),
+                              (System.nanoTime() - start) / 1_000_000});
+    }
+  }
+
+  /**
+   * Marks a page as needing to be saved.
+   *
+   * @param page the page
+   */
+  private void markDirty(final Page page) {
+    if (!page.dirty) {
+      page.dirty = true;
+      recordUndo(() -> page.dirty = false);
+    }
+  }
+
+  /**
+   * Returns the page new cards are added to, making it if need be.
+   *
+   * @return the page
+   */
+  private Page newCardsPage() {
+    int at = 0;
+    while (at < pages.size() && pages.get(at).name.compareTo(NEW_CARDS_PAGE) < 0) {
+      at++;
+    }
+    if (at < pages.size() && pages.get(at).name.equals(NEW_CARDS_PAGE)) {
+      return pages.get(at);
+    }
+    final var page = new Page(NEW_CARDS_PAGE, 0, 0, new ArrayList<>());
+    pages.add(at, page);
+    recordUndo(() -> pages.remove(page));
+    markDirty(page);
+    return page;
+  }
+
+  /**
+   * Records the pages' changes, as well as this WikiDirectory's own,
+   * in the transaction.
+   * Pages parsed while the transaction is open record in it too.
+   *
+   * @param t the transaction, or null to stop recording
+   */
+  @Override
+  void setTransaction(final Transaction t) {
+    super.setTransaction(t);
+    transaction = t;
+    for (Page page : pages) {
+      if (page.data != null) {
+        page.data.setTransaction(t);
+      }
+    }
+  }
+
+  // See the superclass for javadoc
+  @Override
+  ArrayList<Integer> getIds() {
+    final var ids = new ArrayList<Integer>();
+    for (Page page : pages) {
+      ids.addAll(page.ids);
+    }
+    return ids;
+  }
+
+  // See the superclass for javadoc
+  @Override
+  boolean contains(final Integer id) {
+    return id == null ? super.contains(id) : pageById.containsKey(id);
+  }
+
+  // See the superclass for javadoc
+  @Override
+  Card getCard(final Integer id) {
+    final Page page = pageById.get(id);
+    return page == null ? null : load(page).getCard(id);
+  }
+
+  /**
+   * Parses the pages the cards are on, in parallel.
+   *
+   * @param ids the IDs of the cards
+   */
+  @Override
+  void prefetch(final Collection<Integer> ids) {
+    final Set<Page> needed = new HashSet<>();
+    for (Integer id : ids) {
+      final Page page = id == null ? null : pageById.get(id);
+      if (page != null && page.data == null) {
+        needed.add(page);
+      }
+    }
+    loadAll(needed);
+  }
+
+  // See the superclass for javadoc
+  @Override
+  boolean wouldChange(final Card c) {
+    final Page page = c.getId() == null ? null : pageById.get(c.getId());
+    if (page == null) {
+      throw new IllegalArgumentException(
+        String.format("Can't compare id '%d' as it is not present.", c.getId()));
+    }
+    return load(page).wouldChange(c);
+  }
+
+  /**
+   * Updates the specified card on its page.
+   * The page is only marked for saving if the card's contents change.
+   *
+   * @param c the card to update from
+   */
+  @Override
+  void updateCard(final Card c) {
+    if (c == null) {
+      return;
+    }
+    final Integer id = c.getId();
+    if (id == null) {
+      throw new IllegalArgumentException("Can't update from an unIDed card.");
+    }
+    final Page page = pageById.get(id);
+    if (page == null) {
+      String msg =
+        String.format("Can't update id '%d' as it is not present.", id);
+      throw new IllegalArgumentException(msg);
+    }
+    final WikiData data = load(page);
+    if (data.wouldChange(c)) {
+      data.updateCard(c);
+      markDirty(page);
+      cardsChanged();
+    }
+  }
+
+  /**
+   * Adds the specified card to the new cards page.
+   *
+   * @param c the card to add
+   */
+  @Override
+  void addCard(final Card c) {
+    if (c == null) {
+      return;
+    }
+    final Integer id = c.getId();
+    if (id != null && contains(id)) {
+      String msg =
+        String.format("Can't add id '%d' as it is already present.", id);
+      throw new IllegalArgumentException(msg);
+    }
+    final Page page = newCardsPage();
+    load(page).addCard(c);
+    page.ids.add(id);
+    if (id != null) {
+      pageById.put(id, page);
+    }
+    recordUndo(() -> {
+      page.ids.remove(page.ids.size() - 1);
+      if (id != null) {
+        pageById.remove(id);
+      }
+    });
+    markDirty(page);
+    cardsChanged();
+  }
+
+  /**
+   * Adds the specified cards, in order, to the new cards page.
+   *
+   * @param cards the cards to add
+   */
+  @Override
+  void addCards(final List<? extends Card> cards) {
+    checkNewIds(cards);
+    final Page page = newCardsPage();
+    load(page).addCards(cards);
+    final int oldSize = page.ids.size();
+    for (Card c : cards) {
+      if (c == null) {
+        continue;
+      }
+      page.ids.add(c.getId());
+      if (c.getId() != null) {
+        pageById.put(c.getId(), page);
+      }
+    }
+    recordUndo(() -> {
+      final List<Integer> added = page.ids.subList(oldSize, page.ids.size());
+      added.forEach(id -> {
+        if (id != null) {
+          pageById.remove(id);
+        }
+      });
+      added.clear();
+    });
+    markDirty(page);
+    cardsChanged();
+  }
+
+  /**
+   * Clears the IDs of the cards on every page,
+   * which means parsing and rewriting them all.
+   */
+  @Override
+  void zapIds() {
+    loadAll(pages);
+    final var oldIds = new ArrayList<List<Integer>>();
+    for (Page page : pages) {
+      oldIds.add(page.ids);
+      page.data.zapIds();
+      page.ids = page.data.getIds();
+      markDirty(page);
+    }
+    pageById.clear();
+    recordUndo(() -> {
+      for (int i = 0; i < oldIds.size(); i++) {
+        pages.get(i).ids = oldIds.get(i);
+      }
+      pageById.clear();
+      pages.forEach(this::index);
+    });
+    cardsChanged();
+  }
+
+  /**
+   * Put IDs on the unIDed cards at the specified positions,
+   * numbering them across all the pages,
+   * and return a list of those new IDs.
+   * Only pages with such cards are parsed.
+   *
+   * @param positions the positions to consider, or null for all cards
+   * @return the newly assigned card IDs
+   */
+  @Override
+  List<Integer> markBlankIds(final BitSet positions) {
+    int nextId = getNextId();
+    final var assigned = new ArrayList<Integer>();
+    int offset = 0;
+    for (Page page : pages) {
+      final int size = page.ids.size();
+      final BitSet wanted =
+        positions == null ? null : positions.get(offset, offset + size);
+      offset += size;
+      if (!hasBlank(page.ids, wanted)) {
+        continue;
+      }
+      final List<Integer> oldIds = page.ids;
+      final List<Integer> pageAssigned = load(page).markBlankIds(wanted, nextId);
+      nextId += pageAssigned.size();
+      page.ids = page.data.getIds();
+      pageAssigned.forEach(id -> pageById.put(id, page));
+      recordUndo(() -> {
+        page.ids = oldIds;
+        pageAssigned.forEach(pageById::remove);
+      });
+      markDirty(page);
+      assigned.addAll(pageAssigned);
+    }
+    if (!assigned.isEmpty()) {
+      cardsChanged();
+    }
+    return assigned;
+  }
+
+  /**
+   * Returns true if any of the wanted cards has no ID.
+   *
+   * @param ids    the IDs of a page's cards
+   * @param wanted the positions on the page to consider, or null for all
+   * @return true if there is an unIDed card to mark
+   */
+  private static boolean hasBlank(final List<Integer> ids, final BitSet wanted) {
+    for (int i = 0; i < ids.size(); i++) {
+      if (ids.get(i) == null && (wanted == null || wanted.get(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the cards of every page, which means parsing them all.
+   *
+   * @return the cards
+   */
+  @Override
+  List<Card> getCards() {
+    loadAll(pages);
+    final var cards = new ArrayList<Card>();
+    for (Page page : pages) {
+      cards.addAll(page.data.getCards());
+    }
+    return cards;
+  }
+
+  /**
+   * Deletes the cards with the specified IDs.
+   * Only the pages they are on are parsed, in parallel.
+   *
+   * @param ids the IDs of the cards to delete
+   */
+  @Override
+  void deleteCards(final List<Integer> ids) {
+    ids.forEach(i -> Objects.requireNonNull(i));
+    final var byPage = new LinkedHashMap<Page, List<Integer>>();
+    for (Integer id : ids) {
+      final Page page = pageById.get(id);
+      if (page != null) {
+        byPage.computeIfAbsent(page, p -> new ArrayList<>()).add(id);
+      }
+    }
+    loadAll(byPage.keySet());
+    byPage.forEach((page, pageIds) -> {
+      final List<Integer> oldIds = page.ids;
+      page.data.deleteCards(pageIds);
+      page.ids = page.data.getIds();
+      pageIds.forEach(id -> pageById.remove(id, page));
+      recordUndo(() -> {
+        page.ids = oldIds;
+        pageIds.forEach(id -> pageById.put(id, page));
+      });
+      markDirty(page);
+    });
+    if (!byPage.isEmpty()) {
+      cardsChanged();
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package fdshow;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import picocli.CommandLine;
+
+/**
+ * Tests the App class, running it as the command line does
+ */
+public class AppTest
+{
+    @TempDir
+    Path dir;
+
+    /**
+     * Runs App in a JVM of its own, as its options are static
+     * and would otherwise carry over from run to run.
+     *
+     * @param args the command line arguments
+     * @return what App printed to standard output
+     */
+    private static String app(final String... args)
+    throws Exception
+    {
+        final Process p = start(false, args);
+        final String out =
+            new String(p.getInputStream().readAllBytes(), Charset.defaultCharset());
+        assertEquals(0, p.waitFor(), out);
+        return out;
+    }
+
+    /**
+     * Runs App in a JVM of its own, expecting it to fail.
+     *
+     * @param args the command line arguments
+     * @return what App printed to standard error
+     */
+    private static String appFailing(final String... args)
+    throws Exception
+    {
+        final Process p = start(true, args);
+        final String err =
+            new String(p.getErrorStream().readAllBytes(), Charset.defaultCharset());
+        assertNotEquals(0, p.waitFor(), err);
+        return err;
+    }
+
+    /**
+     * Starts App in a JVM of its own, reading one of its output streams.
+     *
+     * @param errors true to read standard error, false standard output
+     * @param args   the command line arguments
+     * @return the process
+     */
+    private static Process start(final boolean errors, final String... args)
+    throws Exception
+    {
+        final List<String> command = new ArrayList<>(List.of(
+            Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+            "-cp", System.getProperty("java.class.path"),
+            App.class.getName()));
+        command.addAll(Arrays.asList(args));
+        final var discard = ProcessBuilder.Redirect.DISCARD;
+        final var pipe = ProcessBuilder.Redirect.PIPE;
+        return new ProcessBuilder(command)
+            .redirectOutput(errors ? discard : pipe)
+            .redirectError(errors ? pipe : discard)
+            .start();
+    }
+
+    @Test
+    public void should_planAndReport_when_nothingChangedSinceSync()
+    throws Exception
+    {
+        final File deck = dir.resolve("f.txt").toFile();
+        final File wiki = dir.resolve("w.html").toFile();
+        assertEquals(0, new CommandLine(new DeckGenerator()).execute(
+            "--cards", "20", deck.getPath(), wiki.getPath()));
+        app("-u", deck.getPath(), wiki.getPath());
+
+        final String plan = app("--plan", "-u", deck.getPath(), wiki.getPath());
+        assertTrue(plan.contains("update: "), plan);
+    }
+
+    @Test
+    public void should_updateNotDelete_when_cardRecategorizedInDeck()
+    throws Exception
+    {
+        final File deck = dir.resolve("f.txt").toFile();
+        final File wiki = dir.resolve("w.html").toFile();
+        assertEquals(0, new CommandLine(new DeckGenerator()).execute(
+            "--cards", "50", "--drift", "0", deck.getPath(), wiki.getPath()));
+        final var fc = new FDFileData();
+        fc.loadFrom(deck);
+        final Card card = fc.getCard(Integer.MIN_VALUE);
+        final String category = card.getField("Category 1");
+        final var moved = new HashMap<>(card.getData());
+        moved.put("Category 1", "Elsewhere");
+        fc.updateCard(new Card(moved, Integer.MIN_VALUE));
+        fc.saveTo(deck);
+
+        final String plan = app("--plan", "-c", category, "-du",
+                                deck.getPath(), wiki.getPath());
+        assertTrue(plan.contains("delete: 0 cards"), plan);
+        app("-c", category, "-du", deck.getPath(), wiki.getPath());
+
+        final var wd = new WikiData();
+        wd.loadFrom(wiki);
+        assertNotNull(wd.getCard(Integer.MIN_VALUE));
+        assertEquals("Elsewhere",
+                     wd.getCard(Integer.MIN_VALUE).getField("Category 1"));
+    }
+
+    @Test
+    public void should_restoreBothFiles_when_streamSynced()
+    throws Exception
+    {
+        final File deck = dir.resolve("f.txt").toFile();
+        final File wiki = dir.resolve("w.html").toFile();
+        assertEquals(0, new CommandLine(new DeckGenerator()).execute(
+            "--cards", "20", deck.getPath(), wiki.getPath()));
+        final String deckBefore = Files.readString(deck.toPath());
+        final String wikiBefore = Files.readString(wiki.toPath());
+        app("--stream", "-u", deck.getPath(), wiki.getPath());
+
+        app("--restore", "1", deck.getPath(), wiki.getPath());
+        assertEquals(deckBefore, Files.readString(deck.toPath()));
+        assertEquals(wikiBefore, Files.readString(wiki.toPath()));
+    }
+
+    @Test
+    public void should_refuseRestore_when_wikiIsDirectory()
+    throws Exception
+    {
+        final File deck = dir.resolve("f.txt").toFile();
+        final File pages = Files.createDirectory(dir.resolve("wiki")).toFile();
+        Files.writeString(deck.toPath(), "");
+
+        final String err = appFailing("--restore", "1",
+                                      deck.getPath(), pages.getPath());
+        assertTrue(err.contains("wiki directory"), err);
+    }
+}
@@ -0,0 +1,98 @@
+package fdshow;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Tests the Backups class
+ */
+public class BackupsTest
+{
+    @TempDir
+    Path dir;
+
+    private static void save(final Backups backups, final File file,
+                             final String contents)
+    throws IOException
+    {
+        backups.backUp();
+        Files.writeString(file.toPath(), contents);
+    }
+
+    @Test
+    public void should_keepAndRestoreGenerations()
+    throws Exception
+    {
+        final File file = dir.resolve("deck.txt").toFile();
+        final var backups = new Backups(file, 2);
+        save(backups, file, "one");
+        save(backups, file, "two");
+        save(backups, file, "three");
+        save(backups, file, "four");
+        backups.await();
+        assertEquals(List.of(backups.generation(1), backups.generation(2)),
+                     backups.list());
+        assertFalse(backups.generation(3).exists());
+        assertEquals("deck.txt.bak1.gz", backups.generation(1).getName());
+
+        backups.restore(2);
+        assertEquals("two", Files.readString(file.toPath()));
+        backups.restore(1);
+        assertEquals("three", Files.readString(file.toPath()));
+        assertThrows(IOException.class, () -> backups.restore(3));
+    }
+
+    @Test
+    public void should_keepGzippedFilesAsTheyAre()
+    throws Exception
+    {
+        final File file = dir.resolve("wiki.html.gz").toFile();
+        final byte[] gzipped = {31, -117, 8, 0, 0, 0, 0, 0, 0, 0, 3, 0, 0, 0, 0,
+                                0, 0, 0, 0, 0};
+        Files.write(file.toPath(), gzipped);
+        final var backups = new Backups(file, 3);
+        backups.backUp();
+        backups.await();
+        assertFalse(file.exists());
+        assertArrayEquals(gzipped,
+            Files.readAllBytes(dir.resolve("wiki.html.gz.bak1")));
+    }
+
+    @Test
+    public void should_finishInterruptedBackup()
+    throws Exception
+    {
+        final File file = dir.resolve("deck.txt").toFile();
+        Files.writeString(dir.resolve("deck.txt.bak-pending"), "lost");
+        Files.writeString(file.toPath(), "current");
+        final var backups = new Backups(file, 3);
+        backups.backUp();
+        backups.await();
+        backups.restore(2);
+        assertEquals("lost", Files.readString(file.toPath()));
+        backups.restore(1);
+        assertEquals("current", Files.readString(file.toPath()));
+    }
+
+    @Test
+    public void should_leaveFileInPlace_when_backedUpByCopy()
+    throws Exception
+    {
+        final File file = dir.resolve("deck.txt").toFile();
+        Files.writeString(file.toPath(), "kept");
+        final var backups = new Backups(file, 3);
+        backups.backUpCopy();
+        backups.await();
+        assertEquals("kept", Files.readString(file.toPath()));
+        Files.writeString(file.toPath(), "changed");
+        backups.restore(1);
+        assertEquals("kept", Files.readString(file.toPath()));
+    }
+}
@@ -0,0 +1,146 @@
+package fdshow;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * Tests the CardPublisher and SyncSubscriber classes
+ */
+public class CardPublisherTest
+{
+    @TempDir
+    Path dir;
+
+    private static FDFileData loadDeck() throws Exception
+    {
+        final var deck = new FDFileData();
+        deck.loadFrom(new BufferedReader(new FileReader(FDData.NAME)));
+        return deck;
+    }
+
+    @Test
+    public void should_publishSameCardsAsLoading()
+    throws Exception
+    {
+        final var published = new ArrayList<Card>();
+        final var subscriber = new SyncSubscriber(c -> {
+            published.add(c);
+            return 1;
+        }, count -> 0);
+        CardPublisher.ofFlashcards(new File(FDData.NAME)).subscribe(subscriber);
+        assertEquals(FDData.RECORDS,
+                     subscriber.getResult().get(10, TimeUnit.SECONDS).intValue());
+        assertEquals(loadDeck().getCards(), published);
+    }
+
+    @Test
+    public void should_publishWikiCards_when_splitAcrossReads()
+    throws Exception
+    {
+        final var wd = new WikiData();
+        for (int id = 0; id < 3000; id++) {
+            wd.addCard(new SimpleCard("front " + id + ":back", id));
+        }
+        final Path wiki = dir.resolve("wiki.html");
+        Files.writeString(wiki, wd.toString());
+
+        final var published = new ArrayList<Card>();
+        CardPublisher.readWikiCards(Files.newBufferedReader(wiki), published::add);
+        assertEquals(wd.getCards(), published);
+    }
+
+    @Test
+    public void should_holdPublisherBack_when_subscriberIsSlow()
+    throws Exception
+    {
+        final var received = new AtomicInteger();
+        final var subscription = new Flow.Subscription[1];
+        CardPublisher.ofFlashcards(new File(FDData.NAME)).subscribe(
+            new Flow.Subscriber<Card>() {
+                public void onSubscribe(final Flow.Subscription s) {
+                    subscription[0] = s;
+                    s.request(2);
+                }
+                public void onNext(final Card c) { received.incrementAndGet(); }
+                public void onError(final Throwable t) { }
+                public void onComplete() { }
+            });
+        Thread.sleep(200);
+        assertEquals(2, received.get());
+        subscription[0].request(Long.MAX_VALUE);
+        for (int i = 0; i < 100 && received.get() < FDData.RECORDS; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(FDData.RECORDS, received.get());
+    }
+
+    @Test
+    public void should_syncAsCardsArrive()
+    throws Exception
+    {
+        final var deck = loadDeck();
+        final List<Integer> ids = deck.markBlankIds();
+        final Path file = dir.resolve("deck.txt");
+        deck.saveTo(file.toFile());
+
+        final var wd = new WikiData();
+        wd.addCard(new SimpleCard("old:back", ids.get(0)));
+        wd.addCard(new SimpleCard("gone:back", 42));
+
+        final var logged = new ArrayList<String>();
+        final var handler = new Handler() {
+            @Override
+            public void publish(final LogRecord r)
+            {
+                logged.add(new SimpleFormatter().formatMessage(r));
+            }
+
+            @Override
+            public void flush()
+            {
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+        Sync.LOGGER.addHandler(handler);
+        final var publisher = CardPublisher.ofFlashcards(file.toFile());
+        final var move = Sync.copyingUnmatchedIdedCards(wd);
+        publisher.subscribe(move);
+        assertEquals(FDData.RECORDS - 1, move.getResult().get().intValue());
+        final var delete = Sync.deletingExtraCards(wd);
+        publisher.subscribe(delete);
+        assertEquals(1, delete.getResult().get().intValue());
+        final var update = Sync.updating(wd);
+        publisher.subscribe(update);
+        assertEquals(FDData.RECORDS, update.getResult().get().intValue());
+        Sync.LOGGER.removeHandler(handler);
+        assertEquals(List.of(
+            "Moved " + (FDData.RECORDS - 1)
+            + " unmatched but IDed cards from source to destination",
+            "1 cards deleted",
+            FDData.RECORDS + " cards updated"), logged);
+
+        assertEquals(ids, wd.getIds());
+        final var expected = new WikiData();
+        expected.addCard(deck.getCard(ids.get(0)));
+        assertEquals(expected.getCard(ids.get(0)), wd.getCard(ids.get(0)));
+    }
+}
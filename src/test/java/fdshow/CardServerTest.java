@@ -0,0 +1,171 @@
+package fdshow;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/**
+ * Tests the CardServer class
+ */
+public class CardServerTest
+{
+    @TempDir
+    Path dir;
+
+    private CardServer server;
+    private String base;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    private void start(final CardsHolder fc) throws Exception
+    {
+        final var wd = new WikiData();
+        wd.addCard(new SimpleCard("Hello old:back", 1));
+        wd.addCard(new SimpleCard("Deleted:back", 3));
+        server = new CardServer(fc, wd, dir.resolve("deck.txt").toFile(),
+                                dir.resolve("wiki.html").toFile());
+        base = "http://localhost:" + server.start(0);
+    }
+
+    private void start() throws Exception
+    {
+        final var fc = new FDCards();
+        fc.addCard(new SimpleCard("Hello \"world\":back", 1));
+        fc.addCard(new SimpleCard("Goodbye:back", 2));
+        fc.addCard(new SimpleCard("New card:back", null));
+        start(fc);
+    }
+
+    @AfterEach
+    public void stopServer()
+    {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private HttpRequest.Builder request(final String path)
+    {
+        return HttpRequest.newBuilder(URI.create(base + path))
+                          .header(CardServer.TOKEN_HEADER, server.token());
+    }
+
+    private HttpResponse<String> get(final String path) throws Exception
+    {
+        return client.send(request(path).build(),
+                           HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(final String path) throws Exception
+    {
+        return client.send(request(path).POST(HttpRequest.BodyPublishers.noBody())
+                                         .build(),
+                           HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    public void should_answerQueries()
+    throws Exception
+    {
+        start();
+        final var card = get("/cards/1");
+        assertEquals(200, card.statusCode());
+        assertTrue(card.body().contains("\"Text 1\":\"Hello \\\"world\\\"\""),
+                   card.body());
+        assertEquals("[1,2,null]", get("/ids").body());
+        assertEquals("[1,3]", get("/ids?in=wiki").body());
+        final String found = get("/search?q=GOODBYE").body();
+        assertTrue(found.startsWith("[{\"id\":2,"), found);
+        assertEquals(404, get("/cards/99").statusCode());
+        assertEquals(400, get("/cards/x").statusCode());
+        assertEquals(405, post("/ids").statusCode());
+    }
+
+    @Test
+    public void should_sync()
+    throws Exception
+    {
+        start();
+        assertEquals("{\"update\":1}", post("/sync/update").body());
+        assertTrue(get("/cards/1?in=wiki").body().contains("Hello"));
+        assertEquals("{\"delete\":1}", post("/sync/delete").body());
+        assertEquals("{\"add\":1}", post("/sync/add").body());
+        assertEquals("[1,3]", get("/ids?in=wiki").body());
+        assertTrue(get("/cards/3?in=wiki").body().contains("New card"));
+        assertEquals(404, post("/sync/nothing").statusCode());
+        final String stats = get("/stats").body();
+        assertTrue(stats.contains("\"POST /sync/update\":{\"count\":1,"), stats);
+        assertTrue(stats.contains("\"GET /cards/ID\":{\"count\":2,"), stats);
+        assertEquals(405, post("/made-up-path").statusCode());
+        assertEquals(200, get("/ids/made-up-path").statusCode());
+        final String after = get("/stats").body();
+        assertFalse(after.contains("made-up-path"), after);
+    }
+
+    @Test
+    public void should_saveBothFiles()
+    throws Exception
+    {
+        final var fc = new FDFileData();
+        fc.loadFrom(new BufferedReader(new FileReader(FDData.NAME)));
+        start(fc);
+        Files.writeString(dir.resolve("wiki.html"), "old");
+        assertEquals(200, post("/sync/add").statusCode());
+        assertEquals(200, post("/save").statusCode());
+        assertTrue(Files.exists(dir.resolve("wiki.html.bak1.gz")));
+        assertTrue(Files.readString(dir.resolve("wiki.html")).contains("<card"));
+        assertTrue(Files.exists(dir.resolve("deck.txt")));
+    }
+
+    @Test
+    public void should_refuse_when_tokenMissingOrFromWebPage()
+    throws Exception
+    {
+        start();
+        final var noToken = client.send(
+            HttpRequest.newBuilder(URI.create(base + "/sync/delete"))
+                       .POST(HttpRequest.BodyPublishers.noBody())
+                       .build(),
+            HttpResponse.BodyHandlers.ofString());
+        assertEquals(403, noToken.statusCode());
+        final var wrongToken = client.send(
+            HttpRequest.newBuilder(URI.create(base + "/ids"))
+                       .header(CardServer.TOKEN_HEADER, "guess")
+                       .build(),
+            HttpResponse.BodyHandlers.ofString());
+        assertEquals(403, wrongToken.statusCode());
+        final var fromPage = client.send(
+            request("/sync/delete").header("Origin", "http://example.com")
+                                   .POST(HttpRequest.BodyPublishers.noBody())
+                                   .build(),
+            HttpResponse.BodyHandlers.ofString());
+        assertEquals(403, fromPage.statusCode());
+        assertEquals("[1,3]", get("/ids?in=wiki").body());
+        assertFalse(get("/stats").body().contains("delete"));
+    }
+
+    @Test
+    public void should_writeTokenForOwnerOnly()
+    throws Exception
+    {
+        start();
+        final Path file = dir.resolve("token");
+        Files.writeString(file, "stale");
+        server.writeToken(file.toFile());
+        assertEquals(server.token(), Files.readString(file).strip());
+        if (file.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            assertEquals("rw-------", PosixFilePermissions.toString(
+                Files.getPosixFilePermissions(file)));
+        }
+    }
+}
@@ -208,6 +208,20 @@ public class CardsHolderTest
     assertEquals(expected, actual);
   }
   
+  @ParameterizedTest
+  @MethodSource("createCardsHolderSubclasses")
+  void should_addNone_when_AddCardsHasClashingId(CardsHolder x) {
+    x.addCard(new SimpleCard("A:B",1));
+    final var cards = Arrays.<Card>asList(new SimpleCard("C:D",2),
+                                          new SimpleCard("E:F",1));
+    assertThrows(IllegalArgumentException.class, () -> x.addCards(cards));
+    assertEquals(Arrays.asList(1), x.getIds());
+
+    x.addCards(Arrays.asList(new SimpleCard("C:D",2), null,
+                             new SimpleCard("E:F")));
+    assertEquals(Arrays.asList(1, 2, null), x.getIds());
+  }
+
   /**
    * Supply empty CardsHolder objects,
    * planning to do generic testing on each.
@@ -0,0 +1,150 @@
+package fdshow;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Tests the CategoryIndex and CategoryView classes
+ */
+public class CategoryViewTest
+{
+    private static Card card(final String text, final String category,
+                             final Integer id) {
+        final var data = new HashMap<String, String>();
+        data.put("Text 1", text);
+        if (category != null) {
+            data.put("Category 1", category);
+        }
+        return new Card(data, id);
+    }
+
+    @Test
+    public void should_indexCardPositionsByCategory()
+    {
+        final var fc = new FDCards();
+        fc.addCard(card("a", "Java", 1));
+        fc.addCard(card("b", "Chinese|Java", 2));
+        fc.addCard(card("c", null, 3));
+        fc.addCard(card("d", "Chinese", null));
+
+        final var index = fc.getCategoryIndex();
+        assertEquals(List.of("Chinese", "Java"),
+                     List.copyOf(index.getCategories()));
+        assertEquals("{0, 1}", index.get("Java").toString());
+        assertEquals("{1, 3}", index.get("Chinese").toString());
+        assertTrue(index.get("Nothing").isEmpty());
+    }
+
+    @Test
+    public void should_indexWikiCardsByCategory()
+    {
+        final var wd = new WikiData();
+        wd.addCard(card("a", "Java", 1));
+        wd.addCard(card("b", "Chinese", 2));
+        assertEquals("{1}", wd.getCategoryIndex().get("Chinese").toString());
+    }
+
+    @Test
+    public void should_onlyAddAndIdCardsInCategory()
+    {
+        final var fc = new FDCards();
+        fc.addCard(card("a", "Java", 5));
+        fc.addCard(card("b", "Chinese", null));
+        fc.addCard(card("c", "Java", null));
+        final var wiki = new WikiData();
+
+        final List<String> java = Arrays.asList("Java");
+        Sync.markAndAddNewCards(new CategoryView(fc, java),
+                                new CategoryView(wiki, java));
+
+        // only "c" is new and in the category, and it gets the next ID
+        assertEquals(Arrays.asList(5, null, 6), fc.getIds());
+        assertEquals(Arrays.asList(6), wiki.getIds());
+        assertEquals("c", wiki.getCard(6).getData().get("Text 1"));
+    }
+
+    @Test
+    public void should_onlyDeleteCardsInCategory()
+    {
+        final var fc = new FDCards();
+        final var wiki = new WikiData();
+        wiki.addCard(card("a", "Java", 1));
+        wiki.addCard(card("b", "Chinese", 2));
+
+        final List<String> java = Arrays.asList("Java");
+        Sync.deleteExtraCards(new CategoryView(fc, java),
+                              new CategoryView(wiki, java));
+
+        assertEquals(Arrays.asList(2), wiki.getIds());
+    }
+
+    @Test
+    public void should_updateNotDelete_when_cardRecategorized()
+    {
+        final var fc = new FDCards();
+        fc.addCard(card("a", "Java", 1));
+        fc.addCard(card("b", "Chinese", 2));
+        final var wiki = new WikiData();
+        wiki.addCard(card("a", "Java", 1));
+        wiki.addCard(card("b", "Java", 2)); // since moved to Chinese
+
+        final var fromView = new CategoryView(fc, List.of("Java"));
+        final var toView = new CategoryView(wiki, List.of("Java"));
+        fromView.widen(toView);
+        toView.widen(fromView);
+        Sync.deleteExtraCards(fromView, toView);
+        Sync.update(fromView, toView);
+
+        assertEquals(List.of(1, 2), wiki.getIds());
+        assertEquals("Chinese", wiki.getCard(2).getData().get("Category 1"));
+    }
+
+    @Test
+    public void should_keepNotDelete_when_recategorizedCardUnloaded()
+    throws java.io.IOException
+    {
+        final String deck = "*\tname\tTest\r\n"
+            + "Text 1\tCategory 1\tNotes\r\n"
+            + "a\tJava\t1 : DO NOT MODIFY THIS LINE \r\n"
+            + "b\tChinese\t2 : DO NOT MODIFY THIS LINE \r\n";
+        final var fc = new FDFileData();
+        fc.setLoadFilter(FDRecord.inCategories(List.of("Java")));
+        fc.loadFrom(new java.io.BufferedReader(new java.io.StringReader(deck)));
+        final var wiki = new WikiData();
+        wiki.addCard(card("a", "Java", 1));
+        wiki.addCard(card("b", "Java", 2)); // since moved to Chinese
+
+        final var fromView = new CategoryView(fc, List.of("Java"));
+        final var toView = new CategoryView(wiki, List.of("Java"));
+        fromView.widen(toView);
+        toView.widen(fromView);
+        Sync.deleteExtraCards(fromView, toView);
+        final int updated = Sync.update(fromView, toView);
+
+        assertEquals(List.of(1, 2), wiki.getIds());
+        assertEquals(1, updated);
+        assertFalse(SyncPlan.of(fromView, toView, false, false, true, true,
+                                false).getDeletes().contains(2));
+    }
+
+    @Test
+    public void should_idCardsInCategory_when_cardsDeletedSinceViewMade()
+    {
+        final var fc = new FDCards();
+        fc.addCard(card("a", "Chinese", 1));
+        fc.addCard(card("b", "Java", null));
+        fc.addCard(card("c", "Chinese", null));
+        final var view = new CategoryView(fc, List.of("Java"));
+
+        fc.deleteCards(List.of(1));
+        final List<Integer> assigned = view.markBlankIds(null);
+
+        assertEquals(1, assigned.size());
+        assertEquals(Arrays.asList(assigned.get(0), null), fc.getIds());
+        assertEquals("b", fc.getCard(assigned.get(0)).getData().get("Text 1"));
+    }
+}
@@ -0,0 +1,115 @@
+package fdshow;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stress tests the ConcurrentHolder class
+ */
+public class ConcurrentHolderTest
+{
+    private static final int READERS = 6;
+    private static final int WRITES = 2000;
+
+    /**
+     * Runs readers against a writer that adds, updates and deletes cards,
+     * checking that every read sees a consistent holder.
+     */
+    private static void stress(final CardsHolder underlying)
+    throws Exception
+    {
+        final var holder = new ConcurrentHolder(underlying);
+        for (int id = 0; id < 100; id++) {
+            holder.addCard(new SimpleCard("q" + id + ":a" + id, id));
+        }
+        final ExecutorService pool = Executors.newFixedThreadPool(READERS + 1);
+        final var start = new CountDownLatch(1);
+        final var done = new AtomicBoolean();
+        try {
+            final List<Future<Integer>> readers = new ArrayList<>();
+            for (int r = 0; r < READERS; r++) {
+                final int seed = r;
+                readers.add(pool.submit(() -> {
+                    start.await();
+                    int reads = 0;
+                    for (int i = seed; !done.get() || reads < 100; i += 7) {
+                        final int id = i % (WRITES + 100);
+                        final Card c = holder.getCard(id);
+                        if (c != null) {
+                            assertEquals(id, c.getId().intValue());
+                            assertTrue(c.getData().get("Text 1").startsWith("q" + id));
+                        }
+                        final var ids = holder.getIds();
+                        assertEquals(ids.size(), new HashSet<>(ids).size());
+                        holder.contains(id);
+                        reads++;
+                    }
+                    return reads;
+                }));
+            }
+            final Future<?> writer = pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < WRITES; i++) {
+                    final int id = 100 + i;
+                    holder.addCard(new SimpleCard("q" + id + ":a", id));
+                    holder.updateCard(new SimpleCard("q" + id + " again:b", id));
+                    if (i % 3 == 0) {
+                        holder.deleteCards(List.of(i));
+                    }
+                }
+                done.set(true);
+                return null;
+            });
+            start.countDown();
+            writer.get(60, TimeUnit.SECONDS);
+            for (Future<Integer> reader : readers) {
+                assertTrue(reader.get(60, TimeUnit.SECONDS) >= 100);
+            }
+        } finally {
+            done.set(true);
+            pool.shutdownNow();
+        }
+        final int deleted = (WRITES + 2) / 3;
+        assertEquals(WRITES + 100 - deleted, holder.getCountOfIds());
+        assertTrue(holder.getCard(WRITES + 99).getData()
+                         .get("Text 1").endsWith("again"));
+    }
+
+    @Test
+    public void should_keepFlashcardsConsistent_when_readAndChangedByManyThreads()
+    throws Exception
+    {
+        stress(new FDCards());
+    }
+
+    @Test
+    public void should_keepWikiConsistent_when_readAndChangedByManyThreads()
+    throws Exception
+    {
+        stress(new WikiData());
+    }
+
+    @Test
+    public void should_runAtomicallyWithNestedCalls()
+    {
+        final var holder = new ConcurrentHolder(new FDCards());
+        holder.addCard(new SimpleCard("a:b", null));
+        final var ids = holder.atomically(() -> {
+            final var assigned = holder.markBlankIds();
+            assigned.forEach(id -> holder.updateCard(new SimpleCard("c:d", id)));
+            return assigned;
+        });
+        assertEquals(1, ids.size());
+        assertEquals("c", holder.getCard(ids.get(0)).getData().get("Text 1"));
+    }
+}
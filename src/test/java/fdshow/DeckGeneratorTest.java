@@ -0,0 +1,81 @@
+package fdshow;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Objects;
+
+import picocli.CommandLine;
+
+/**
+ * Tests the DeckGenerator class
+ */
+public class DeckGeneratorTest
+{
+    @TempDir
+    Path dir;
+
+    private void generate(final File deck, final File wiki, final String seed)
+    {
+        assertEquals(0, new CommandLine(new DeckGenerator()).execute(
+            "--cards", "500", "--drift", "0.2", "--seed", seed,
+            deck.getPath(), wiki.getPath()));
+    }
+
+    @Test
+    public void should_generateFilesThatLoad()
+    throws Exception
+    {
+        final File deck = dir.resolve("deck.txt").toFile();
+        final File wiki = dir.resolve("wiki.html").toFile();
+        generate(deck, wiki, "3");
+
+        final var fc = new FDFileData();
+        fc.loadFrom(FileIO.openReader(deck));
+        final var wd = new WikiData();
+        wd.loadFrom(FileIO.openReader(wiki));
+
+        // saves back exactly, quoting and all
+        final var out = new ByteArrayOutputStream();
+        fc.saveTo(out);
+        assertArrayEquals(Files.readAllBytes(deck.toPath()), out.toByteArray());
+
+        final var fcIds = fc.getIds();
+        final long unIded = fcIds.stream().filter(Objects::isNull).count();
+        assertTrue(unIded > 0);
+        final var wikiOnly = new ArrayList<>(wd.getIds());
+        wikiOnly.removeAll(fcIds);
+        assertFalse(wikiOnly.isEmpty());
+        assertEquals(500, fcIds.size() + wikiOnly.size());
+        assertEquals(fcIds.size() - unIded + wikiOnly.size(), wd.getCountOfIds());
+
+        final String text = Files.readString(deck.toPath());
+        assertTrue(text.contains("Pronunciation: "));
+        assertTrue(text.contains("\"\""));
+        assertTrue(text.contains("\r\n\r\n"));
+    }
+
+    @Test
+    public void should_generateTheSameFiles_when_givenTheSameSeed()
+    throws Exception
+    {
+        final File deck1 = dir.resolve("deck1.txt").toFile();
+        final File deck2 = dir.resolve("deck2.txt").toFile();
+        final File deck3 = dir.resolve("deck3.txt").toFile();
+        generate(deck1, dir.resolve("wiki1.html").toFile(), "7");
+        generate(deck2, dir.resolve("wiki2.html").toFile(), "7");
+        generate(deck3, dir.resolve("wiki3.html").toFile(), "8");
+        assertArrayEquals(Files.readAllBytes(deck1.toPath()),
+                          Files.readAllBytes(deck2.toPath()));
+        assertArrayEquals(Files.readAllBytes(dir.resolve("wiki1.html")),
+                          Files.readAllBytes(dir.resolve("wiki2.html")));
+        assertFalse(Files.readString(deck1.toPath())
+                         .equals(Files.readString(deck3.toPath())));
+    }
+}
@@ -0,0 +1,89 @@
+package fdshow;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Tests the DeckStatistics class
+ */
+public class DeckStatisticsTest
+{
+    private static Card card(final String stats, final Integer id) {
+        final var data = new HashMap<String, String>();
+        data.put("Text 1", "front");
+        if (stats != null) {
+            data.put("Statistics 1", stats);
+        }
+        return new Card(data, id);
+    }
+
+    @Test
+    public void should_decodeColumnsAndReviewTime()
+    {
+        final List<Card> cards = new ArrayList<>();
+        cards.add(card("1,0,0,0,1,2,0,2020-06-10 13:21,", 7));
+        cards.add(card(null, null));
+        final var stats = new DeckStatistics(cards);
+
+        assertEquals(2, stats.size());
+        assertEquals(7, stats.columnCount());
+        assertEquals(1, stats.value(DeckStatistics.REVIEW_COLUMN, 0));
+        assertEquals(2, stats.value(DeckStatistics.INTERVAL_COLUMN, 0));
+        assertEquals(0, stats.value(DeckStatistics.REVIEW_COLUMN, 1));
+        assertEquals(Integer.valueOf(7), stats.id(0));
+        assertNull(stats.id(1));
+        // 2020-06-10T13:21Z is 1591795260 seconds after the epoch
+        assertEquals(1591795260L / 60, stats.lastReview(0));
+        assertEquals(DeckStatistics.NEVER, stats.lastReview(1));
+    }
+
+    @Test
+    public void should_histogramReviewCounts()
+    {
+        final List<Card> cards = new ArrayList<>();
+        cards.add(card("1,0,0,0,1,2,0,2020-06-10 13:21,", null));
+        cards.add(card("3,0,0,0,1,2,0,2020-06-10 13:21,", null));
+        cards.add(card("1,0,0,0,1,2,0,2020-06-10 13:21,", null));
+        cards.add(card("", null));
+        assertArrayEquals(
+            new int[] {1, 2, 0, 1},
+            new DeckStatistics(cards).reviewHistogram());
+    }
+
+    @Test
+    public void should_listDueCardsSoonestFirst()
+    {
+        final List<Card> cards = new ArrayList<>();
+        cards.add(card("1,0,0,0,1,9,0,2020-06-10 13:21,", 1));
+        cards.add(card("1,0,0,0,1,2,0,2020-06-11 13:21,", 2));
+        cards.add(card("1,0,0,0,1,1,0,2020-06-10 13:21,", 3));
+        cards.add(card(null, 4));
+        final var stats = new DeckStatistics(cards);
+        final String now = "2020-06-13 13:21";
+        final long asOf = DeckStatistics.epochMinute(now, 0, now.length());
+        assertArrayEquals(new int[] {2, 1}, stats.dueBy(asOf));
+    }
+
+    @Test
+    public void should_readTestDeck()
+    throws java.io.IOException
+    {
+        final FDFileData fcData = new FDFileData();
+        fcData.loadFrom(
+            new BufferedReader(new FileReader(new File(FDData.NAME))));
+        final var stats = new DeckStatistics(fcData.getCards());
+        assertEquals(FDData.RECORDS, stats.size());
+        assertEquals(2, stats.reviewHistogram()[1]);
+        final int[] deckStats = DeckStatistics.parseDeckStats(
+            fcData.getHeader().getValue("deck-stats-1"));
+        assertEquals(3327, deckStats[0]);
+        assertEquals(3231, deckStats[deckStats.length - 1]);
+    }
+}
@@ -148,4 +148,89 @@ public class FDFileDataTest
         final var newIds2 = fcData.markBlankIds();
         assertEquals(newIds1,newIds2);
     }
+
+    @Test
+    public void should_updateInPlace_when_syncingFromWiki()
+    throws java.io.FileNotFoundException, java.io.IOException
+    {
+        final FDFileData fcData = new FDFileData();
+        fcData.loadFrom(new BufferedReader(new FileReader(new File(FDData.NAME))));
+        final var ids = fcData.markBlankIds();
+        final Integer target = ids.get(2);
+        final String statistics =
+            fcData.getCard(target).getData().get("Statistics 1");
+
+        // the wiki shows the card without its statistics
+        final var wd = new WikiData();
+        wd.addCard(new SimpleCard("New front:New back", target));
+        assertEquals(1, Sync.update(wd, fcData));
+
+        final Card updated = fcData.getCard(target);
+        assertEquals("New front", updated.getData().get("Text 1"));
+        assertEquals(statistics, updated.getData().get("Statistics 1"));
+        assertEquals(ids, fcData.getIds());
+
+        // the header and other cards are written back as they were
+        final var out = new java.io.ByteArrayOutputStream();
+        fcData.saveTo(out);
+        final FDFileData reread = new FDFileData();
+        reread.loadFrom(new BufferedReader(new StringReader(out.toString())));
+        assertEquals(fcData.getHeader().toString(), reread.getHeader().toString());
+        assertEquals(ids, reread.getIds());
+        assertEquals(fcData.getCard(ids.get(0)), reread.getCard(ids.get(0)));
+        assertEquals("New front", reread.getCard(target).getData().get("Text 1"));
+
+        assertThrows(IllegalArgumentException.class,
+            () -> fcData.updateCard(new SimpleCard("a:b", Integer.MAX_VALUE)));
+    }
+
+    @Test
+    public void should_writePlainText_when_syncingMarkupFromSavedWiki()
+    throws Exception
+    {
+        final String nl = System.lineSeparator();
+        final FDFileData fcData = new FDFileData();
+        fcData.loadFrom(new BufferedReader(new StringReader(
+            "*\tname\tTest\r\n"
+            + "Text 1\tText 2\tText 3\tStatistics 1\tNotes\r\n"
+            + "old\tback\tto be cleared\t3,1,0\t")));
+        final Integer id = fcData.markBlankIds().get(0);
+
+        // a wiki card edited to have markup characters over two lines
+        // and no Text 3, saved and read back as a sync would
+        final var edited = new java.util.HashMap<String, String>();
+        edited.put("Text 1", "a & b <i>c</i>" + nl + "second  line");
+        edited.put("Text 2", "back");
+        final var wd = new WikiData();
+        wd.addCard(new Card(edited, id));
+        final File wikiFile = Files.createTempFile("wiki", ".html").toFile();
+        wikiFile.deleteOnExit();
+        wd.saveTo(wikiFile);
+        final var reread = new WikiData();
+        reread.loadFrom(FileIO.openReader(wikiFile));
+
+        assertTrue(fcData.wouldChange(reread.getCard(id)));
+        assertEquals(1, Sync.update(reread, fcData));
+        final Map<String, String> updated = fcData.getCard(id).getData();
+        assertEquals("a & b <i>c</i>" + nl + "second line", updated.get("Text 1"));
+        assertEquals("", updated.get("Text 3"));
+        assertEquals("3,1,0", updated.get("Statistics 1"));
+        assertFalse(fcData.wouldChange(reread.getCard(id)));
+    }
+
+    @Test
+    public void should_throw_when_streamCantBeWritten()
+    throws Exception
+    {
+        final FDFileData fcData = new FDFileData();
+        fcData.loadFrom(new BufferedReader(new FileReader(new File(FDData.NAME))));
+        final var failing = new java.io.OutputStream() {
+            @Override
+            public void write(final int b) throws java.io.IOException {
+                throw new java.io.IOException("No space left on device");
+            }
+        };
+        assertThrows(java.io.UncheckedIOException.class,
+                     () -> fcData.saveTo(failing));
+    }
 }
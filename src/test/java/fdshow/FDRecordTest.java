@@ -0,0 +1,110 @@
+package fdshow;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Tests the FDRecord class, and loading only some records with it
+ */
+public class FDRecordTest
+{
+    private static final String HEADER = "*\tname\tTest\r\n"
+        + "Text 1\tCategory 1\tNotes\r\n";
+
+    @Test
+    public void should_tokenizeQuotedFieldsAndIds()
+    {
+        final var fields = new FieldNames(new String[] {"f1", "f2", "Notes"});
+        final var rec = new FDRecord(fields);
+        rec.readFrom(new StringReader(
+            "a\t\"b\"\"\r\nc\"\t42 : DO NOT MODIFY THIS LINE note\r\nnext"));
+        assertEquals("a", rec.field(0));
+        assertEquals("b\"" + System.lineSeparator() + "c", rec.field("f2"));
+        assertEquals(Integer.valueOf(42), rec.getId());
+        assertEquals("note", rec.toMap().get("Notes"));
+        assertEquals("a\t\"b\"\"\r\nc\"\t42 : DO NOT MODIFY THIS LINE note",
+                     rec.rawText());
+    }
+
+    @Test
+    public void should_loadOnlyMatchingCards()
+    throws java.io.IOException
+    {
+        final String deck = HEADER
+            + "a\tJava\t1 : DO NOT MODIFY THIS LINE \r\n"
+            + "b\tChinese\t2 : DO NOT MODIFY THIS LINE \r\n"
+            + "c\tJava\t\r\n";
+        final var fc = new FDFileData();
+        fc.setLoadFilter(FDRecord.inCategories(Arrays.asList("Java")));
+        fc.loadFrom(new BufferedReader(new StringReader(deck)));
+
+        assertTrue(fc.isPartiallyLoaded());
+        assertEquals(Arrays.asList(1, null), fc.getIds());
+        assertNull(fc.getCard(2));
+        // the skipped card's ID is not reused
+        assertEquals(Arrays.asList(3), fc.markBlankIds());
+        assertThrows(IllegalArgumentException.class,
+                     () -> fc.addCard(new SimpleCard("x:y", 2)));
+    }
+
+    @Test
+    public void should_keepSkippedIdsReserved_when_cardsDeleted()
+    throws java.io.IOException
+    {
+        final String deck = HEADER
+            + "a\tJava\t1 : DO NOT MODIFY THIS LINE \r\n"
+            + "b\tChinese\t2 : DO NOT MODIFY THIS LINE \r\n"
+            + "c\tJava\t3 : DO NOT MODIFY THIS LINE \r\n";
+        final var fc = new FDFileData();
+        fc.setLoadFilter(FDRecord.inCategories(Arrays.asList("Java")));
+        fc.loadFrom(new BufferedReader(new StringReader(deck)));
+        fc.deleteCards(Arrays.asList(1));
+
+        assertEquals(Arrays.asList(3), fc.getIds());
+        assertEquals("c", fc.getCard(3).getField("Text 1"));
+        assertNull(fc.getCard(2));
+        assertThrows(IllegalArgumentException.class,
+                     () -> fc.addCard(new SimpleCard("x:y", 2)));
+    }
+
+    @Test
+    public void should_filterOnIds()
+    {
+        final String deck = HEADER
+            + "a\tJava\t1 : DO NOT MODIFY THIS LINE \r\n"
+            + "b\tJava\t5 : DO NOT MODIFY THIS LINE \r\n"
+            + "c\tJava\t\r\n";
+        final var fc = new FDFileData();
+        fc.setLoadFilter(FDRecord.idBetween(2, 9));
+        fc.loadFrom(new BufferedReader(new StringReader(deck)));
+        assertEquals(Arrays.asList(5), fc.getIds());
+
+        fc.setLoadFilter(FDRecord.hasId());
+        fc.loadFrom(new BufferedReader(new StringReader(deck)));
+        assertEquals(Arrays.asList(1, 5), fc.getIds());
+    }
+
+    @Test
+    public void should_saveSkippedCardsUnchanged()
+    throws java.io.IOException
+    {
+        final File fcFile = new File(FDData.NAME);
+        final var fc = new FDFileData();
+        fc.setLoadFilter(FDRecord.hasId()); // the test deck has no IDs
+        fc.loadFrom(new BufferedReader(new FileReader(fcFile)));
+        assertEquals(0, fc.getCards().size());
+
+        final var out = new ByteArrayOutputStream();
+        fc.saveTo(out);
+        assertArrayEquals(Files.readAllBytes(fcFile.toPath()),
+                          out.toByteArray());
+    }
+}
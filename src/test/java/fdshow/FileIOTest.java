@@ -0,0 +1,117 @@
+package fdshow;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Tests the FileIO, ParallelGzipOutputStream and PipelinedFileOutputStream
+ * classes
+ */
+public class FileIOTest
+{
+    @TempDir
+    Path dir;
+
+    @Test
+    public void should_gzipInOrder_when_manyBlocks()
+    throws Exception
+    {
+        final var data = new ByteArrayOutputStream();
+        for (int i = 0; i < 100_000; i++) {
+            data.write(("line " + i + "\r\n").getBytes());
+        }
+        final File file = dir.resolve("data.gz").toFile();
+        try (var out = new ParallelGzipOutputStream(
+                 new java.io.FileOutputStream(file), 4096)) {
+            final byte[] bytes = data.toByteArray();
+            out.write(bytes, 0, 1000);
+            out.write(bytes[1000]);
+            out.write(bytes, 1001, bytes.length - 1001);
+        }
+        try (var in = new GZIPInputStream(new FileInputStream(file))) {
+            assertArrayEquals(data.toByteArray(), in.readAllBytes());
+        }
+        assertTrue(file.length() < data.size() / 3);
+    }
+
+    @Test
+    public void should_writeInOrder_when_manyBuffers()
+    throws Exception
+    {
+        final var data = new ByteArrayOutputStream();
+        for (int i = 0; i < 100_000; i++) {
+            data.write(("line " + i + "\r\n").getBytes());
+        }
+        final byte[] bytes = data.toByteArray();
+        final File file = dir.resolve("data.txt").toFile();
+        final var out = new PipelinedFileOutputStream(file, 4096, 2);
+        out.write(bytes, 0, 1000);
+        out.write(bytes[1000]);
+        out.flush();
+        out.write(bytes, 1001, bytes.length - 1001);
+        out.close();
+
+        assertArrayEquals(bytes, Files.readAllBytes(file.toPath()));
+        assertThrows(java.io.IOException.class, () -> out.write('x'));
+    }
+
+    @Test
+    public void should_writeValidGzip_when_empty()
+    throws Exception
+    {
+        final File file = dir.resolve("empty.gz").toFile();
+        new ParallelGzipOutputStream(new java.io.FileOutputStream(file)).close();
+        try (var in = new GZIPInputStream(new FileInputStream(file))) {
+            assertEquals(0, in.readAllBytes().length);
+        }
+    }
+
+    @Test
+    public void should_roundTripCompressedDeckAndWiki()
+    throws Exception
+    {
+        final var deck = new FDFileData();
+        deck.loadFrom(FileIO.openReader(new File(FDData.NAME)));
+        final File gzDeck = dir.resolve("deck.txt.gz").toFile();
+        deck.saveTo(gzDeck);
+        assertTrue(gzDeck.length() < FDData.SIZE);
+        final var reread = new FDFileData();
+        reread.loadFrom(FileIO.openReader(gzDeck));
+        final File plainDeck = dir.resolve("deck.txt").toFile();
+        reread.saveTo(plainDeck);
+        assertArrayEquals(Files.readAllBytes(Path.of(FDData.NAME)),
+                          Files.readAllBytes(plainDeck.toPath()));
+
+        final var wiki = new WikiData();
+        wiki.addCard(new SimpleCard("front:back", 1));
+        final File gzWiki = dir.resolve("wiki.html.gz").toFile();
+        wiki.saveTo(gzWiki);
+        final var rereadWiki = new WikiData();
+        rereadWiki.loadFrom(FileIO.openReader(gzWiki));
+        assertEquals(wiki.getCards(), rereadWiki.getCards());
+        assertEquals("wiki.html", FileIO.plainName(gzWiki));
+    }
+
+    @Test
+    public void should_throw_when_diskIsFull()
+    throws Exception
+    {
+        final File full = new File("/dev/full");
+        assumeTrue(full.exists());
+        final var deck = new FDFileData();
+        deck.loadFrom(FileIO.openReader(new File(FDData.NAME)));
+        assertThrows(java.io.IOException.class, () -> deck.saveTo(full));
+        final var wiki = new WikiData();
+        wiki.addCard(new SimpleCard("front:back", 1));
+        assertThrows(java.io.IOException.class, () -> wiki.saveTo(full));
+    }
+}
@@ -0,0 +1,62 @@
+package fdshow;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Tests the FlightEvents class
+ */
+public class FlightEventsTest
+{
+    @TempDir
+    Path dir;
+
+    @Test
+    public void should_beDisabled_when_notRecording()
+    {
+        assertFalse(new FlightEvents.CardParse().isEnabled());
+        assertFalse(new FlightEvents.WikiCard().isEnabled());
+        assertFalse(new FlightEvents.SyncPhase().isEnabled());
+    }
+
+    @Test
+    public void should_recordCardsAndPhases()
+    throws Exception
+    {
+        final Path file = dir.resolve("sync.jfr");
+        final var recording = FlightEvents.startRecording();
+        try {
+            final var flashCards = new FDFileData();
+            flashCards.loadFrom(
+                new BufferedReader(new FileReader(FDData.NAME)));
+            final var wiki = new WikiData();
+            Sync.markAndAddNewCards(flashCards, wiki);
+            wiki.deleteCards(List.of(Integer.MIN_VALUE));
+        } finally {
+            FlightEvents.finishRecording(recording, file);
+        }
+
+        final Map<String, Integer> counts = new HashMap<>();
+        for (RecordedEvent e : RecordingFile.readAllEvents(file)) {
+            counts.merge(e.getEventType().getName(), 1, Integer::sum);
+            if (e.getEventType().getName().equals("fdshow.SyncPhase")) {
+                assertEquals("markAndAddNewCards", e.getString("phase"));
+                assertEquals(FDData.RECORDS, e.getInt("cards"));
+            }
+        }
+        assertEquals(FDData.RECORDS, counts.get("fdshow.CardParse"));
+        assertTrue(counts.get("fdshow.WikiCard") > FDData.RECORDS);
+        assertEquals(1, counts.get("fdshow.SyncPhase"));
+    }
+}
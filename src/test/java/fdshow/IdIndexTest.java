@@ -0,0 +1,64 @@
+package fdshow;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests the IdIndex class
+ */
+public class IdIndexTest
+{
+    @Test
+    public void should_keepLoadedFlag_when_idsAdded()
+    {
+        final var index = new IdIndex();
+        index.put(Integer.MIN_VALUE, 0, true);
+        index.put(7, 1, false);
+
+        assertEquals(0, index.position(Integer.MIN_VALUE));
+        assertTrue(index.isLoaded(Integer.MIN_VALUE));
+        assertFalse(index.isUnloaded(Integer.MIN_VALUE));
+        assertEquals(1, index.position(7));
+        assertFalse(index.isLoaded(7));
+        assertTrue(index.isUnloaded(7));
+        assertEquals(IdIndex.ABSENT, index.position(8));
+        assertFalse(index.isLoaded(8));
+        assertFalse(index.isUnloaded(8));
+        assertFalse(index.putIfAbsent(7, 5, true));
+        assertEquals(1, index.position(7));
+        assertEquals(7, index.maxId().getAsInt());
+    }
+
+    @Test
+    public void should_matchHashMap_when_manyIdsAddedAndRemoved()
+    {
+        final var random = new Random(42);
+        final var index = new IdIndex();
+        final Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            final int id = Integer.MIN_VALUE + random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                index.remove(id);
+                expected.remove(id);
+            } else {
+                index.put(id, i, true);
+                expected.put(id, i);
+            }
+        }
+
+        assertEquals(expected.size(), index.size());
+        for (int id = Integer.MIN_VALUE; id < Integer.MIN_VALUE + 5000; id++) {
+            assertEquals(expected.getOrDefault(id, IdIndex.ABSENT),
+                         index.position(id), "ID " + id);
+        }
+        assertEquals(expected.keySet().stream().mapToInt(x -> x).max(),
+                     index.maxId());
+        index.clear();
+        assertEquals(0, index.size());
+        assertTrue(index.maxId().isEmpty());
+    }
+}
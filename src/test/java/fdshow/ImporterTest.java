@@ -0,0 +1,84 @@
+package fdshow;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import picocli.CommandLine;
+
+/**
+ * Tests the Importer class
+ */
+public class ImporterTest
+{
+    @TempDir
+    Path dir;
+
+    private static List<String> field(final CardsHolder holder, final String name)
+    {
+        return holder.getCards()
+                     .stream()
+                     .map(c -> c.getData().get(name))
+                     .collect(Collectors.toList());
+    }
+
+    @Test
+    public void should_splitCsvColumns_when_quoted()
+    {
+        assertArrayEquals(new String[] {"a", "b, c", "say \"hi\"", ""},
+            Importer.columns("a,\"b, c\",\"say \"\"hi\"\"\",", Importer.Format.CSV));
+        assertArrayEquals(new String[] {"front", "back"},
+            Importer.columns("front:back", Importer.Format.COLON));
+    }
+
+    @Test
+    public void should_importCsvWithHeader_when_targetIsFlashcards()
+    throws Exception
+    {
+        final File deck = dir.resolve("deck.txt").toFile();
+        Files.writeString(deck.toPath(),
+            "*\tname\tImported\r\nText 1\tText 2\tNotes\r\n");
+        final File input = dir.resolve("cards.csv").toFile();
+        Files.writeString(input.toPath(),
+            "Text 1,Text 2\n"
+            + "one,uno\n"
+            + "\n"
+            + "two,\"dos\nand more\"\n"
+            + "three,tres,extra\n"
+            + "four,cuatro\n");
+
+        assertEquals(0, new CommandLine(new Importer()).execute(
+            "--header", "--batch", "2", input.getPath(), deck.getPath()));
+
+        final var fc = new FDFileData();
+        fc.loadFrom(FileIO.openReader(deck));
+        assertEquals(List.of("one", "two", "four"), field(fc, "Text 1"));
+        assertEquals("dos" + System.lineSeparator() + "and more",
+                     field(fc, "Text 2").get(1));
+        assertEquals(List.of("", "", ""), field(fc, "Notes"));
+        assertTrue(dir.resolve("deck.txt.bak1.gz").toFile().exists());
+    }
+
+    @Test
+    public void should_importColonLines_when_targetIsNewWiki()
+    throws Exception
+    {
+        final File wiki = dir.resolve("wiki.html").toFile();
+        final File input = dir.resolve("cards.txt").toFile();
+        Files.writeString(input.toPath(), "A:B\nC:D:E\n");
+
+        assertEquals(0, new CommandLine(new Importer()).execute(
+            input.getPath(), wiki.getPath()));
+
+        final var wd = new WikiData();
+        wd.loadFrom(FileIO.openReader(wiki));
+        assertEquals(List.of("A", "C"), field(wd, "Text 1"));
+        assertEquals("E", wd.getCards().get(1).getData().get("Text 3"));
+    }
+}
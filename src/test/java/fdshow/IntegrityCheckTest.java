@@ -0,0 +1,168 @@
+package fdshow;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+import picocli.CommandLine;
+
+/**
+ * Tests the IntegrityCheck class
+ */
+public class IntegrityCheckTest
+{
+    @TempDir
+    Path dir;
+
+    private static final String HEADER =
+        "*\tname\tTest\r\n"
+        + "Text 1\tText 2\tNotes\r\n";
+
+    private static List<String> problems(final IntegrityCheck.Result result)
+    {
+        return result.problems.stream()
+                              .map(Object::toString)
+                              .collect(Collectors.toList());
+    }
+
+    @Test
+    public void should_findNoProblems_when_deckIsGenerated()
+    throws Exception
+    {
+        final File deck = dir.resolve("deck.txt").toFile();
+        final File wiki = dir.resolve("wiki.html").toFile();
+        new CommandLine(new DeckGenerator()).execute(
+            "--cards", "300", "--drift", "0", deck.getPath(), wiki.getPath());
+        final String text = Files.readString(deck.toPath());
+
+        for (int chunkSize : new int[] {1, 7, 64, IntegrityCheck.CHUNK_SIZE}) {
+            final var result = IntegrityCheck.checkDeck(
+                "d", new StringReader(text), chunkSize);
+            assertEquals(List.of(), problems(result), "chunk size " + chunkSize);
+            assertEquals(300, result.cards);
+        }
+        final var wikiResult = IntegrityCheck.check(wiki);
+        assertEquals(List.of(), problems(wikiResult));
+        assertTrue(wikiResult.cards > 200);
+    }
+
+    @Test
+    public void should_reportLocations_when_deckIsDamaged()
+    throws Exception
+    {
+        final String text = HEADER
+            + "a\t\"two\r\nlines\"\t1 : DO NOT MODIFY THIS LINE \r\n"
+            + "b\tsay \"hi\"\t2 : DO NOT MODIFY THIS LINE \r\n"
+            + "c\t\"x\"y\t1 : DO NOT MODIFY THIS LINE \r\n"
+            + "d\tonly two\r\n"
+            + "e\tf\t12x : DO NOT MODIFY THIS LINE notes\r\n";
+
+        for (int chunkSize : new int[] {1, 5, 1000}) {
+            final var result = IntegrityCheck.checkDeck(
+                "d", new StringReader(text), chunkSize);
+            assertEquals(List.of(
+                "d:5:7: quote in a field that isn't quoted",
+                "d:6:1: duplicate ID 1, first used at d:3",
+                "d:6:6: text after closing quote",
+                "d:7:1: 2 fields where there should be 3",
+                "d:8:5: malformed ID '12x'"),
+                problems(result), "chunk size " + chunkSize);
+            assertEquals(5, result.cards);
+        }
+    }
+
+    @Test
+    public void should_reportUnclosedQuote_when_lastFieldNeverCloses()
+    throws Exception
+    {
+        final var result = IntegrityCheck.checkDeck(
+            "d", new StringReader(HEADER + "a\tb\t\"never closed\r\nmore"),
+            1000);
+
+        assertEquals(List.of("d:3:5: quote is never closed"), problems(result));
+    }
+
+    @Test
+    public void should_streamGzippedDeck_when_recordsSpanWindows()
+    throws Exception
+    {
+        final File deck = dir.resolve("deck.txt.gz").toFile();
+        final String longField = "\"" + "x\r\n".repeat(1000) + "\"";
+        try (Writer w = new OutputStreamWriter(
+                 new GZIPOutputStream(new FileOutputStream(deck)),
+                 StandardCharsets.UTF_8)) {
+            w.write(HEADER);
+            for (int i = 1; i <= 2000; i++) {
+                w.write("a\t" + longField + "\t" + (i % 1000)
+                        + " : DO NOT MODIFY THIS LINE \r\n");
+            }
+        }
+
+        final var result = IntegrityCheck.check(deck);
+        assertEquals(2000, result.cards);
+        assertEquals(1000, result.problems.size());
+        assertEquals(deck + ":1001003:1: duplicate ID 1, first used at "
+                     + deck + ":3", problems(result).get(0));
+    }
+
+    @Test
+    public void should_reportIds_when_wikiIsDamaged()
+    throws Exception
+    {
+        final String text = "<html><body>\n"
+            + "<card id=\"-2147483648\"><field></field></card>\n"
+            + "<card id=\"x1\"></card> <card id=\"\"></card>\n"
+            + "<card></card><card id='-2147483648'></card>\n"
+            + "</body></html>\n";
+
+        for (int chunkSize : new int[] {1, 10, 1000}) {
+            final var result = IntegrityCheck.checkWiki(
+                "w", new StringReader(text), chunkSize);
+            assertEquals(List.of(
+                "w:1:1: no new-cards-here element, so no cards can be added",
+                "w:3:1: malformed card ID 'x1'",
+                "w:3:23: empty card ID",
+                "w:4:14: duplicate ID -2147483648, first used at w:2"),
+                problems(result), "chunk size " + chunkSize);
+            assertEquals(5, result.cards);
+        }
+    }
+
+    @Test
+    public void should_findDuplicatesAcrossPages_when_directory()
+    throws Exception
+    {
+        final var a = new WikiData();
+        a.addCard(new SimpleCard("A:B", 1));
+        a.saveTo(dir.resolve("a.html").toFile());
+        final var b = new WikiData();
+        b.addCard(new SimpleCard("C:D", 2));
+        b.addCard(new SimpleCard("E:F", 1));
+        b.saveTo(dir.resolve("b.html").toFile());
+
+        final var bytes = new ByteArrayOutputStream();
+        final int exit = new CommandLine(
+            new IntegrityCheck(new PrintStream(bytes, true, "UTF-8")))
+            .execute(dir.toString());
+
+        assertEquals(1, exit);
+        final String report = bytes.toString("UTF-8");
+        assertTrue(report.contains("duplicate ID 1, first used at "
+                                   + dir.resolve("a.html")), report);
+        assertTrue(report.contains(": 3 cards, 1 problem"), report);
+    }
+}
@@ -0,0 +1,76 @@
+package fdshow;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import javax.imageio.ImageIO;
+
+/**
+ * Tests the MediaCache class
+ */
+public class MediaCacheTest
+{
+    @TempDir
+    Path dir;
+
+    private Card pictureCard(final String picture) {
+        final var data = new HashMap<String, String>();
+        data.put("Text 1", "front");
+        data.put("Picture 1", picture);
+        return new Card(data, 1);
+    }
+
+    @Test
+    public void should_makeThumbnailsOnlyOnce()
+    throws Exception
+    {
+        final Path media = dir.resolve("media");
+        media.toFile().mkdirs();
+        ImageIO.write(new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB),
+                      "png", media.resolve("big.png").toFile());
+        final List<Card> cards = List.of(pictureCard("big.png"),
+                                         pictureCard("missing.png"));
+
+        final var first = new MediaCache(media.toFile(),
+            dir.resolve("thumbs").toFile(), dir.toFile());
+        first.prepare(cards);
+        assertEquals(1, first.getMadeCount());
+        final Path thumbnail = first.thumbnailFor("big.png");
+        final BufferedImage image = ImageIO.read(thumbnail.toFile());
+        assertEquals(MediaCache.THUMBNAIL_SIZE, image.getWidth());
+        assertEquals(MediaCache.THUMBNAIL_SIZE / 2, image.getHeight());
+        assertNull(first.thumbnailFor("missing.png"));
+
+        // a later run finds the thumbnail already made
+        final var second = new MediaCache(media.toFile(),
+            dir.resolve("thumbs").toFile(), dir.toFile());
+        second.prepare(cards);
+        assertEquals(0, second.getMadeCount());
+        assertEquals(thumbnail, second.thumbnailFor("big.png"));
+    }
+
+    @Test
+    public void should_linkThumbnailsFromWikiCards()
+    throws Exception
+    {
+        final Path media = dir.resolve("media");
+        media.toFile().mkdirs();
+        ImageIO.write(new BufferedImage(40, 20, BufferedImage.TYPE_INT_RGB),
+                      "png", media.resolve("small.png").toFile());
+        final var wd = new WikiData();
+        wd.setMediaCache(new MediaCache(media.toFile(),
+            dir.resolve("thumbs").toFile(), dir.toFile()));
+        wd.addCard(pictureCard("small.png"));
+
+        final String html = wd.toString();
+        assertTrue(html.contains("href=\"media/small.png\""), html);
+        assertTrue(html.contains("<img class=\"thumbnail\" src=\"thumbs/"), html);
+        // the card itself reads back unchanged
+        assertEquals("small.png", wd.getCard(1).getData().get("Picture 1"));
+    }
+}
@@ -0,0 +1,83 @@
+package fdshow;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests the OffHeapText and OffHeapCard classes,
+ * and FDCards with its text off the heap.
+ */
+public class OffHeapTextTest
+{
+    @Test
+    public void should_giveBackWhatWasPut()
+    {
+        final var text = new OffHeapText();
+        final String big = "é".repeat(OffHeapText.CHUNK_SIZE);
+        final long a = text.put("Shirky “principle”");
+        final long empty = text.put("");
+        final long none = text.put(null);
+        final long b = text.put(big);
+        final long c = text.put("after");
+
+        assertEquals("Shirky “principle”", text.get(a));
+        assertEquals("", text.get(empty));
+        assertNull(text.get(none));
+        assertEquals(big, text.get(b));
+        assertEquals("after", text.get(c));
+
+        text.release();
+        assertThrows(IllegalStateException.class, () -> text.get(a));
+    }
+
+    @Test
+    public void should_equalTheSameCardOnTheHeap()
+    {
+        final var fields = new FieldNames(new BufferedReader(
+            new StringReader("Text 1\tNotes\r\n")));
+        final Map<String, String> data = Map.of("Text 1", "a", "Notes", "n");
+        final var card = new OffHeapCard(data, 7, fields, new OffHeapText());
+        assertEquals(data, card.getData());
+        assertEquals("a", card.getField("Text 1"));
+        assertNull(card.getField("Text 2"));
+        assertEquals(new Card(data, 7), new Card(card));
+        assertEquals(new FDCard(data, 7, fields).toString(), card.toString());
+    }
+
+    @Test
+    public void should_saveUnchanged_when_textIsOffHeap()
+    throws IOException
+    {
+        final File fcFile = new File(FDData.NAME);
+        final var fc = new FDFileData();
+        fc.setTextOffHeap(true);
+        fc.loadFrom(new BufferedReader(new FileReader(fcFile)));
+        assertTrue(fc.getCards().get(0) instanceof OffHeapCard);
+
+        final var out = new ByteArrayOutputStream();
+        fc.saveTo(out);
+        assertArrayEquals(Files.readAllBytes(fcFile.toPath()),
+                          out.toByteArray());
+
+        final List<Integer> ids = fc.markBlankIds();
+        fc.updateCard(new Card(Map.of("Text 1", "updated"), ids.get(2)));
+        final Card updated = fc.getCard(ids.get(2));
+        assertEquals("updated", updated.getField("Text 1"));
+        assertNotNull(updated.getField("Text 2"));
+
+        // loading afresh lets go of the old text
+        fc.loadFrom(new BufferedReader(new FileReader(fcFile)));
+        assertThrows(IllegalStateException.class,
+                     () -> updated.getField("Text 1"));
+    }
+}
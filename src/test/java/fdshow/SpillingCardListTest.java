@@ -0,0 +1,155 @@
+package fdshow;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests the SpillingCardList class,
+ * and FDCards with its cards spilled.
+ */
+public class SpillingCardListTest
+{
+    @TempDir
+    Path dir;
+
+    /**
+     * Writes plain Cards as their ID and fields.
+     */
+    private static final SpillingCardList.Codec CODEC =
+        new SpillingCardList.Codec() {
+            @Override
+            public void write(final Card c, final DataOutputStream out)
+            throws IOException
+            {
+                out.writeBoolean(c.getId() != null);
+                out.writeInt(c.getId() == null ? 0 : c.getId());
+                out.writeInt(c.getData().size());
+                for (var e : c.getData().entrySet()) {
+                    SpillingCardList.writeString(e.getKey(), out);
+                    SpillingCardList.writeString(e.getValue(), out);
+                }
+            }
+
+            @Override
+            public Card read(final DataInputStream in) throws IOException
+            {
+                final boolean hasId = in.readBoolean();
+                final int id = in.readInt();
+                final Map<String, String> data = new HashMap<>();
+                for (int n = in.readInt(); n > 0; n--) {
+                    data.put(SpillingCardList.readString(in),
+                             SpillingCardList.readString(in));
+                }
+                return new Card(data, hasId ? id : null);
+            }
+        };
+
+    private static Card card(final String text, final Integer id)
+    {
+        return new Card(Map.of("Text 1", text), id);
+    }
+
+    @Test
+    public void should_behaveLikeAnArrayList_when_mostCardsAreSpilled()
+    throws IOException
+    {
+        final var expected = new ArrayList<Card>();
+        try (var spilled = new SpillingCardList(dir.toFile(), 2, CODEC)) {
+            for (int i = 0; i < 100; i++) {
+                final Card c = card("card " + i, i % 7 == 0 ? null : i);
+                expected.add(c);
+                spilled.add(c);
+            }
+            spilled.set(5, card("changed", 5));
+            expected.set(5, card("changed", 5));
+            spilled.add(10, card("inserted", null));
+            expected.add(10, card("inserted", null));
+            assertEquals(expected.remove(50), spilled.remove(50));
+            spilled.removeIf(c -> c.getField("Text 1").endsWith("3"));
+            expected.removeIf(c -> c.getField("Text 1").endsWith("3"));
+
+            assertEquals(expected, spilled);
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getId(), spilled.idAt(i));
+            }
+            assertThrows(IndexOutOfBoundsException.class,
+                         () -> spilled.get(expected.size()));
+        }
+        try (var files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void should_keepBigCards()
+    throws IOException
+    {
+        final String big = "x".repeat(SpillingCardList.CHUNK_SIZE / 2 + 1);
+        try (var spilled = new SpillingCardList(dir.toFile(), 0, CODEC)) {
+            spilled.add(card("small", 1));
+            spilled.add(card(big, 2));
+            spilled.add(card(big, 3));
+            assertEquals(big, spilled.get(2).getField("Text 1"));
+            assertEquals("small", spilled.get(0).getField("Text 1"));
+        }
+    }
+
+    @Test
+    public void should_saveUnchanged_when_deckIsSpilled()
+    throws IOException
+    {
+        final File fcFile = new File(FDData.NAME);
+        final var fc = new FDFileData();
+        fc.setSpillDirectory(dir.toFile());
+        fc.loadFrom(new BufferedReader(new FileReader(fcFile)));
+
+        final var out = new ByteArrayOutputStream();
+        fc.saveTo(out);
+        assertArrayEquals(Files.readAllBytes(fcFile.toPath()),
+                          out.toByteArray());
+
+        final List<Integer> ids = fc.markBlankIds();
+        assertEquals(FDData.RECORDS, ids.size());
+        assertEquals(ids, fc.getIds());
+        fc.updateCard(card("updated", ids.get(3)));
+        assertEquals("updated", fc.getCard(ids.get(3)).getField("Text 1"));
+        fc.deleteCards(Arrays.asList(ids.get(0), ids.get(1)));
+        assertEquals(ids.subList(2, ids.size()), fc.getIds());
+    }
+
+    @Test
+    public void should_keepTextOnlyInSpillFile_when_offHeapToo()
+    throws IOException
+    {
+        final var fc = new FDFileData();
+        fc.setSpillDirectory(dir.toFile());
+        fc.setTextOffHeap(true);
+        fc.loadFrom(new BufferedReader(new FileReader(new File(FDData.NAME))));
+        final List<Integer> ids = fc.markBlankIds();
+
+        for (int i = 0; i < 3; i++) {
+            assertFalse(fc.getCard(ids.get(0)) instanceof OffHeapCard);
+        }
+        final var out = new ByteArrayOutputStream();
+        fc.zapIds();
+        fc.saveTo(out);
+        assertArrayEquals(Files.readAllBytes(Path.of(FDData.NAME)),
+                          out.toByteArray());
+    }
+}
@@ -0,0 +1,53 @@
+package fdshow;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+
+/**
+ * Tests the StringDeduplicator class
+ */
+public class StringDeduplicatorTest
+{
+    @Test
+    public void should_shareEqualStrings()
+    {
+        final var dedup = new StringDeduplicator();
+        final String first = dedup.dedup(new StringBuilder("xJavax"), 1, 5);
+        final String second = dedup.dedup(new String("Java"));
+        assertEquals("Java", first);
+        assertSame(first, second);
+        assertEquals(1, dedup.getHits());
+        assertTrue(dedup.getBytesSaved() > 0);
+    }
+
+    @Test
+    public void should_stayWithinBounds()
+    {
+        final var dedup = new StringDeduplicator(2, 3);
+        // too long to be kept
+        assertNotSame(dedup.dedup(new String("long")),
+                      dedup.dedup(new String("long")));
+        dedup.dedup("a");
+        dedup.dedup("b");
+        // table is full, so "c" is not kept
+        assertNotSame(dedup.dedup(new String("c")),
+                      dedup.dedup(new String("c")));
+        assertSame(dedup.dedup("a"), dedup.dedup(new String("a")));
+    }
+
+    @Test
+    public void should_shareEmptyFieldsAcrossLoadedCards()
+    throws java.io.IOException
+    {
+        final FDFileData fcData = new FDFileData();
+        fcData.loadFrom(
+            new BufferedReader(new FileReader(new File(FDData.NAME))));
+        final var cards = fcData.getCards();
+        assertSame(cards.get(2).getField("Picture 1"),
+                   cards.get(3).getField("Picture 1"));
+    }
+}
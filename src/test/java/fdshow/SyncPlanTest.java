@@ -0,0 +1,94 @@
+package fdshow;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class SyncPlanTest
+{
+    /**
+     * Flashcards with cards 1 to 3, card 2 edited, and a new card.
+     * The wiki has cards 1 to 4.
+     */
+    private static CardsHolder[] holders()
+    {
+        var flashCards = new FDCards();
+        flashCards.addCard(new Card(new SimpleCard("A:B",1)));
+        flashCards.addCard(new Card(new SimpleCard("C:edited",2)));
+        flashCards.addCard(new Card(new SimpleCard("E:F",3)));
+        flashCards.addCard(new SimpleCard("new:card"));
+        var wiki = new WikiData();
+        wiki.addCard(new Card(new SimpleCard("A:B",1)));
+        wiki.addCard(new Card(new SimpleCard("C:D",2)));
+        wiki.addCard(new Card(new SimpleCard("E:F",3)));
+        wiki.addCard(new Card(new SimpleCard("G:H",4)));
+        return new CardsHolder[] {flashCards, wiki};
+    }
+
+    @Test
+    public void should_planEachStep_when_allStepsAsked()
+    {
+        var h = holders();
+        var plan = SyncPlan.of(h[0], h[1], false, true, true, true, true);
+
+        assertEquals(List.of(), plan.getMoves());
+        assertEquals(List.of(4), plan.getDeletes());
+        assertEquals(List.of(1, 2, 3), plan.getUpdates());
+        assertEquals(List.of(2), plan.getChanges());
+        assertEquals(1, plan.getAdds());
+    }
+
+    @Test
+    public void should_leaveHoldersUnchanged_when_planning()
+    {
+        var h = holders();
+        var expectedFrom = List.copyOf(h[0].getCards());
+        var expectedTo = new WikiData((WikiData) h[1]);
+
+        SyncPlan.of(h[0], h[1], false, true, true, true, true);
+
+        assertEquals(expectedFrom, h[0].getCards());
+        assertEquals(expectedTo, h[1]);
+    }
+
+    @Test
+    public void should_planMoves_when_wikiSyncedToFlashcards()
+    {
+        var h = holders();
+        var plan = SyncPlan.of(h[1], h[0], false, true, false, true, false);
+
+        assertEquals(List.of(4), plan.getMoves());
+        assertEquals(List.of(1, 2, 3, 4), plan.getUpdates());
+        assertEquals(List.of(2), plan.getChanges());
+    }
+
+    @Test
+    public void should_matchSync_when_planFollowed()
+    {
+        var h = holders();
+        var plan = SyncPlan.of(h[0], h[1], false, false, true, true, true);
+
+        Sync.deleteExtraCards(h[0], h[1]);
+        assertEquals(plan.getUpdates().size(), Sync.update(h[0], h[1]));
+        Sync.markAndAddNewCards(h[0], h[1]);
+
+        assertEquals(4, h[1].getCards().size());
+        assertEquals(new Card(h[0].getCard(2)).getData(),
+                     new Card(h[1].getCard(2)).getData());
+        assertFalse(h[1].wouldChange(h[0].getCard(2)));
+    }
+
+    @Test
+    public void should_clearIds_when_ignoringIds()
+    {
+        var h = holders();
+        var wiki = new WikiData();
+        var plan = SyncPlan.of(h[0], wiki, true, true, true, true, true);
+
+        assertEquals(List.of(), plan.getMoves());
+        assertEquals(List.of(), plan.getUpdates());
+        assertEquals(4, plan.getAdds());
+        assertTrue(plan.report().startsWith("clear all"));
+    }
+}
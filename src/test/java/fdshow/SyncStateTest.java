@@ -0,0 +1,57 @@
+package fdshow;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Tests the SyncState class
+ */
+public class SyncStateTest
+{
+    @TempDir
+    Path dir;
+
+    @Test
+    public void should_notice_when_eitherFileOrTheOptionsChange()
+    throws Exception
+    {
+        final File from = dir.resolve("deck.txt").toFile();
+        final File to = dir.resolve("wiki.html").toFile();
+        Files.writeString(from.toPath(), "cards");
+        Files.writeString(to.toPath(), "<html>");
+        final File state = SyncState.stateFileFor(to);
+
+        assertFalse(SyncState.unchanged(state, from, to, "-u"));
+        SyncState.record(state, from, to, "-u");
+        assertTrue(SyncState.unchanged(state, from, to, "-u"));
+        assertFalse(SyncState.unchanged(state, from, to, "-a"));
+
+        // same size, same time, different contents
+        final long modified = from.lastModified();
+        Files.writeString(from.toPath(), "CARDS");
+        from.setLastModified(modified);
+        assertFalse(SyncState.unchanged(state, from, to, "-u"));
+
+        // touched, but the contents are as recorded
+        SyncState.record(state, from, to, "-u");
+        from.setLastModified(modified + 10_000);
+        assertTrue(SyncState.unchanged(state, from, to, "-u"));
+
+        Files.writeString(to.toPath(), "<html></html>");
+        assertFalse(SyncState.unchanged(state, from, to, "-u"));
+    }
+
+    @Test
+    public void should_crcLikeUnmappedReading()
+    throws Exception
+    {
+        final var crc = new java.util.zip.CRC32C();
+        crc.update(Files.readAllBytes(Path.of(FDData.NAME)));
+        assertEquals(crc.getValue(), SyncState.crc(new File(FDData.NAME)));
+    }
+}
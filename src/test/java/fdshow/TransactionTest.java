@@ -0,0 +1,174 @@
+package fdshow;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Tests the Transaction class
+ */
+public class TransactionTest
+{
+    /**
+     * Flashcards with cards 1 to 3, card 2 edited, and two new cards.
+     */
+    private static FDCards flashCards()
+    {
+        var flashCards = new FDCards();
+        flashCards.addCard(new SimpleCard("A:B",1));
+        flashCards.addCard(new SimpleCard("C:edited",2));
+        flashCards.addCard(new SimpleCard("E:F",3));
+        flashCards.addCard(new SimpleCard("new:card"));
+        flashCards.addCard(new SimpleCard("another:new card"));
+        return flashCards;
+    }
+
+    /**
+     * A wiki with cards 1 to 5, card 2 unedited.
+     */
+    private static WikiData wiki()
+    {
+        var wiki = new WikiData();
+        wiki.addCard(new SimpleCard("A:B",1));
+        wiki.addCard(new SimpleCard("C:D",2));
+        wiki.addCard(new SimpleCard("E:F",3));
+        wiki.addCard(new SimpleCard("G:H",4));
+        wiki.addCard(new SimpleCard("I:J",5));
+        return wiki;
+    }
+
+    private static List<Card> cards(CardsHolder holder)
+    {
+        return holder.getCards()
+                     .stream()
+                     .map(c -> new Card(c))
+                     .collect(Collectors.toList());
+    }
+
+    private static void syncAll(CardsHolder from, CardsHolder to)
+    {
+        Sync.copyUnmatchedIdedCards(from, to);
+        Sync.deleteExtraCards(from, to);
+        Sync.update(from, to);
+        Sync.markAndAddNewCards(from, to);
+    }
+
+    @Test
+    public void should_restoreBoth_when_syncToWikiRolledBack()
+    {
+        var from = flashCards();
+        var to = wiki();
+        var fromBefore = cards(from);
+        var toBefore = to.toString();
+
+        try (var tx = new Transaction(from, to)) {
+            syncAll(from, to);
+            assertNotEquals(toBefore, to.toString());
+            assertTrue(tx.size() > 0);
+        }
+
+        assertEquals(fromBefore, cards(from));
+        assertEquals(toBefore, to.toString());
+        assertEquals(List.of(1, 2, 3, 4, 5), to.getIds());
+        assertEquals("D", to.getCard(2).getData().get("Text 2"));
+    }
+
+    @Test
+    public void should_restoreBoth_when_syncToFlashcardsRolledBack()
+    {
+        var from = wiki();
+        var to = flashCards();
+        from.addCard(new SimpleCard("wiki:only"));
+        var fromBefore = cards(from);
+        var toBefore = cards(to);
+        var toIdsBefore = to.getIds();
+
+        var tx = new Transaction(from, to);
+        syncAll(from, to);
+        to.zapIds();
+        tx.rollback();
+
+        assertEquals(fromBefore, cards(from));
+        assertEquals(toBefore, cards(to));
+        assertEquals(toIdsBefore, to.getIds());
+        assertEquals("edited", to.getCard(2).getData().get("Text 2"));
+        assertFalse(to.contains(4));
+    }
+
+    @Test
+    public void should_keepChanges_when_committed()
+    {
+        var from = flashCards();
+        var to = wiki();
+
+        try (var tx = new Transaction(from, to)) {
+            syncAll(from, to);
+            tx.commit();
+        }
+
+        assertEquals(5, to.getCountOfIds());
+        assertEquals("new", to.getCard(4).getData().get("Text 1"));
+        assertEquals("edited", to.getCard(2).getData().get("Text 2"));
+        assertFalse(to.isRecording());
+    }
+
+    @Test
+    public void should_rollBack_when_syncFailsPartWay()
+    {
+        var from = flashCards();
+        var to = wiki();
+        var toBefore = to.toString();
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            try (var tx = new Transaction(from, to)) {
+                Sync.deleteExtraCards(from, to);
+                to.addCard(new SimpleCard("clash:ing",1));
+                tx.commit();
+            }
+        });
+
+        assertEquals(toBefore, to.toString());
+        assertTrue(to.contains(4));
+    }
+
+    @Test
+    public void should_restoreViews_when_rolledBack()
+    {
+        var from = new FDCards();
+        from.addCard(new SimpleCard("A:B",1));
+        from.addCard(new SimpleCard("new:card"));
+        var to = wiki();
+        var fromView = new CategoryView(from, List.of(""));
+        var toView = new CategoryView(to, List.of(""));
+        var viewIdsBefore = toView.getIds();
+        var fromViewIdsBefore = fromView.getIds();
+
+        try (var tx = new Transaction(fromView, toView)) {
+            syncAll(fromView, toView);
+            assertTrue(tx.size() > 0);
+        }
+
+        assertEquals(viewIdsBefore, toView.getIds());
+        assertEquals(fromViewIdsBefore, fromView.getIds());
+        assertEquals(Arrays.asList(1, null), from.getIds());
+    }
+
+    @Test
+    public void should_refuseSecondTransaction_when_alreadyRecording()
+    {
+        var from = flashCards();
+        var to = wiki();
+        var other = wiki();
+
+        try (var tx = new Transaction(from, to)) {
+            assertThrows(IllegalStateException.class,
+                         () -> new Transaction(other, to));
+            assertFalse(other.isRecording());
+            tx.commit();
+        }
+        assertFalse(to.isRecording());
+    }
+}
@@ -0,0 +1,64 @@
+package fdshow;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Measures WikiData card add and update throughput for bulk imports.
+ *
+ * Not a unit test; run it by hand, for example:
+ * <pre>
+ * java -cp target/classes:target/test-classes:... fdshow.WikiDataBenchmark 20000
+ * </pre>
+ */
+public class WikiDataBenchmark
+{
+    private static List<Card> makeCards(final int count, final boolean withIds) {
+        final var cards = new ArrayList<Card>(count);
+        final String nl = System.lineSeparator();
+        for (int i = 0; i < count; i++) {
+            final var data = new HashMap<String, String>();
+            data.put("Text 1", "Question " + i + nl + "second line");
+            data.put("Text 2", "Answer " + i + nl + nl + "after a blank line");
+            data.put("Category 1", "Topic " + (i % 10));
+            data.put("Notes", "note " + i);
+            data.put("Statistics 1", "1,0,0,0,1,2,0,2020-06-10 13:21,");
+            cards.add(new Card(data, withIds ? Integer.valueOf(i) : null));
+        }
+        return cards;
+    }
+
+    private static double addRate(final List<Card> cards) {
+        final var wd = new WikiData();
+        final long start = System.nanoTime();
+        for (Card c : cards) {
+            wd.addCard(c);
+        }
+        return cards.size() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static double updateRate(final WikiData wd, final List<Card> cards) {
+        final long start = System.nanoTime();
+        for (Card c : cards) {
+            wd.updateCard(c);
+        }
+        return cards.size() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    public static void main(final String[] args) {
+        final int count = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        final int updates = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        final List<Card> newCards = makeCards(count, false);
+        final List<Card> idedCards = makeCards(updates, true);
+        final var wd = new WikiData();
+        idedCards.forEach(wd::addCard);
+
+        for (int round = 0; round < 5; round++) {
+            final double adds = addRate(newCards);
+            final double ups = updateRate(wd, idedCards);
+            System.out.printf("round %d: %,.0f adds/s, %,.0f updates/s%n",
+                              round, adds, ups);
+        }
+    }
+}
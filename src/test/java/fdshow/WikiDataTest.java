@@ -3,8 +3,11 @@ package fdshow;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 /**
  * Tests the WikiData class
@@ -144,4 +147,83 @@ public class WikiDataTest
           fail();
         }
     }
+
+    @Test
+    public void should_rewriteOnlyChangedPages_when_savingToPages(
+        @TempDir final Path dir)
+    throws IOException
+    {
+        final String testString =
+            "<!DOCTYPE html><html>"
+          + "  <head><title>Deck</title></head>"
+          + "  <body>"
+          + "    <card id='10'><field><name>Text 1</name><value>A</value></field></card>"
+          + "    <card id='11'><field><name>Text 1</name><value>B</value></field></card>"
+          + "    <card id='25'><field><name>Text 1</name><value>C</value></field></card>"
+          + "    <new-cards-here></new-cards-here>"
+          + "  </body>"
+          + "</html>";
+        final var wd = new WikiData();
+        wd.loadFrom(new BufferedReader(new StringReader(testString)));
+        final var index = dir.resolve("wiki.html").toFile();
+
+        // two pages of cards, the new cards page, and the index
+        assertEquals(4, wd.saveToPages(index, 10));
+        final String first = WikiData.pageOf(10, 10) == WikiData.pageOf(11, 10)
+            ? String.format("wiki-%04d.html", WikiData.pageOf(10, 10)) : null;
+        assertNotNull(first);
+        final String page = Files.readString(dir.resolve(first));
+        assertTrue(page.contains("<title>Deck</title>"), page);
+        assertTrue(page.contains("id=\"10\"") && page.contains("id=\"11\""), page);
+        assertFalse(page.contains("id=\"25\""), page);
+        assertTrue(Files.readString(index.toPath()).contains(first));
+
+        // nothing changed, nothing written
+        assertEquals(0, wd.saveToPages(index, 10));
+
+        // only the changed card's page is rewritten
+        wd.updateCard(new SimpleCard("B2:back", 11));
+        assertEquals(1, wd.saveToPages(index, 10));
+        assertTrue(Files.readString(dir.resolve(first)).contains("B2"));
+
+        // new cards go on their own page, and the index counts them
+        wd.addCard(new SimpleCard("D:back", 3));
+        assertEquals(2, wd.saveToPages(index, 10));
+        assertTrue(Files.readString(dir.resolve("wiki-new.html")).contains("id=\"3\""));
+
+        // pages left empty are deleted
+        wd.deleteCards(java.util.List.of(25));
+        wd.saveToPages(index, 10);
+        assertFalse(Files.exists(dir.resolve(
+            String.format("wiki-%04d.html", WikiData.pageOf(25, 10)))));
+    }
+
+    @Test
+    public void should_numberPagesFromZero_when_pagesAreSmall(
+        @TempDir final Path dir)
+    throws IOException
+    {
+        final String testString =
+            "<!DOCTYPE html><html>"
+          + "  <head><title>Deck</title></head>"
+          + "  <body>"
+          + "    <card id='5'><field><name>Text 1</name><value>A</value></field></card>"
+          + "    <new-cards-here></new-cards-here>"
+          + "  </body>"
+          + "</html>";
+        final var wd = new WikiData();
+        wd.loadFrom(new BufferedReader(new StringReader(testString)));
+        final var index = dir.resolve("wiki.html").toFile();
+
+        assertEquals(2147483653L, WikiData.pageOf(5, 1));
+        assertEquals(0, WikiData.pageOf(Integer.MIN_VALUE, 1));
+        wd.saveToPages(index, 1);
+        final Path page = dir.resolve("wiki-2147483653.html");
+        assertTrue(Files.exists(page));
+
+        // and the page is cleared away like any other
+        wd.deleteCards(java.util.List.of(5));
+        wd.saveToPages(index, 1);
+        assertFalse(Files.exists(page));
+    }
 }
@@ -0,0 +1,188 @@
+package fdshow;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests the WikiDirectory class
+ */
+public class WikiDirectoryTest
+{
+    @TempDir
+    Path dir;
+
+    /**
+     * Writes page a.html with cards 1 to 3 and page b.html with cards 4 and 5.
+     */
+    private void writePages()
+    throws Exception
+    {
+        var a = new WikiData();
+        a.addCard(new SimpleCard("A:B",1));
+        a.addCard(new SimpleCard("C:D",2));
+        a.addCard(new SimpleCard("E:F",3));
+        a.saveTo(dir.resolve("a.html").toFile());
+        var b = new WikiData();
+        b.addCard(new SimpleCard("G:H",4));
+        b.addCard(new SimpleCard("I:J",5));
+        b.saveTo(dir.resolve("b.html").toFile());
+    }
+
+    private WikiDirectory open()
+    throws Exception
+    {
+        var pages = new WikiDirectory(dir.toFile());
+        pages.open();
+        return pages;
+    }
+
+    @Test
+    public void should_listCardsInPageOrder_when_opened()
+    throws Exception
+    {
+        writePages();
+        var pages = open();
+
+        assertEquals(List.of(1, 2, 3, 4, 5), pages.getIds());
+        assertEquals("H", pages.getCard(4).getData().get("Text 2"));
+        assertTrue(Files.exists(dir.resolve(WikiDirectory.INDEX_NAME)));
+    }
+
+    @Test
+    public void should_notParsePages_when_indexUpToDate()
+    throws Exception
+    {
+        writePages();
+        open();
+        // spoil page b without changing its size or time: only the index knows its cards
+        final File b = dir.resolve("b.html").toFile();
+        final long modified = b.lastModified();
+        final byte[] spoiled = new byte[(int) b.length()];
+        Arrays.fill(spoiled, (byte) ' ');
+        Files.write(b.toPath(), spoiled);
+        b.setLastModified(modified);
+
+        var pages = open();
+
+        assertEquals(List.of(1, 2, 3, 4, 5), pages.getIds());
+        assertEquals("B", pages.getCard(1).getData().get("Text 2"));
+    }
+
+    @Test
+    public void should_reparsePage_when_changedSinceIndexed()
+    throws Exception
+    {
+        writePages();
+        open();
+        var b = new WikiData();
+        b.addCard(new SimpleCard("K:L",6));
+        b.saveTo(dir.resolve("b.html").toFile());
+        dir.resolve("b.html").toFile().setLastModified(0);
+
+        var pages = open();
+
+        assertEquals(List.of(1, 2, 3, 6), pages.getIds());
+    }
+
+    @Test
+    public void should_rewriteOnlyChangedPages_when_saved()
+    throws Exception
+    {
+        writePages();
+        var pages = open();
+        final File a = dir.resolve("a.html").toFile();
+        final File b = dir.resolve("b.html").toFile();
+        a.setLastModified(0);
+        b.setLastModified(0);
+
+        pages.updateCard(new SimpleCard("A:B",1)); // no change
+        pages.updateCard(new SimpleCard("G:edited",4));
+        pages.saveTo(dir.toFile());
+
+        assertEquals(0, a.lastModified());
+        assertNotEquals(0, b.lastModified());
+        assertEquals("edited", open().getCard(4).getData().get("Text 2"));
+    }
+
+    @Test
+    public void should_addAndNumberAcrossPages_when_newCardsAdded()
+    throws Exception
+    {
+        writePages();
+        var pages = open();
+
+        pages.addCard(new SimpleCard("new:card"));
+        assertEquals(List.of(6), pages.markBlankIds());
+        pages.addCard(new SimpleCard("moved:card",7));
+        pages.deleteCards(List.of(2, 5));
+        pages.saveTo(dir.toFile());
+
+        assertTrue(Files.exists(dir.resolve(WikiDirectory.NEW_CARDS_PAGE)));
+        assertEquals(List.of(1, 3, 4, 6, 7), pages.getIds());
+        assertEquals(List.of(1, 3, 4, 6, 7), open().getIds());
+    }
+
+    @Test
+    public void should_saveEveryPage_when_savedElsewhere()
+    throws Exception
+    {
+        writePages();
+        var pages = open();
+        final File copy = dir.resolve("copy").toFile();
+
+        pages.saveTo(copy);
+
+        var copied = new WikiDirectory(copy);
+        copied.open();
+        assertEquals(pages.getIds(), copied.getIds());
+        assertEquals(pages.getCards().size(), copied.getCards().size());
+    }
+
+    @Test
+    public void should_open_when_loadedFromItsDirectory()
+    throws Exception
+    {
+        writePages();
+        final CardsHolder pages =
+            new ConcurrentHolder(new WikiDirectory(dir.toFile()));
+        pages.loadFrom(dir.toFile());
+
+        assertEquals(List.of(1, 2, 3, 4, 5), pages.getIds());
+        assertThrows(IllegalArgumentException.class,
+                     () -> pages.loadFrom(dir.resolve("a.html").toFile()));
+    }
+
+    @Test
+    public void should_restorePages_when_rolledBack()
+    throws Exception
+    {
+        writePages();
+        var pages = open();
+        var flashCards = new FDCards();
+        flashCards.addCard(new SimpleCard("A:edited",1));
+        flashCards.addCard(new SimpleCard("new:card"));
+
+        try (var tx = new Transaction(flashCards, pages)) {
+            Sync.deleteExtraCards(flashCards, pages);
+            Sync.update(flashCards, pages);
+            Sync.markAndAddNewCards(flashCards, pages);
+            assertEquals(List.of(1, 2), pages.getIds());
+            assertTrue(tx.size() > 0);
+        }
+
+        assertEquals(List.of(1, 2, 3, 4, 5), pages.getIds());
+        assertEquals("B", pages.getCard(1).getData().get("Text 2"));
+        final File a = dir.resolve("a.html").toFile();
+        a.setLastModified(0);
+        pages.saveTo(dir.toFile());
+        assertEquals(0, a.lastModified());
+        assertFalse(Files.exists(dir.resolve(WikiDirectory.NEW_CARDS_PAGE)));
+    }
+}